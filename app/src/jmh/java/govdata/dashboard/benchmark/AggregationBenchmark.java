@@ -0,0 +1,99 @@
+package govdata.dashboard.benchmark;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.service.DepartmentCountAggregator;
+import govdata.dashboard.service.DepartmentIndex;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+
+/**
+ * Compares the former Reactor pipeline (merge with default departments, groupBy, reduce, sort) with the primitive
+ * {@link DepartmentCountAggregator} over the same stream of already matched organizations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregationBenchmark {
+
+  @Param({ "100", "1000", "10000" })
+  int organizations;
+
+  DepartmentIndex index;
+  List<CKANOrganizationEntity> matched;
+
+  @Setup
+  public void setUp() {
+    List<Department> departments = SyntheticData.departments(20, 10);
+    this.index = DepartmentIndex.of(departments);
+    this.matched =
+      SyntheticData
+        .organizations(departments, this.organizations, 0)
+        .stream()
+        .filter(org ->
+          this.index.departmentId(org.name()) != DepartmentIndex.UNKNOWN
+        )
+        .toList();
+  }
+
+  @Benchmark
+  public List<DepartmentDto> reactorGroupBy() {
+    return Flux
+      .fromIterable(this.matched)
+      .map(org ->
+        new DepartmentDto(
+          this.index.departmentName(this.index.departmentId(org.name())),
+          org.packageCount()
+        )
+      )
+      .mergeWith(
+        Flux.fromIterable(this.index.departmentNames()).map(DepartmentDto::new)
+      )
+      .groupBy(DepartmentDto::name)
+      .flatMap(group ->
+        group.reduce((d1, d2) ->
+          new DepartmentDto(d1.name(), d1.dataSetCount() + d2.dataSetCount())
+        )
+      )
+      .sort(Comparator.comparingInt(DepartmentDto::dataSetCount).reversed())
+      .collectList()
+      .block();
+  }
+
+  @Benchmark
+  public List<DepartmentDto> primitiveAggregator() {
+    return Flux
+      .fromIterable(this.matched)
+      .collect(
+        () -> new DepartmentCountAggregator(this.index),
+        DepartmentCountAggregator::add
+      )
+      .map(DepartmentCountAggregator::toSortedList)
+      .block();
+  }
+
+  /**
+   * Baseline without Reactor to show the cost of the operators themselves.
+   */
+  @Benchmark
+  public List<DepartmentDto> primitiveAggregatorLoop() {
+    DepartmentCountAggregator aggregator = new DepartmentCountAggregator(
+      this.index
+    );
+    for (CKANOrganizationEntity org : this.matched) {
+      aggregator.add(org);
+    }
+    return aggregator.toSortedList();
+  }
+}
@@ -0,0 +1,171 @@
+package govdata.dashboard.benchmark;
+
+import govdata.dashboard.configuration.DashboardConfiguration;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.util.CircuitBreaker;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Load test of the CKAN client against a local MockWebServer that serves an organization list of 200 organizations
+ * (~200 KB, ~7 KB gzip-compressed) with 20 ms latency and a bandwidth of about 1 MB/s per connection, compressed if the
+ * client asks for it. Compares a WebClient without compression, the default WebClient (which already requests gzip)
+ * and the client configured by {@link DashboardConfiguration}, reporting throughput and the latency distribution (p99,
+ * p99.9) under 32 concurrent callers. The payload is kept small so that the network, not parsing, is the bottleneck.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+public class ConnectionPoolBenchmark {
+
+  @Param({ "uncompressed", "default", "configured" })
+  String client;
+
+  MockWebServer mockWebServer;
+  ConnectionProvider connectionProvider;
+  CKANClient ckanClient;
+  DepartmentIndex index;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<Department> departments = SyntheticData.departments(20, 10);
+    this.index = DepartmentIndex.of(departments);
+    byte[] body = SyntheticData.organizationListJson(
+      SyntheticData.organizations(departments, 200, 0)
+    );
+    byte[] compressed = gzip(body);
+
+    this.mockWebServer = new MockWebServer();
+    this.mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            boolean gzip =
+              acceptEncoding != null && acceptEncoding.contains("gzip");
+            MockResponse response = new MockResponse()
+              .addHeader("Content-Type", "application/json")
+              .setBody(new Buffer().write(gzip ? compressed : body))
+              .setHeadersDelay(20, TimeUnit.MILLISECONDS)
+              .throttleBody(1024, 1, TimeUnit.MILLISECONDS);
+            return gzip
+              ? response.addHeader("Content-Encoding", "gzip")
+              : response;
+          }
+        }
+      );
+    this.mockWebServer.start();
+    String baseUrl = this.mockWebServer.url("/").toString();
+
+    WebClient webClient;
+    if ("configured".equals(this.client)) {
+      DashboardConfiguration configuration = new DashboardConfiguration();
+      this.connectionProvider =
+        configuration.ckanConnectionProvider(
+          50,
+          200,
+          Duration.ofSeconds(10),
+          Duration.ofSeconds(30),
+          Duration.ofMinutes(5),
+          Duration.ofSeconds(30)
+        );
+      webClient =
+        WebClient
+          .builder()
+          .baseUrl(baseUrl)
+          .clientConnector(
+            new ReactorClientHttpConnector(
+              configuration.ckanHttpClient(
+                this.connectionProvider,
+                Duration.ofSeconds(5),
+                Duration.ofSeconds(30),
+                true,
+                true,
+                true,
+                false
+              )
+            )
+          )
+          .codecs(codecs ->
+            codecs
+              .defaultCodecs()
+              .maxInMemorySize((int) DataSize.ofMegabytes(16).toBytes())
+          )
+          .build();
+    } else if ("uncompressed".equals(this.client)) {
+      webClient =
+        WebClient
+          .builder()
+          .baseUrl(baseUrl)
+          .clientConnector(
+            new ReactorClientHttpConnector(HttpClient.create().compress(false))
+          )
+          .build();
+    } else {
+      webClient = WebClient.builder().baseUrl(baseUrl).build();
+    }
+    this.ckanClient =
+      new CKANClient(
+        webClient,
+        new CircuitBreaker(
+          "CKAN API",
+          Integer.MAX_VALUE,
+          Duration.ZERO,
+          Duration.ZERO
+        ),
+        CKANClient.Paging.disabled()
+      );
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (this.connectionProvider != null) {
+      this.connectionProvider.dispose();
+    }
+    this.mockWebServer.shutdown();
+  }
+
+  @Benchmark
+  public Long fetchOrganizations() {
+    return this.ckanClient.fetchOrganizations(name ->
+        this.index.departmentId(name) != DepartmentIndex.UNKNOWN
+      )
+      .count()
+      .block();
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,78 @@
+package govdata.dashboard.benchmark;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Resolves a realistic mix of known and unknown organization names through the {@link DepartmentService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DepartmentLookupBenchmark {
+
+  private static final int NAMES = 1000;
+
+  DepartmentService departmentService;
+  String[] names;
+
+  @Setup
+  public void setUp() {
+    List<Department> departments = SyntheticData.departments(20, 10);
+    this.departmentService =
+      new DepartmentService(
+        SyntheticData.departmentsFile(departments).toString(),
+        DepartmentIndex.Fuzzy.disabled(),
+        event -> {},
+        Schedulers.boundedElastic()
+      );
+    this.departmentService.loadDefaultDepartments();
+    this.names =
+      SyntheticData
+        .organizations(departments, NAMES, 0)
+        .stream()
+        .map(CKANOrganizationEntity::name)
+        .toArray(String[]::new);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NAMES)
+  public void isValidSubordinateOrDepartment(Blackhole blackhole) {
+    for (String name : this.names) {
+      blackhole.consume(
+        this.departmentService.isValidSubordinateOrDepartment(name)
+      );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NAMES)
+  public void toDepartment(Blackhole blackhole) {
+    for (String name : this.names) {
+      blackhole.consume(this.departmentService.toDepartment(name));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NAMES)
+  public void departmentId(Blackhole blackhole) {
+    DepartmentIndex index = this.departmentService.getIndex();
+    for (String name : this.names) {
+      blackhole.consume(index.departmentId(name));
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package govdata.dashboard.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.ckan.CKANOrganizationResponse;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.service.CKANOrganizationListParser;
+import govdata.dashboard.service.DepartmentIndex;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares binding the whole organization_list payload into a {@link CKANOrganizationResponse} with the streaming
+ * {@link CKANOrganizationListParser} that only keeps matching organizations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeserializationBenchmark {
+
+  @Param({ "100", "1000", "10000", "100000" })
+  int organizations;
+
+  // configured like the WebClient codecs, which ignore the fields not mapped by CKANOrganizationEntity
+  ObjectMapper mapper = new ObjectMapper()
+    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  DepartmentIndex index;
+  byte[] body;
+
+  @Setup
+  public void setUp() {
+    List<Department> departments = SyntheticData.departments(20, 10);
+    this.index = DepartmentIndex.of(departments);
+    this.body =
+      SyntheticData.organizationListJson(
+        SyntheticData.organizations(departments, this.organizations, 0)
+      );
+  }
+
+  @Benchmark
+  public CKANOrganizationResponse bindResponse() throws IOException {
+    return this.mapper.readValue(this.body, CKANOrganizationResponse.class);
+  }
+
+  @Benchmark
+  public List<CKANOrganizationEntity> streamingParser() {
+    return CKANOrganizationListParser
+      .parse(
+        SyntheticData.chunked(this.body),
+        name -> this.index.departmentId(name) != DepartmentIndex.UNKNOWN
+      )
+      .collectList()
+      .block();
+  }
+}
@@ -0,0 +1,101 @@
+package govdata.dashboard.benchmark;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.model.history.HistoryPoint;
+import govdata.dashboard.model.history.HistoryResolution;
+import govdata.dashboard.service.DepartmentHistoryStore;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Range queries over three years of minute-level samples of 5 departments whose counts change with every sample, i.e.
+ * the worst case of about 7.9 million records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryBenchmark {
+
+  private static final int DEPARTMENTS = 5;
+  private static final Instant START = Instant.parse("2022-01-01T00:00:00Z");
+  private static final Instant END = Instant.parse("2025-01-01T00:00:00Z");
+
+  Path directory;
+  DepartmentHistoryStore historyStore;
+
+  @Setup
+  public void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("history-benchmark");
+    this.historyStore =
+      new DepartmentHistoryStore(
+        this.directory,
+        1 << 20,
+        new DepartmentSnapshotCache(Duration.ZERO, new SimpleMeterRegistry()),
+        Schedulers.boundedElastic()
+      );
+    this.historyStore.open();
+    int sample = 0;
+    for (
+      Instant time = START;
+      time.isBefore(END);
+      time = time.plusSeconds(60), sample++
+    ) {
+      List<DepartmentDto> departments = new ArrayList<>(DEPARTMENTS);
+      for (int i = 0; i < DEPARTMENTS; i++) {
+        departments.add(new DepartmentDto("Department " + i, sample + i));
+      }
+      this.historyStore.record(new DepartmentSnapshot(departments, time, 0));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    this.historyStore.stop();
+    try (Stream<Path> files = Files.walk(this.directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public List<HistoryPoint> dailySeriesOfOneDepartment() {
+    return this.historyStore.query(
+        "Department 0",
+        START,
+        END,
+        HistoryResolution.DAY
+      );
+  }
+
+  @Benchmark
+  public Map<String, List<HistoryPoint>> dailySeriesOfAllDepartments() {
+    return this.historyStore.query(START, END, HistoryResolution.DAY);
+  }
+
+  @Benchmark
+  public Map<String, List<HistoryPoint>> monthlySeriesOfAllDepartments() {
+    return this.historyStore.query(START, END, HistoryResolution.MONTH);
+  }
+}
@@ -0,0 +1,86 @@
+package govdata.dashboard.benchmark;
+
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.DashboardMetrics;
+import govdata.dashboard.service.DashboardService;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs the complete aggregation of {@link DashboardService} (response streaming, parsing, matching, aggregation and
+ * sorting) against an in-memory CKAN response, bypassing the snapshot cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineBenchmark {
+
+  @Param({ "100", "1000", "10000", "100000" })
+  int organizations;
+
+  DashboardService dashboardService;
+
+  @Setup
+  public void setUp() {
+    List<Department> departments = SyntheticData.departments(20, 10);
+    DepartmentService departmentService = new DepartmentService(
+      SyntheticData.departmentsFile(departments).toString(),
+      DepartmentIndex.Fuzzy.disabled(),
+      event -> {},
+      Schedulers.boundedElastic()
+    );
+    departmentService.loadDefaultDepartments();
+    byte[] body = SyntheticData.organizationListJson(
+      SyntheticData.organizations(departments, this.organizations, 0)
+    );
+    this.dashboardService =
+      new DashboardService(
+        List.of(
+          new CKANSource(
+            "govdata",
+            new CKANClient(
+              SyntheticData.webClient(body),
+              new CircuitBreaker(
+                "CKAN API",
+                Integer.MAX_VALUE,
+                Duration.ZERO,
+                Duration.ZERO
+              ),
+              CKANClient.Paging.disabled()
+            ),
+            departmentService,
+            null
+          )
+        ),
+        new DepartmentSnapshotCache(Duration.ZERO, new SimpleMeterRegistry()),
+        new DashboardMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP),
+        Optional.empty(),
+        Optional.empty()
+      );
+  }
+
+  @Benchmark
+  public DepartmentSnapshot computeDepartmentDataSetCounts() {
+    return this.dashboardService.refreshDepartmentSnapshot().block();
+  }
+}
@@ -0,0 +1,75 @@
+package govdata.dashboard.benchmark;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+/**
+ * Renders templates/index.html with the same template engine setup as the application (Spring EL, cached templates).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderingBenchmark {
+
+  @Param({ "20", "200" })
+  int departments;
+
+  SpringTemplateEngine templateEngine;
+  Context context;
+
+  @Setup
+  public void setUp() {
+    ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+    resolver.setPrefix("templates/");
+    resolver.setSuffix(".html");
+    resolver.setTemplateMode(TemplateMode.HTML);
+    resolver.setCharacterEncoding("UTF-8");
+    resolver.setCacheable(true);
+    this.templateEngine = new SpringTemplateEngine();
+    this.templateEngine.setTemplateResolver(resolver);
+    // the application is deployed at the root context path
+    this.templateEngine.setLinkBuilder(
+        new StandardLinkBuilder() {
+          @Override
+          protected String computeContextPath(
+            IExpressionContext context,
+            String base,
+            Map<String, Object> parameters
+          ) {
+            return "";
+          }
+        }
+      );
+
+    List<DepartmentDto> datasets = new ArrayList<>(this.departments);
+    for (int i = 0; i < this.departments; i++) {
+      datasets.add(new DepartmentDto("Bundesministerium " + i, 10000 - i));
+    }
+    this.context = new Context();
+    this.context.setVariable("datasets", datasets);
+    this.context.setVariable("fetchedAt", Instant.EPOCH);
+  }
+
+  @Benchmark
+  public String renderIndex() {
+    return this.templateEngine.process("index", this.context);
+  }
+}
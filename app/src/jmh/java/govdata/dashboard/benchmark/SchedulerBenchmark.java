@@ -0,0 +1,160 @@
+package govdata.dashboard.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.configuration.SchedulerConfiguration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Latency of a trivial request to a Reactor Netty server with two event loops while 16 concurrent callers keep it busy
+ * with blocking work: each work request writes the organization list of 2,000 organizations (~2 MB) to a file, forces
+ * it to disk and parses it into a Jackson tree. The work runs on the event loop itself, on the bounded elastic scheduler
+ * or on virtual threads ({@link SchedulerConfiguration}); off the event loop, the p99 of the trivial request should stay
+ * close to its latency without load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SchedulerBenchmark {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Param({ "event-loop", "bounded-elastic", "virtual" })
+  String scheduler;
+
+  Scheduler blockingScheduler;
+  LoopResources serverLoops;
+  DisposableServer server;
+  HttpClient client;
+  Disposable load;
+  byte[] body;
+  Path directory;
+
+  @Setup
+  public void setUp() throws IOException {
+    this.body =
+      SyntheticData.organizationListJson(
+        SyntheticData.organizations(
+          SyntheticData.departments(20, 10),
+          2_000,
+          0
+        )
+      );
+    this.directory = Files.createTempDirectory("scheduler-benchmark");
+    if (!"event-loop".equals(this.scheduler)) {
+      this.blockingScheduler =
+        new SchedulerConfiguration()
+          .blockingScheduler(
+            SchedulerConfiguration.BlockingScheduler.valueOf(
+              this.scheduler.toUpperCase().replace('-', '_')
+            )
+          );
+    }
+    this.serverLoops = LoopResources.create("benchmark-server", 2, true);
+    this.server =
+      HttpServer
+        .create()
+        .port(0)
+        .runOn(this.serverLoops)
+        .route(routes ->
+          routes
+            .get(
+              "/ping",
+              (request, response) -> response.sendString(Mono.just("pong"))
+            )
+            .get("/work", (request, response) -> response.sendString(this.work()))
+        )
+        .bindNow();
+    this.client = HttpClient.create().port(this.server.port());
+    this.load =
+      Flux
+        .range(0, Integer.MAX_VALUE)
+        .flatMap(
+          i ->
+            this.client.get()
+              .uri("/work")
+              .responseContent()
+              .aggregate()
+              .asString()
+              .onErrorResume(error -> Mono.empty()),
+          16
+        )
+        .subscribe();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    this.load.dispose();
+    this.server.disposeNow();
+    this.serverLoops.dispose();
+    if (this.blockingScheduler != null) {
+      this.blockingScheduler.dispose();
+    }
+    try (var files = Files.list(this.directory)) {
+      for (Path file : files.toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.delete(this.directory);
+  }
+
+  @Benchmark
+  public String ping() {
+    return this.client.get()
+      .uri("/ping")
+      .responseContent()
+      .aggregate()
+      .asString()
+      .block();
+  }
+
+  private Mono<String> work() {
+    Mono<String> work = Mono.fromCallable(this::writeAndParse);
+    return this.blockingScheduler != null
+      ? work.subscribeOn(this.blockingScheduler)
+      : work;
+  }
+
+  private String writeAndParse() {
+    try {
+      Path file = Files.createTempFile(this.directory, "work", ".json");
+      try (
+        FileChannel channel = FileChannel.open(
+          file,
+          StandardOpenOption.WRITE
+        )
+      ) {
+        channel.write(ByteBuffer.wrap(this.body));
+        channel.force(true);
+      }
+      int size = MAPPER.readTree(file.toFile()).path("result").size();
+      Files.delete(file);
+      return Integer.toString(size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
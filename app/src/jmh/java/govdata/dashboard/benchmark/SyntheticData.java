@@ -0,0 +1,176 @@
+package govdata.dashboard.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.SubOrdinate;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Deterministic synthetic departments and CKAN organizations for the benchmarks.
+ */
+final class SyntheticData {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // GovData delivers the body in chunks of roughly this size
+  private static final int CHUNK_SIZE = 8192;
+
+  private SyntheticData() {}
+
+  static List<Department> departments(int departments, int subordinates) {
+    List<Department> result = new ArrayList<>(departments);
+    for (int d = 0; d < departments; d++) {
+      List<SubOrdinate> subOrdinates = new ArrayList<>(subordinates);
+      for (int s = 0; s < subordinates; s++) {
+        subOrdinates.add(new SubOrdinate("Bundesamt " + d + "-" + s));
+      }
+      result.add(new Department("Bundesministerium " + d, subOrdinates));
+    }
+    return result;
+  }
+
+  /**
+   * Writes the departments as a departments file and returns its path.
+   */
+  static Path departmentsFile(List<Department> departments) {
+    try {
+      Path file = Files.createTempFile("departments", ".json");
+      file.toFile().deleteOnExit();
+      MAPPER.writeValue(file.toFile(), Map.of("departments", departments));
+      return file;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Creates organizations of which roughly every third one belongs to a known department; the others are unknown
+   * organizations (e.g. Länder and municipalities) as in the real GovData response.
+   */
+  static List<CKANOrganizationEntity> organizations(
+    List<Department> departments,
+    int count,
+    long seed
+  ) {
+    List<String> known = new ArrayList<>();
+    for (Department department : departments) {
+      known.add(department.name());
+      department.subOrdinates().forEach(s -> known.add(s.name()));
+    }
+    SplittableRandom random = new SplittableRandom(seed);
+    List<CKANOrganizationEntity> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String name = i % 3 == 0
+        ? known.get(random.nextInt(known.size()))
+        : "Organisation " + i;
+      result.add(new CKANOrganizationEntity(name, random.nextInt(1000)));
+    }
+    return result;
+  }
+
+  /**
+   * Serializes organizations as an organization_list response with all fields. Every organization carries the
+   * description, image and extras the real API returns, so the payload size per organization is realistic (~1 KB).
+   */
+  static byte[] organizationListJson(
+    List<CKANOrganizationEntity> organizations
+  ) {
+    ObjectNode response = MAPPER.createObjectNode();
+    response.put(
+      "help",
+      "https://www.govdata.de/ckan/api/3/action/help_show?name=organization_list"
+    );
+    response.put("success", true);
+    ArrayNode result = response.putArray("result");
+    int i = 0;
+    for (CKANOrganizationEntity organization : organizations) {
+      ObjectNode node = result.addObject();
+      node.put("approval_status", "approved");
+      node.put("created", "2013-05-28T12:43:19.063406");
+      node.put(
+        "description",
+        ("Die Organisation " + organization.name() + " veröffentlicht Daten. ")
+          .repeat(8)
+      );
+      node.put("display_name", organization.name());
+      node.put("id", "00000000-0000-0000-0000-" + String.format("%012d", i));
+      node.put("image_display_url", "https://www.govdata.de/img/" + i + ".png");
+      node.put("image_url", "https://www.govdata.de/img/" + i + ".png");
+      node.put("is_organization", true);
+      node.put("name", "organisation-" + i);
+      node.put("num_followers", 0);
+      node.put("package_count", organization.packageCount());
+      node.put("state", "active");
+      node.put("title", organization.name());
+      node.put("type", "organization");
+      ArrayNode extras = node.putArray("extras");
+      extras.addObject().put("key", "email").put("value", "info@example.org");
+      extras.addObject().put("key", "url").put("value", "https://example.org/");
+      node.putArray("groups");
+      node.putArray("tags");
+      node.putArray("users");
+      i++;
+    }
+    try {
+      return MAPPER.writeValueAsBytes(response);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Splits a body into network-sized buffers.
+   */
+  static Flux<DataBuffer> chunked(byte[] body) {
+    return Flux
+      .range(0, (body.length + CHUNK_SIZE - 1) / CHUNK_SIZE)
+      .map(chunk -> {
+        int offset = chunk * CHUNK_SIZE;
+        return DefaultDataBufferFactory.sharedInstance.wrap(
+          ByteBuffer.wrap(
+            body,
+            offset,
+            Math.min(CHUNK_SIZE, body.length - offset)
+          )
+        );
+      });
+  }
+
+  /**
+   * A WebClient that answers every request with the given JSON body without any network I/O.
+   */
+  static WebClient webClient(byte[] body) {
+    return WebClient
+      .builder()
+      .baseUrl("http://ckan.invalid/api/3/action/")
+      .exchangeFunction(request ->
+        Mono.just(
+          ClientResponse
+            .create(HttpStatus.OK)
+            .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+            .body(chunked(body))
+            .build()
+        )
+      )
+      .build();
+  }
+}
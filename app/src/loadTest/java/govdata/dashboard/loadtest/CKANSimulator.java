@@ -0,0 +1,529 @@
+package govdata.dashboard.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.SubOrdinate;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * Stand-in for the CKAN action API of GovData with any number of synthetic organizations. It serves organization_list
+ * (names only, or with all fields, optionally as a limit/offset page), organization_show, package_search by owner_org
+ * and package_search for data sets modified since a given time, faceted by owner_org. Package counts can grow at a
+ * given rate, so that refreshes see changes. Every response can be delayed by a latency with jitter, fail with a given
+ * probability and be written slowly in small chunks, so that the dashboard can be exercised at scale and under upstream
+ * trouble without calling govdata.de.
+ */
+public class CKANSimulator implements AutoCloseable {
+
+  public static final String BASE_PATH = "/api/3/action/";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // fq=metadata_modified:[<since> TO *]
+  private static final Pattern MODIFIED_SINCE = Pattern.compile(
+    "metadata_modified:\\[(\\S+) TO \\*]"
+  );
+
+  /**
+   * @param organizations Number of organizations, roughly every third one belongs to a department
+   * @param departments Number of departments (ministries)
+   * @param subordinates Number of subordinate agencies per department
+   * @param latency Delay before every response
+   * @param jitter Maximum random delay added to the latency
+   * @param errorRate Share of requests answered with HTTP 500, between 0 and 1
+   * @param dripChunkSize Size of the chunks the body is written in, the whole body at once if 0
+   * @param dripDelay Delay before every chunk of the body
+   * @param changeRate Number of organizations per second that get a new data set, none if 0
+   * @param seed Seed of the synthetic organizations
+   */
+  public record Settings(
+    int organizations,
+    int departments,
+    int subordinates,
+    Duration latency,
+    Duration jitter,
+    double errorRate,
+    int dripChunkSize,
+    Duration dripDelay,
+    double changeRate,
+    long seed
+  ) {
+    static Settings of(Options options) {
+      return new Settings(
+        options.integer("organizations", 5_000),
+        options.integer("departments", 20),
+        options.integer("subordinates", 10),
+        options.duration("latency", "0ms"),
+        options.duration("jitter", "0ms"),
+        options.decimal("errorRate", 0),
+        options.integer("dripChunkSize", 0),
+        options.duration("dripDelay", "0ms"),
+        options.decimal("changeRate", 0),
+        options.integer("seed", 0)
+      );
+    }
+  }
+
+  private final Settings settings;
+  private final List<Department> departments;
+  private final List<CKANOrganizationEntity> organizations;
+  private final Map<String, Integer> organizationsById;
+  private final AtomicIntegerArray packageCounts;
+  // epoch millis of the last change per organization
+  private final AtomicLongArray modifiedAt;
+  private final byte[] organizationNames;
+  // serialized lazily and discarded whenever a package count changes
+  private volatile byte[] allOrganizations;
+  private final Map<List<Integer>, byte[]> organizationPages =
+    new ConcurrentHashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final DisposableServer server;
+  private final Disposable changes;
+
+  private CKANSimulator(Settings settings, int port) {
+    this.settings = settings;
+    this.departments = departments(settings);
+    this.organizations = organizations(this.departments, settings);
+    this.organizationsById = new HashMap<>();
+    this.packageCounts = new AtomicIntegerArray(this.organizations.size());
+    this.modifiedAt = new AtomicLongArray(this.organizations.size());
+    for (int i = 0; i < this.organizations.size(); i++) {
+      CKANOrganizationEntity organization = this.organizations.get(i);
+      this.organizationsById.put(organization.id(), i);
+      this.organizationsById.put(slug(i), i);
+      this.packageCounts.set(i, organization.packageCount());
+    }
+    ObjectNode names = envelope("organization_list");
+    ArrayNode result = names.putArray("result");
+    for (int i = 0; i < this.organizations.size(); i++) {
+      result.add(slug(i));
+    }
+    this.organizationNames = bytes(names);
+    this.server =
+      HttpServer
+        .create()
+        .host("localhost")
+        .port(port)
+        .route(routes ->
+          routes
+            .get(BASE_PATH + "organization_list", this::organizationList)
+            .get(BASE_PATH + "organization_show", this::organizationShow)
+            .get(BASE_PATH + "package_search", this::packageSearch)
+        )
+        .bindNow();
+    this.changes =
+      settings.changeRate() > 0 && !this.organizations.isEmpty()
+        ? Flux
+          .interval(Duration.ofNanos((long) (1e9 / settings.changeRate())))
+          .subscribe(tick -> this.change())
+        : null;
+  }
+
+  /**
+   * Generates the organizations and starts serving them.
+   * @param port Port to listen on, any free port if 0
+   */
+  public static CKANSimulator start(Settings settings, int port) {
+    return new CKANSimulator(settings, port);
+  }
+
+  /**
+   * Runs the simulator until the JVM is stopped, e.g. for bootRun --args=--govdata.ckan.url=... Options like
+   * --port=8081 --organizations=20000 --latency=200ms --jitter=100ms --errorRate=0.05 --dripChunkSize=1024
+   * --dripDelay=10ms --changeRate=0.5; the departments mapping of the synthetic organizations is written to
+   * --departmentsFile.
+   */
+  public static void main(String[] args) throws IOException {
+    Options options = new Options(args);
+    Settings settings = Settings.of(options);
+    CKANSimulator simulator = start(settings, options.integer("port", 8081));
+    Path departmentsFile = Path.of(
+      options.string("departmentsFile", "departments-simulated.json")
+    );
+    simulator.writeDepartmentsFile(departmentsFile);
+    System.out.printf(
+      "Serving %d organizations at %s, departments file %s%n",
+      settings.organizations(),
+      simulator.url(),
+      departmentsFile.toAbsolutePath()
+    );
+    simulator.server.onDispose().block();
+  }
+
+  /**
+   * Base URL of the simulated action API, e.g. for govdata.ckan.url.
+   */
+  public String url() {
+    return "http://localhost:" + this.server.port() + BASE_PATH;
+  }
+
+  /**
+   * Writes the departments file that maps the synthetic organizations to their departments.
+   */
+  public void writeDepartmentsFile(Path file) throws IOException {
+    MAPPER.writeValue(file.toFile(), Map.of("departments", this.departments));
+  }
+
+  /**
+   * Number of requests served so far, including failed ones.
+   */
+  public long requests() {
+    return this.requests.get();
+  }
+
+  /**
+   * Number of requests answered with an injected error so far.
+   */
+  public long errors() {
+    return this.errors.get();
+  }
+
+  @Override
+  public void close() {
+    if (this.changes != null) {
+      this.changes.dispose();
+    }
+    this.server.disposeNow();
+  }
+
+  /**
+   * Adds a data set to a random organization.
+   */
+  private void change() {
+    int organization = ThreadLocalRandom.current()
+      .nextInt(this.organizations.size());
+    this.packageCounts.incrementAndGet(organization);
+    this.modifiedAt.set(organization, System.currentTimeMillis());
+    this.allOrganizations = null;
+    this.organizationPages.clear();
+  }
+
+  private Publisher<Void> organizationList(
+    HttpServerRequest request,
+    HttpServerResponse response
+  ) {
+    Map<String, List<String>> parameters = new QueryStringDecoder(
+      request.uri()
+    )
+      .parameters();
+    if (!parameters.containsKey("all_fields")) {
+      return this.respond(response, this.organizationNames);
+    }
+    if (!parameters.containsKey("limit")) {
+      byte[] body = this.allOrganizations;
+      if (body == null) {
+        body = this.organizationList(0, this.organizations.size());
+        this.allOrganizations = body;
+      }
+      return this.respond(response, body);
+    }
+    int offset = integer(parameters, "offset", 0);
+    int limit = integer(parameters, "limit", this.organizations.size());
+    return this.respond(
+        response,
+        this.organizationPages.computeIfAbsent(
+            List.of(offset, limit),
+            page -> this.organizationList(offset, limit)
+          )
+      );
+  }
+
+  private Publisher<Void> organizationShow(
+    HttpServerRequest request,
+    HttpServerResponse response
+  ) {
+    Map<String, List<String>> parameters = new QueryStringDecoder(
+      request.uri()
+    )
+      .parameters();
+    Integer organization =
+      this.organizationsById.get(
+          parameters.getOrDefault("id", List.of("")).get(0)
+        );
+    if (organization == null) {
+      ObjectNode error = envelope("organization_show");
+      error.put("success", false);
+      error
+        .putObject("error")
+        .put("__type", "Not Found Error")
+        .put("message", "Not found");
+      return this.respond(response, HttpResponseStatus.NOT_FOUND, bytes(error));
+    }
+    ObjectNode show = envelope("organization_show");
+    this.organization(show.putObject("result"), organization);
+    return this.respond(response, bytes(show));
+  }
+
+  private Publisher<Void> packageSearch(
+    HttpServerRequest request,
+    HttpServerResponse response
+  ) {
+    Map<String, List<String>> parameters = new QueryStringDecoder(
+      request.uri()
+    )
+      .parameters();
+    String filter = parameters.getOrDefault("fq", List.of("")).get(0);
+    Matcher modifiedSince = MODIFIED_SINCE.matcher(filter);
+    if (parameters.containsKey("facet.field") && modifiedSince.matches()) {
+      return this.respond(
+          response,
+          this.modifiedOrganizations(Instant.parse(modifiedSince.group(1)))
+        );
+    }
+    // fq=owner_org:"<id>"
+    String id = filter.replaceFirst("^owner_org:\"?", "").replaceFirst("\"$", "");
+    Integer organization = this.organizationsById.get(id);
+    int count = organization != null
+      ? this.packageCounts.get(organization)
+      : 0;
+    int start = integer(parameters, "start", 0);
+    int rows = integer(parameters, "rows", 10);
+
+    ObjectNode search = envelope("package_search");
+    ObjectNode result = search.putObject("result");
+    result.put("count", count);
+    ArrayNode results = result.putArray("results");
+    for (int i = start; i < Math.min(count, start + rows); i++) {
+      results
+        .addObject()
+        .put("name", id + "-dataset-" + i)
+        .put("title", "Datensatz " + i + " der Organisation " + id)
+        .put("metadata_modified", "2024-01-01T00:00:00.000000");
+    }
+    return this.respond(response, bytes(search));
+  }
+
+  /**
+   * Counts the data sets modified since the given time per owner_org, one per changed organization.
+   */
+  private byte[] modifiedOrganizations(Instant since) {
+    ObjectNode search = envelope("package_search");
+    ObjectNode result = search.putObject("result");
+    result.putArray("results");
+    ObjectNode owners = result.putObject("facets").putObject("owner_org");
+    for (int i = 0; i < this.organizations.size(); i++) {
+      if (this.modifiedAt.get(i) >= since.toEpochMilli()) {
+        owners.put(this.organizations.get(i).id(), 1);
+      }
+    }
+    result.put("count", owners.size());
+    return bytes(search);
+  }
+
+  private Publisher<Void> respond(HttpServerResponse response, byte[] body) {
+    return this.respond(response, HttpResponseStatus.OK, body);
+  }
+
+  /**
+   * Writes the body after the latency, in chunks if configured, or an error response instead.
+   */
+  private Publisher<Void> respond(
+    HttpServerResponse response,
+    HttpResponseStatus status,
+    byte[] body
+  ) {
+    this.requests.incrementAndGet();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    response.status(status);
+    byte[] content = body;
+    if (random.nextDouble() < this.settings.errorRate()) {
+      this.errors.incrementAndGet();
+      response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+      ObjectNode error = envelope("error");
+      error.put("success", false);
+      error
+        .putObject("error")
+        .put("__type", "Internal Server Error")
+        .put("message", "Simulated failure");
+      content = bytes(error);
+    }
+    long delay =
+      this.settings.latency().toNanos() +
+      (this.settings.jitter().isZero()
+          ? 0
+          : random.nextLong(this.settings.jitter().toNanos() + 1));
+    byte[] payload = content;
+    return Mono
+      .delay(Duration.ofNanos(delay))
+      .then(
+        response
+          .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+          .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(payload.length))
+          .sendByteArray(this.chunks(payload))
+          .then()
+      );
+  }
+
+  private Flux<byte[]> chunks(byte[] body) {
+    int chunkSize = this.settings.dripChunkSize();
+    if (chunkSize <= 0 || chunkSize >= body.length) {
+      return Flux.just(body);
+    }
+    Flux<byte[]> chunks = Flux
+      .range(0, (body.length + chunkSize - 1) / chunkSize)
+      .map(chunk ->
+        Arrays.copyOfRange(
+          body,
+          chunk * chunkSize,
+          Math.min(body.length, (chunk + 1) * chunkSize)
+        )
+      );
+    return this.settings.dripDelay().isZero()
+      ? chunks
+      : chunks.delayElements(this.settings.dripDelay());
+  }
+
+  /**
+   * Serializes organizations as an organization_list response with all fields. Every organization carries the
+   * description, image and extras the real API returns, so the payload size per organization is realistic (~1 KB).
+   */
+  private byte[] organizationList(int offset, int limit) {
+    ObjectNode list = envelope("organization_list");
+    ArrayNode result = list.putArray("result");
+    int end = Math.min(this.organizations.size(), offset + Math.max(0, limit));
+    for (int i = Math.max(0, offset); i < end; i++) {
+      this.organization(result.addObject(), i);
+    }
+    return bytes(list);
+  }
+
+  /**
+   * Writes an organization with all fields as returned by organization_list and organization_show.
+   */
+  private void organization(ObjectNode node, int i) {
+    CKANOrganizationEntity organization = this.organizations.get(i);
+    node.put("approval_status", "approved");
+    node.put("created", "2013-05-28T12:43:19.063406");
+    node.put(
+      "description",
+      ("Die Organisation " + organization.name() + " veröffentlicht Daten. ")
+        .repeat(8)
+    );
+    node.put("display_name", organization.name());
+    node.put("id", organization.id());
+    node.put("image_display_url", "https://www.govdata.de/img/" + i + ".png");
+    node.put("image_url", "https://www.govdata.de/img/" + i + ".png");
+    node.put("is_organization", true);
+    node.put("name", slug(i));
+    node.put("num_followers", 0);
+    node.put("package_count", this.packageCounts.get(i));
+    node.put("state", "active");
+    node.put("title", organization.name());
+    node.put("type", "organization");
+    ArrayNode extras = node.putArray("extras");
+    extras.addObject().put("key", "email").put("value", "info@example.org");
+    extras.addObject().put("key", "url").put("value", "https://example.org/");
+    node.putArray("groups");
+    node.putArray("tags");
+    node.putArray("users");
+  }
+
+  private static List<Department> departments(Settings settings) {
+    List<Department> result = new ArrayList<>(settings.departments());
+    for (int d = 0; d < settings.departments(); d++) {
+      List<SubOrdinate> subOrdinates = new ArrayList<>(settings.subordinates());
+      for (int s = 0; s < settings.subordinates(); s++) {
+        subOrdinates.add(new SubOrdinate("Bundesamt " + d + "-" + s));
+      }
+      result.add(new Department("Bundesministerium " + d, subOrdinates));
+    }
+    return result;
+  }
+
+  /**
+   * Creates organizations of which roughly every third one belongs to a known department; the others are unknown
+   * organizations (e.g. Länder and municipalities) as in the real GovData response.
+   */
+  private static List<CKANOrganizationEntity> organizations(
+    List<Department> departments,
+    Settings settings
+  ) {
+    List<String> known = new ArrayList<>();
+    for (Department department : departments) {
+      known.add(department.name());
+      department.subOrdinates().forEach(s -> known.add(s.name()));
+    }
+    SplittableRandom random = new SplittableRandom(settings.seed());
+    List<CKANOrganizationEntity> result = new ArrayList<>(
+      settings.organizations()
+    );
+    for (int i = 0; i < settings.organizations(); i++) {
+      String name = i % 3 == 0 && !known.isEmpty()
+        ? known.get(random.nextInt(known.size()))
+        : "Organisation " + i;
+      result.add(
+        new CKANOrganizationEntity(
+          name,
+          random.nextInt(1000),
+          String.format("00000000-0000-0000-0000-%012d", i)
+        )
+      );
+    }
+    return result;
+  }
+
+  private static ObjectNode envelope(String action) {
+    ObjectNode response = MAPPER.createObjectNode();
+    response.put(
+      "help",
+      "https://www.govdata.de/ckan/api/3/action/help_show?name=" + action
+    );
+    response.put("success", true);
+    return response;
+  }
+
+  private static String slug(int organization) {
+    return "organisation-" + organization;
+  }
+
+  private static int integer(
+    Map<String, List<String>> parameters,
+    String name,
+    int defaultValue
+  ) {
+    List<String> values = parameters.get(name);
+    return values != null && !values.isEmpty()
+      ? Integer.parseInt(values.get(0))
+      : defaultValue;
+  }
+
+  private static byte[] bytes(ObjectNode node) {
+    try {
+      return MAPPER.writeValueAsBytes(node);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,398 @@
+package govdata.dashboard.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * End-to-end load test: starts the {@link CKANSimulator} and the application in a JVM of its own, requests the
+ * dashboard page and the JSON API at a fixed target rate and reports throughput, latency percentiles, heap and GC of
+ * the application, e.g. ./gradlew loadTest -PloadTest.rps=500 -PloadTest.latency=200ms. Requests are sent open-loop:
+ * every request is due at a fixed time and its latency is measured from that time, so that a stalled server shows up in
+ * the percentiles instead of slowing down the load. Fails if the p99 of a path exceeds --maxP99.
+ */
+public final class LoadTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private LoadTest() {}
+
+  /**
+   * Latencies and errors of one path.
+   */
+  private static final class Recorder {
+
+    private long[] latencies = new long[1024];
+    private int size;
+    private long errors;
+
+    synchronized void record(long nanos, boolean success) {
+      if (this.size == this.latencies.length) {
+        this.latencies = Arrays.copyOf(this.latencies, this.size * 2);
+      }
+      this.latencies[this.size++] = nanos;
+      if (!success) {
+        this.errors++;
+      }
+    }
+
+    synchronized long[] sorted() {
+      long[] sorted = Arrays.copyOf(this.latencies, this.size);
+      Arrays.sort(sorted);
+      return sorted;
+    }
+
+    synchronized long errors() {
+      return this.errors;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options(args);
+    int rps = options.integer("rps", 200);
+    Duration warmup = options.duration("warmup", "10s");
+    Duration duration = options.duration("duration", "30s");
+    Duration maxP99 = options.duration("maxP99", null);
+    List<String> paths = options.strings(
+      "paths",
+      "/api/v0.1/dashboard/,/api/v0.1/dashboard/json"
+    );
+    Path directory = Files.createDirectories(
+      Path.of(options.string("directory", "build/load-test"))
+    );
+    Path results = Path.of(
+      options.string("results", "build/results/loadTest/results.json")
+    );
+
+    try (
+      CKANSimulator simulator = CKANSimulator.start(
+        CKANSimulator.Settings.of(options),
+        0
+      )
+    ) {
+      Path departmentsFile = directory.resolve("departments.json");
+      simulator.writeDepartmentsFile(departmentsFile);
+      int port;
+      try (ServerSocket socket = new ServerSocket(0)) {
+        port = socket.getLocalPort();
+      }
+      List<String> command = new ArrayList<>();
+      command.add(
+        ProcessHandle.current().info().command().orElse("java")
+      );
+      command.add("-Xmx" + options.string("heap", "512m"));
+      command.addAll(options.strings("jvmArgs", ""));
+      command.addAll(
+        List.of(
+          "-cp",
+          System.getProperty("java.class.path"),
+          "govdata.dashboard.GovDataDashboardApplication",
+          "--server.port=" + port,
+          "--govdata.ckan.url=" + simulator.url(),
+          "--departments.file=" + departmentsFile.toAbsolutePath(),
+          "--govdata.refresh.interval=" +
+          options.string("refreshInterval", "10s")
+        )
+      );
+      // e.g. --appArgs=--govdata.refresh.incremental.enabled=true
+      command.addAll(options.strings("appArgs", ""));
+      File log = directory.resolve("application.log").toFile();
+      Process application = new ProcessBuilder(command)
+        .directory(directory.toFile())
+        .redirectErrorStream(true)
+        .redirectOutput(log)
+        .start();
+      ConnectionProvider connections = ConnectionProvider
+        .builder("load-test")
+        .maxConnections(options.integer("connections", 500))
+        .pendingAcquireMaxCount(-1)
+        .build();
+      try {
+        HttpClient client = HttpClient
+          .create(connections)
+          .baseUrl("http://localhost:" + port)
+          .responseTimeout(options.duration("timeout", "10s"));
+        awaitStarted(client, application, log);
+
+        System.out.printf(
+          "Warming up for %ss at %d requests/s%n",
+          warmup.toSeconds(),
+          rps
+        );
+        run(client, paths, rps, warmup);
+
+        Metrics before = Metrics.read(client);
+        long ckanRequests = simulator.requests();
+        long ckanErrors = simulator.errors();
+        AtomicLong peakHeap = new AtomicLong();
+        Disposable heapSampling = Flux
+          .interval(Duration.ofMillis(500))
+          .concatMap(tick -> metric(client, "jvm.memory.used", "area:heap"))
+          .subscribe(heap -> peakHeap.accumulateAndGet(heap.longValue(), Math::max));
+        System.out.printf(
+          "Measuring for %ss at %d requests/s%n",
+          duration.toSeconds(),
+          rps
+        );
+        long started = System.nanoTime();
+        Map<String, Recorder> recorders = run(client, paths, rps, duration);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        heapSampling.dispose();
+        Metrics after = Metrics.read(client);
+
+        ObjectNode report = MAPPER.createObjectNode();
+        report.put("rps", rps);
+        report.put("duration", duration.toString());
+        ArrayNode pathReports = report.putArray("paths");
+        boolean failed = false;
+        System.out.printf(
+          "%-32s %9s %7s %9s %9s %9s %9s %9s%n",
+          "Path",
+          "Requests",
+          "Errors",
+          "Rate/s",
+          "p50 ms",
+          "p99 ms",
+          "p99.9 ms",
+          "Max ms"
+        );
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+          long[] latencies = entry.getValue().sorted();
+          double p50 = millis(percentile(latencies, 0.5));
+          double p99 = millis(percentile(latencies, 0.99));
+          double p999 = millis(percentile(latencies, 0.999));
+          double max = millis(percentile(latencies, 1));
+          System.out.printf(
+            "%-32s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+            entry.getKey(),
+            latencies.length,
+            entry.getValue().errors(),
+            latencies.length / seconds,
+            p50,
+            p99,
+            p999,
+            max
+          );
+          pathReports
+            .addObject()
+            .put("path", entry.getKey())
+            .put("requests", latencies.length)
+            .put("errors", entry.getValue().errors())
+            .put("throughput", latencies.length / seconds)
+            .put("p50", p50)
+            .put("p99", p99)
+            .put("p999", p999)
+            .put("max", max);
+          if (maxP99 != null && p99 > maxP99.toMillis()) {
+            failed = true;
+          }
+        }
+        System.out.printf(
+          "Heap: peak %.0f MB, after %.0f MB of %.0f MB%n",
+          peakHeap.get() / 1e6,
+          after.heapUsed() / 1e6,
+          after.heapMax() / 1e6
+        );
+        System.out.printf(
+          "GC: %d pauses, %.0f ms in total, %.0f MB allocated%n",
+          after.gcPauses() - before.gcPauses(),
+          (after.gcPauseSeconds() - before.gcPauseSeconds()) * 1000,
+          (after.allocatedBytes() - before.allocatedBytes()) / 1e6
+        );
+        System.out.printf(
+          "CKAN simulator: %d requests, %d injected errors%n",
+          simulator.requests() - ckanRequests,
+          simulator.errors() - ckanErrors
+        );
+        report
+          .putObject("heap")
+          .put("peak", peakHeap.get())
+          .put("after", after.heapUsed())
+          .put("max", after.heapMax());
+        report
+          .putObject("gc")
+          .put("pauses", after.gcPauses() - before.gcPauses())
+          .put("pauseSeconds", after.gcPauseSeconds() - before.gcPauseSeconds())
+          .put("allocatedBytes", after.allocatedBytes() - before.allocatedBytes());
+        Files.createDirectories(results.toAbsolutePath().getParent());
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(results.toFile(), report);
+        if (failed) {
+          System.err.printf("p99 exceeds %d ms%n", maxP99.toMillis());
+          System.exit(1);
+        }
+      } finally {
+        connections.dispose();
+        application.destroy();
+        application.waitFor();
+      }
+    }
+  }
+
+  /**
+   * JVM metrics of the application, read from the actuator.
+   */
+  private record Metrics(
+    double heapUsed,
+    double heapMax,
+    long gcPauses,
+    double gcPauseSeconds,
+    double allocatedBytes
+  ) {
+    static Metrics read(HttpClient client) {
+      return new Metrics(
+        metric(client, "jvm.memory.used", "area:heap").block(),
+        metric(client, "jvm.memory.max", "area:heap").block(),
+        metric(client, "jvm.gc.pause", null, "COUNT").block().longValue(),
+        metric(client, "jvm.gc.pause", null, "TOTAL_TIME").block(),
+        metric(client, "jvm.gc.memory.allocated", null).block()
+      );
+    }
+  }
+
+  private static Mono<Double> metric(
+    HttpClient client,
+    String name,
+    String tag
+  ) {
+    return metric(client, name, tag, null);
+  }
+
+  /**
+   * @param statistic Statistic of the meter, the first one if null
+   * @return The value, 0 if the meter does not exist yet (e.g. jvm.gc.pause before the first collection)
+   */
+  private static Mono<Double> metric(
+    HttpClient client,
+    String name,
+    String tag,
+    String statistic
+  ) {
+    return client
+      .get()
+      .uri("/actuator/metrics/" + name + (tag != null ? "?tag=" + tag : ""))
+      .responseSingle((response, body) ->
+        response.status().code() == 200
+          ? body.asByteArray()
+          : Mono.<byte[]>empty()
+      )
+      .map(body -> {
+        try {
+          for (JsonNode measurement : MAPPER.readTree(body).path("measurements")) {
+            if (
+              statistic == null ||
+              statistic.equals(measurement.path("statistic").asText())
+            ) {
+              return measurement.path("value").asDouble();
+            }
+          }
+          return 0.0;
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      })
+      .defaultIfEmpty(0.0);
+  }
+
+  /**
+   * Waits until the first snapshot has been fetched from the simulator.
+   */
+  private static void awaitStarted(
+    HttpClient client,
+    Process application,
+    File log
+  ) throws InterruptedException {
+    long deadline = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+    while (System.nanoTime() < deadline) {
+      if (!application.isAlive()) {
+        throw new IllegalStateException(
+          "The application exited, see " + log.getAbsolutePath()
+        );
+      }
+      Integer status = client
+        .get()
+        .uri("/api/v0.1/dashboard/json")
+        .responseSingle((response, body) ->
+          body.then(Mono.just(response.status().code()))
+        )
+        .onErrorReturn(0)
+        .block();
+      if (status != null && status == 200) {
+        return;
+      }
+      Thread.sleep(100);
+    }
+    throw new IllegalStateException(
+      "The application did not serve a snapshot within 2 minutes, see " +
+      log.getAbsolutePath()
+    );
+  }
+
+  /**
+   * Sends requests to the paths in turn, one every 1/rps seconds regardless of outstanding responses.
+   * @return The latencies per path, measured from the time a request was due
+   */
+  private static Map<String, Recorder> run(
+    HttpClient client,
+    List<String> paths,
+    int rps,
+    Duration duration
+  ) {
+    Map<String, Recorder> recorders = new LinkedHashMap<>();
+    paths.forEach(path -> recorders.put(path, new Recorder()));
+    long period = 1_000_000_000L / rps;
+    long count = duration.toNanos() / period;
+    long start = System.nanoTime();
+    Flux
+      .interval(Duration.ofNanos(period))
+      .take(count)
+      .flatMap(
+        i -> {
+          String path = paths.get((int) (i % paths.size()));
+          long due = start + (i + 1) * period;
+          return client
+            .get()
+            .uri(path)
+            .responseSingle((response, body) ->
+              body.then(Mono.just(response.status().code() < 400))
+            )
+            .onErrorReturn(false)
+            .doOnNext(success ->
+              recorders.get(path).record(System.nanoTime() - due, success)
+            );
+        },
+        Integer.MAX_VALUE
+      )
+      .blockLast();
+    return recorders;
+  }
+
+  private static long percentile(long[] sorted, double quantile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(quantile * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+}
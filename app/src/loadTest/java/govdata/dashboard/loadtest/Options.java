@@ -0,0 +1,54 @@
+package govdata.dashboard.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Command line options in the form --name=value, e.g. --rps=500 or --latency=50ms.
+ */
+final class Options {
+
+  private final Map<String, String> values = new HashMap<>();
+
+  Options(String[] args) {
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (!arg.startsWith("--") || separator < 0) {
+        throw new IllegalArgumentException(
+          "Expected --name=value, was " + arg
+        );
+      }
+      this.values.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+  }
+
+  String string(String name, String defaultValue) {
+    return this.values.getOrDefault(name, defaultValue);
+  }
+
+  List<String> strings(String name, String defaultValue) {
+    String value = this.string(name, defaultValue);
+    return value.isBlank() ? List.of() : List.of(value.split(","));
+  }
+
+  int integer(String name, int defaultValue) {
+    String value = this.values.get(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  double decimal(String name, double defaultValue) {
+    String value = this.values.get(name);
+    return value != null ? Double.parseDouble(value) : defaultValue;
+  }
+
+  /**
+   * @return The duration, e.g. 500ms or 10s, null if the option is missing and there is no default
+   */
+  Duration duration(String name, String defaultValue) {
+    String value = this.string(name, defaultValue);
+    return value != null ? DurationStyle.detectAndParse(value) : null;
+  }
+}
@@ -0,0 +1,244 @@
+package govdata.dashboard.configuration;
+
+import govdata.dashboard.service.DashboardResponseCache;
+import govdata.dashboard.service.PrecomputedResponse;
+import govdata.dashboard.util.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Sheds load in front of the dashboard controllers with an adaptive concurrency limit each for the rendered page and the
+ * JSON endpoints (/json and /departments). A request over the limit does not queue: it is answered right away with the
+ * precomputed response of the newest snapshot if there is one (the page resp. the full JSON list), otherwise with 503
+ * and Retry-After. The live stream is not limited, its connections stay open by design.
+ * The limits, the requests in flight and the rejections are exported as govdata.admission.limit,
+ * govdata.admission.in-flight and govdata.admission.rejected, tagged by endpoint.
+ */
+@Component
+@ConditionalOnProperty(
+  name = "govdata.admission.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class AdmissionControlFilter implements WebFilter {
+
+  private static final String DASHBOARD_PATH = "/api/v0.1/dashboard";
+
+  /**
+   * A limited endpoint.
+   * @param fallback The response to serve instead of a 503, if any
+   */
+  private record Endpoint(
+    AdaptiveConcurrencyLimit limit,
+    Supplier<Optional<PrecomputedResponse>> fallback,
+    Counter cached,
+    Counter unavailable
+  ) {}
+
+  private final Endpoint html;
+  private final Endpoint json;
+  private final Endpoint departments;
+  private final String retryAfter;
+
+  @Autowired
+  public AdmissionControlFilter(
+    Optional<DashboardResponseCache> responseCache,
+    MeterRegistry meterRegistry,
+    @Value("${govdata.admission.retry-after}") Duration retryAfter,
+    @Value("${govdata.admission.backoff-ratio}") double backoffRatio,
+    @Value("${govdata.admission.html.initial-limit}") int htmlInitialLimit,
+    @Value("${govdata.admission.html.min-limit}") int htmlMinLimit,
+    @Value("${govdata.admission.html.max-limit}") int htmlMaxLimit,
+    @Value("${govdata.admission.html.latency-threshold}") Duration htmlLatencyThreshold,
+    @Value("${govdata.admission.json.initial-limit}") int jsonInitialLimit,
+    @Value("${govdata.admission.json.min-limit}") int jsonMinLimit,
+    @Value("${govdata.admission.json.max-limit}") int jsonMaxLimit,
+    @Value("${govdata.admission.json.latency-threshold}") Duration jsonLatencyThreshold
+  ) {
+    this(
+      new AdaptiveConcurrencyLimit(
+        "html",
+        htmlInitialLimit,
+        htmlMinLimit,
+        htmlMaxLimit,
+        htmlLatencyThreshold,
+        backoffRatio
+      ),
+      new AdaptiveConcurrencyLimit(
+        "json",
+        jsonInitialLimit,
+        jsonMinLimit,
+        jsonMaxLimit,
+        jsonLatencyThreshold,
+        backoffRatio
+      ),
+      responseCache,
+      meterRegistry,
+      retryAfter
+    );
+  }
+
+  public AdmissionControlFilter(
+    AdaptiveConcurrencyLimit htmlLimit,
+    AdaptiveConcurrencyLimit jsonLimit,
+    Optional<DashboardResponseCache> responseCache,
+    MeterRegistry meterRegistry,
+    Duration retryAfter
+  ) {
+    this.html =
+      this.endpoint(
+          htmlLimit,
+          () -> responseCache.flatMap(DashboardResponseCache::latestHtml),
+          meterRegistry
+        );
+    this.json =
+      this.endpoint(
+          jsonLimit,
+          () -> responseCache.flatMap(DashboardResponseCache::latestJson),
+          meterRegistry
+        );
+    // a query result cannot be served from the full list, but shares the JSON limit
+    this.departments =
+      new Endpoint(
+        jsonLimit,
+        Optional::empty,
+        this.json.cached(),
+        this.json.unavailable()
+      );
+    // whole seconds, rounded up
+    this.retryAfter =
+      String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    Endpoint endpoint = this.endpoint(exchange);
+    if (endpoint == null) {
+      return chain.filter(exchange);
+    }
+    Optional<AdaptiveConcurrencyLimit.Permit> permit =
+      endpoint.limit().tryAcquire();
+    if (permit.isEmpty()) {
+      return this.reject(exchange, endpoint);
+    }
+    return chain
+      .filter(exchange)
+      .doFinally(signal -> {
+        if (signal == SignalType.CANCEL) {
+          permit.get().ignore();
+        } else {
+          permit
+            .get()
+            .release(
+              signal == SignalType.ON_ERROR || this.isServerError(exchange)
+            );
+        }
+      });
+  }
+
+  private Endpoint endpoint(ServerWebExchange exchange) {
+    HttpMethod method = exchange.getRequest().getMethod();
+    if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+      return null;
+    }
+    String path = exchange
+      .getRequest()
+      .getPath()
+      .pathWithinApplication()
+      .value();
+    return switch (path) {
+      case DASHBOARD_PATH + "/" -> this.html;
+      case DASHBOARD_PATH + "/json" -> this.json;
+      case DASHBOARD_PATH + "/departments" -> this.departments;
+      default -> null;
+    };
+  }
+
+  private Mono<Void> reject(ServerWebExchange exchange, Endpoint endpoint) {
+    ServerHttpResponse response = exchange.getResponse();
+    Optional<PrecomputedResponse> fallback = endpoint.fallback().get();
+    if (fallback.isPresent()) {
+      endpoint.cached().increment();
+      Duration age = Duration.between(
+        fallback.get().lastModified(),
+        Instant.now()
+      );
+      response
+        .getHeaders()
+        .set(HttpHeaders.AGE, String.valueOf(Math.max(0, age.toSeconds())));
+      return fallback.get().write(exchange);
+    }
+    endpoint.unavailable().increment();
+    response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+    response.getHeaders().set(HttpHeaders.RETRY_AFTER, this.retryAfter);
+    return response.setComplete();
+  }
+
+  private boolean isServerError(ServerWebExchange exchange) {
+    HttpStatusCode status = exchange.getResponse().getStatusCode();
+    return status != null && status.is5xxServerError();
+  }
+
+  private Endpoint endpoint(
+    AdaptiveConcurrencyLimit limit,
+    Supplier<Optional<PrecomputedResponse>> fallback,
+    MeterRegistry meterRegistry
+  ) {
+    Gauge
+      .builder(
+        "govdata.admission.limit",
+        limit,
+        AdaptiveConcurrencyLimit::getLimit
+      )
+      .description("Current adaptive concurrency limit")
+      .tag("endpoint", limit.getName())
+      .register(meterRegistry);
+    Gauge
+      .builder(
+        "govdata.admission.in-flight",
+        limit,
+        AdaptiveConcurrencyLimit::getInFlight
+      )
+      .description("Admitted requests in flight")
+      .tag("endpoint", limit.getName())
+      .register(meterRegistry);
+    return new Endpoint(
+      limit,
+      fallback,
+      this.rejected(meterRegistry, limit.getName(), "cached"),
+      this.rejected(meterRegistry, limit.getName(), "unavailable")
+    );
+  }
+
+  private Counter rejected(
+    MeterRegistry meterRegistry,
+    String endpoint,
+    String outcome
+  ) {
+    return Counter
+      .builder("govdata.admission.rejected")
+      .description("Requests over the concurrency limit, served the last cached response resp. answered with 503")
+      .tag("endpoint", endpoint)
+      .tag("outcome", outcome)
+      .register(meterRegistry);
+  }
+}
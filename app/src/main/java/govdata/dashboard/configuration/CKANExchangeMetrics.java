@@ -0,0 +1,80 @@
+package govdata.dashboard.configuration;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Splits the latency of CKAN API calls into the time to the response headers (time to first byte) and the time to read
+ * the body, and records the size of the body. Connection setup is recorded by the Reactor Netty client metrics
+ * (reactor.netty.http.client.connect.time) if enabled with govdata.ckan.client-metrics.
+ */
+public class CKANExchangeMetrics implements ExchangeFilterFunction {
+
+  private final MeterRegistry meterRegistry;
+
+  public CKANExchangeMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(
+    ClientRequest request,
+    ExchangeFunction next
+  ) {
+    // CKAN actions are addressed by path, the query only holds parameters
+    String uri = request.url().getPath();
+    long start = System.nanoTime();
+    return next
+      .exchange(request)
+      .map(response -> {
+        long headersReceived = System.nanoTime();
+        this.latency(uri, "ttfb")
+          .record(headersReceived - start, TimeUnit.NANOSECONDS);
+        AtomicLong bytes = new AtomicLong();
+        return response
+          .mutate()
+          .body(body ->
+            body
+              .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+              .doFinally(signal -> {
+                if (signal == SignalType.ON_COMPLETE) {
+                  this.latency(uri, "body")
+                    .record(
+                      System.nanoTime() - headersReceived,
+                      TimeUnit.NANOSECONDS
+                    );
+                  this.payload(uri).record(bytes.get());
+                }
+              })
+          )
+          .build();
+      });
+  }
+
+  private Timer latency(String uri, String phase) {
+    return Timer
+      .builder("govdata.ckan.latency")
+      .description("Latency of CKAN API calls until the response headers (ttfb) and for reading the body (body)")
+      .tag("uri", uri)
+      .tag("phase", phase)
+      .register(this.meterRegistry);
+  }
+
+  private DistributionSummary payload(String uri) {
+    return DistributionSummary
+      .builder("govdata.ckan.payload")
+      .description("Size of CKAN API response bodies")
+      .baseUnit("bytes")
+      .tag("uri", uri)
+      .register(this.meterRegistry);
+  }
+}
@@ -1,18 +1,318 @@
 package govdata.dashboard.configuration;
 
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class DashboardConfiguration {
 
+  /**
+   * An additional CKAN portal (govdata.sources[n]).
+   * @param name Name of the source in the per-source breakdown
+   * @param url Base URL of the CKAN API
+   * @param departmentsFile Departments mapping of the portal's organization names
+   * @param timeout Maximum time to fetch the counts of the source
+   * @param maxConnections Size of the source's connection pool
+   */
+  record SourceProperties(
+    String name,
+    String url,
+    String departmentsFile,
+    @DefaultValue("30s") Duration timeout,
+    @DefaultValue("10") int maxConnections
+  ) {}
+
   @Value("${govdata.ckan.url}")
   private String baseUrl;
 
+  // additional sources use the same circuit breaker settings as the primary source
+  @Value("${govdata.ckan.circuit-breaker.failure-threshold}")
+  private int failureThreshold;
+
+  @Value("${govdata.ckan.circuit-breaker.initial-backoff}")
+  private Duration initialBackoff;
+
+  @Value("${govdata.ckan.circuit-breaker.max-backoff}")
+  private Duration maxBackoff;
+
+  // additional sources resolve organization names like the primary source
+  @Value("${govdata.matching.fuzzy.enabled}")
+  private boolean fuzzyEnabled;
+
+  @Value("${govdata.matching.fuzzy.threshold}")
+  private double fuzzyThreshold;
+
+  private final List<ConnectionProvider> sourceConnectionProviders =
+    new CopyOnWriteArrayList<>();
+
+  /**
+   * WebClient for the CKAN API. Built from the auto-configured builder, so that requests are observed
+   * (http.client.requests), with latency split into TTFB and body.
+   */
   @Bean
-  WebClient webClient() {
-    return WebClient.builder().baseUrl(this.baseUrl).build();
+  WebClient webClient(
+    WebClient.Builder builder,
+    HttpClient ckanHttpClient,
+    @Value("${govdata.ckan.max-in-memory-size}") DataSize maxInMemorySize,
+    MeterRegistry meterRegistry
+  ) {
+    return builder
+      .baseUrl(this.baseUrl)
+      .clientConnector(new ReactorClientHttpConnector(ckanHttpClient))
+      // the organization list is streamed, but aggregated responses like the name-only list are buffered
+      .codecs(codecs ->
+        codecs.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes())
+      )
+      .filter(new CKANExchangeMetrics(meterRegistry))
+      .build();
+  }
+
+  /**
+   * Connection pool dedicated to the CKAN API, so that it can be sized for the upstream independently of other clients.
+   * A full pool queues at most pending-acquire-max-count requests for pending-acquire-timeout before failing fast.
+   */
+  @Bean(destroyMethod = "dispose")
+  public ConnectionProvider ckanConnectionProvider(
+    @Value("${govdata.ckan.pool.max-connections}") int maxConnections,
+    @Value("${govdata.ckan.pool.pending-acquire-max-count}") int pendingAcquireMaxCount,
+    @Value("${govdata.ckan.pool.pending-acquire-timeout}") Duration pendingAcquireTimeout,
+    @Value("${govdata.ckan.pool.max-idle-time}") Duration maxIdleTime,
+    @Value("${govdata.ckan.pool.max-life-time}") Duration maxLifeTime,
+    @Value("${govdata.ckan.pool.eviction-interval}") Duration evictionInterval
+  ) {
+    return ConnectionProvider
+      .builder("ckan")
+      .maxConnections(maxConnections)
+      .pendingAcquireMaxCount(pendingAcquireMaxCount)
+      .pendingAcquireTimeout(pendingAcquireTimeout)
+      // close connections before the server or a proxy drops them silently
+      .maxIdleTime(maxIdleTime)
+      .maxLifeTime(maxLifeTime)
+      .evictInBackground(evictionInterval)
+      .metrics(true)
+      .build();
+  }
+
+  /**
+   * Reactor Netty client for the CKAN API with timeouts, keep-alive, compression and HTTP/2 where the server supports it.
+   * Reactor Netty client metrics, e.g. reactor.netty.http.client.connect.time, are only recorded with
+   * govdata.ckan.client-metrics, recording them for every request measurably increases the latency under load.
+   */
+  @Bean
+  public HttpClient ckanHttpClient(
+    ConnectionProvider ckanConnectionProvider,
+    @Value("${govdata.ckan.connect-timeout}") Duration connectTimeout,
+    @Value("${govdata.ckan.response-timeout}") Duration responseTimeout,
+    @Value("${govdata.ckan.keep-alive}") boolean keepAlive,
+    @Value("${govdata.ckan.http2}") boolean http2,
+    @Value("${govdata.ckan.compress}") boolean compress,
+    @Value("${govdata.ckan.client-metrics}") boolean clientMetrics
+  ) {
+    return HttpClient
+      .create(ckanConnectionProvider)
+      .option(
+        ChannelOption.CONNECT_TIMEOUT_MILLIS,
+        (int) connectTimeout.toMillis()
+      )
+      .option(ChannelOption.SO_KEEPALIVE, keepAlive)
+      .keepAlive(keepAlive)
+      // time until the response headers arrive, a stalled body is bounded by the timeout of the refresh
+      .responseTimeout(responseTimeout)
+      // negotiated via ALPN over TLS, plain connections stay on HTTP/1.1
+      .protocol(
+        http2
+          ? new HttpProtocol[] { HttpProtocol.H2, HttpProtocol.HTTP11 }
+          : new HttpProtocol[] { HttpProtocol.HTTP11 }
+      )
+      // sends Accept-Encoding: gzip and decodes gzip and deflate responses transparently
+      .compress(compress)
+      // tag by path only, the query of paged requests would create a meter per page
+      .metrics(clientMetrics, uri -> uri.split("\\?", 2)[0]);
+  }
+
+  @Bean
+  CKANClient ckanClient(
+    WebClient webClient,
+    CircuitBreaker ckanCircuitBreaker,
+    @Value("${govdata.ckan.paging.enabled}") boolean pagingEnabled,
+    @Value("${govdata.ckan.paging.page-size}") int pageSize,
+    @Value("${govdata.ckan.paging.parallelism}") int parallelism,
+    @Value("${govdata.ckan.paging.retries}") int retries,
+    @Value("${govdata.ckan.paging.retry-backoff}") Duration retryBackoff
+  ) {
+    return new CKANClient(
+      webClient,
+      ckanCircuitBreaker,
+      new CKANClient.Paging(
+        pagingEnabled,
+        pageSize,
+        parallelism,
+        retries,
+        retryBackoff
+      )
+    );
+  }
+
+  /**
+   * Circuit breaker shared by all calls to the CKAN API, so that a failing upstream is not hammered by requests and background refreshes.
+   */
+  @Bean
+  CircuitBreaker ckanCircuitBreaker(
+    @Value("${govdata.ckan.circuit-breaker.failure-threshold}") int failureThreshold,
+    @Value("${govdata.ckan.circuit-breaker.initial-backoff}") Duration initialBackoff,
+    @Value("${govdata.ckan.circuit-breaker.max-backoff}") Duration maxBackoff,
+    MeterRegistry meterRegistry
+  ) {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(
+      "CKAN API",
+      failureThreshold,
+      initialBackoff,
+      maxBackoff
+    );
+    Gauge
+      .builder(
+        "govdata.ckan.circuit.state",
+        circuitBreaker,
+        breaker -> breaker.getState().ordinal()
+      )
+      .description("State of the CKAN circuit breaker (0 = closed, 1 = open, 2 = half-open)")
+      .register(meterRegistry);
+    return circuitBreaker;
+  }
+
+  /**
+   * All CKAN portals whose counts are merged: GovData itself (the primary source, configured with govdata.ckan.*) and any
+   * additional portals listed under govdata.sources. Every additional portal has its own connection pool, circuit breaker
+   * and departments mapping, so that a slow or failing portal does not affect the others.
+   */
+  @Bean
+  List<CKANSource> ckanSources(
+    CKANClient ckanClient,
+    DepartmentService departmentService,
+    @Value("${govdata.ckan.name}") String name,
+    @Value("${govdata.ckan.timeout}") Duration timeout,
+    @Value("${govdata.ckan.max-in-memory-size}") DataSize maxInMemorySize,
+    @Value("${govdata.ckan.client-metrics}") boolean clientMetrics,
+    WebClient.Builder builder,
+    Environment environment,
+    MeterRegistry meterRegistry
+  ) {
+    List<CKANSource> sources = new ArrayList<>();
+    sources.add(new CKANSource(name, ckanClient, departmentService, timeout));
+    Set<String> names = new HashSet<>(Set.of(name));
+    List<SourceProperties> additionalSources = Binder
+      .get(environment)
+      .bind("govdata.sources", Bindable.listOf(SourceProperties.class))
+      .orElse(List.of());
+    for (SourceProperties source : additionalSources) {
+      if (
+        source.name() == null ||
+        source.url() == null ||
+        source.departmentsFile() == null
+      ) {
+        throw new IllegalStateException(
+          "Every entry of govdata.sources needs a name, url and departments-file"
+        );
+      }
+      if (!names.add(source.name())) {
+        throw new IllegalStateException(
+          "Duplicate CKAN source name " + source.name()
+        );
+      }
+      sources.add(
+        this.additionalSource(
+          source,
+          maxInMemorySize,
+          clientMetrics,
+          builder,
+          meterRegistry
+        )
+      );
+    }
+    return sources;
+  }
+
+  private CKANSource additionalSource(
+    SourceProperties source,
+    DataSize maxInMemorySize,
+    boolean clientMetrics,
+    WebClient.Builder builder,
+    MeterRegistry meterRegistry
+  ) {
+    ConnectionProvider connectionProvider = ConnectionProvider
+      .builder("ckan-" + source.name())
+      .maxConnections(source.maxConnections())
+      .pendingAcquireTimeout(source.timeout())
+      .metrics(true)
+      .build();
+    this.sourceConnectionProviders.add(connectionProvider);
+    HttpClient httpClient = HttpClient
+      .create(connectionProvider)
+      .responseTimeout(source.timeout())
+      .compress(true)
+      .metrics(clientMetrics, uri -> uri.split("\\?", 2)[0]);
+    WebClient webClient = builder
+      .clone()
+      .baseUrl(source.url())
+      .clientConnector(new ReactorClientHttpConnector(httpClient))
+      .codecs(codecs ->
+        codecs.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes())
+      )
+      .filter(new CKANExchangeMetrics(meterRegistry))
+      .build();
+    DepartmentService departmentService = new DepartmentService(
+      source.departmentsFile(),
+      new DepartmentIndex.Fuzzy(this.fuzzyEnabled, this.fuzzyThreshold),
+      event -> {},
+      Schedulers.boundedElastic()
+    );
+    departmentService.loadDefaultDepartments();
+    return new CKANSource(
+      source.name(),
+      new CKANClient(
+        webClient,
+        new CircuitBreaker(
+          "CKAN API " + source.name(),
+          this.failureThreshold,
+          this.initialBackoff,
+          this.maxBackoff
+        ),
+        CKANClient.Paging.disabled()
+      ),
+      departmentService,
+      source.timeout()
+    );
+  }
+
+  @PreDestroy
+  void disposeSourceConnectionProviders() {
+    this.sourceConnectionProviders.forEach(ConnectionProvider::dispose);
   }
 }
@@ -0,0 +1,36 @@
+package govdata.dashboard.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.ViewResolverRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.thymeleaf.spring6.view.reactive.ThymeleafReactiveViewResolver;
+
+/**
+ * Instruments the rendering of the Thymeleaf views. The metrics are exposed on /actuator/prometheus.
+ */
+@Configuration
+public class MetricsConfiguration implements WebFluxConfigurer {
+
+  private final ThymeleafReactiveViewResolver thymeleafViewResolver;
+  private final MeterRegistry meterRegistry;
+
+  public MetricsConfiguration(
+    ThymeleafReactiveViewResolver thymeleafViewResolver,
+    MeterRegistry meterRegistry
+  ) {
+    this.thymeleafViewResolver = thymeleafViewResolver;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void configureViewResolvers(ViewResolverRegistry registry) {
+    registry.viewResolver(
+      new TimedViewResolver(
+        this.thymeleafViewResolver,
+        this.thymeleafViewResolver.getOrder(),
+        this.meterRegistry
+      )
+    );
+  }
+}
@@ -0,0 +1,50 @@
+package govdata.dashboard.configuration;
+
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Scheduler for all blocking work of the service layer (file I/O, memory-mapped reads, parsing of files), so that it
+ * never runs on the Reactor Netty event loops that serve the controllers. Tests fail on any blocking call on an event
+ * loop (BlockHound).
+ */
+@Configuration
+@Slf4j
+public class SchedulerConfiguration {
+
+  public enum BlockingScheduler {
+    /**
+     * A new virtual thread per task: blocking calls park the virtual thread instead of occupying a platform thread.
+     */
+    VIRTUAL,
+    /**
+     * Reactor's bounded elastic pool of platform threads.
+     */
+    BOUNDED_ELASTIC,
+  }
+
+  @Bean(destroyMethod = "dispose")
+  public Scheduler blockingScheduler(
+    @Value("${govdata.blocking.scheduler}") BlockingScheduler type
+  ) {
+    log.info("Running blocking work on {} threads", type);
+    return switch (type) {
+      case VIRTUAL -> Schedulers.fromExecutorService(
+        Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("govdata-blocking-", 0).factory()
+        ),
+        "govdata-blocking"
+      );
+      case BOUNDED_ELASTIC -> Schedulers.newBoundedElastic(
+        Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+        Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+        "govdata-blocking"
+      );
+    };
+  }
+}
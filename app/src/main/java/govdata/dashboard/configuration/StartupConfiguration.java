@@ -0,0 +1,38 @@
+package govdata.dashboard.configuration;
+
+import govdata.dashboard.controller.DashboardRenderingController;
+import govdata.dashboard.controller.DashboardRestController;
+import govdata.dashboard.service.DashboardResponseCache;
+import govdata.dashboard.service.DepartmentHistoryStore;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotRefresher;
+import govdata.dashboard.service.DepartmentSnapshotStore;
+import govdata.dashboard.service.DepartmentsFileWatcher;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Beans that are created while the application starts even with lazy initialization (spring.main.lazy-initialization,
+ * set by the startup profile): the dashboard endpoints with everything they need to answer the first request, and the
+ * beans that start background work. Everything else, e.g. the history, drill-down and admin endpoints, is created on
+ * first use.
+ */
+@Configuration
+public class StartupConfiguration {
+
+  @Bean
+  static LazyInitializationExcludeFilter eagerBeans() {
+    return LazyInitializationExcludeFilter.forBeanTypes(
+      DashboardRenderingController.class,
+      DashboardRestController.class,
+      DepartmentService.class,
+      DepartmentSnapshotStore.class,
+      DepartmentSnapshotRefresher.class,
+      DepartmentsFileWatcher.class,
+      DepartmentHistoryStore.class,
+      DashboardResponseCache.class,
+      StartupInitializer.class
+    );
+  }
+}
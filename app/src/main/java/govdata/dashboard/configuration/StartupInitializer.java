@@ -0,0 +1,25 @@
+package govdata.dashboard.configuration;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.spring6.ISpringWebFluxTemplateEngine;
+
+/**
+ * Runs one-time initializations that read from the classpath while the application starts, which would otherwise block
+ * the event loop that first needs them: Thymeleaf reads its version properties on first use, and the Brotli native
+ * library is extracted on the first Brotli-encoded CKAN response or precomputed response.
+ */
+@Component
+@RequiredArgsConstructor
+public class StartupInitializer {
+
+  private final ISpringWebFluxTemplateEngine templateEngine;
+
+  @PostConstruct
+  public void initialize() {
+    this.templateEngine.getConfiguration();
+    Brotli4jLoader.isAvailable();
+  }
+}
@@ -0,0 +1,93 @@
+package govdata.dashboard.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.core.Ordered;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.result.view.View;
+import org.springframework.web.reactive.result.view.ViewResolver;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves views with a delegate resolver and records the time each view takes to render and write the response
+ * (govdata.view.render, tagged by view name). Ordered right before the delegate, so that it takes precedence.
+ */
+public class TimedViewResolver implements ViewResolver, Ordered {
+
+  private final ViewResolver delegate;
+  private final int order;
+  private final MeterRegistry meterRegistry;
+
+  public TimedViewResolver(
+    ViewResolver delegate,
+    int delegateOrder,
+    MeterRegistry meterRegistry
+  ) {
+    this.delegate = delegate;
+    this.order = delegateOrder - 1;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Mono<View> resolveViewName(String viewName, Locale locale) {
+    return this.delegate.resolveViewName(viewName, locale)
+      .map(view -> new TimedView(view, viewName));
+  }
+
+  @Override
+  public int getOrder() {
+    return this.order;
+  }
+
+  private class TimedView implements View {
+
+    private final View view;
+    private final String viewName;
+
+    TimedView(View view, String viewName) {
+      this.view = view;
+      this.viewName = viewName;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+      return this.view.getSupportedMediaTypes();
+    }
+
+    @Override
+    public boolean isRedirectView() {
+      return this.view.isRedirectView();
+    }
+
+    @Override
+    public Mono<Void> render(
+      Map<String, ?> model,
+      MediaType contentType,
+      ServerWebExchange exchange
+    ) {
+      return Mono.defer(() -> {
+        Timer.Sample sample = Timer.start(
+          TimedViewResolver.this.meterRegistry
+        );
+        return this.view.render(model, contentType, exchange)
+          .doOnSuccess(done -> this.stop(sample, "success"))
+          .doOnError(error -> this.stop(sample, "error"));
+      });
+    }
+
+    private void stop(Timer.Sample sample, String outcome) {
+      sample.stop(
+        Timer
+          .builder("govdata.view.render")
+          .description("Time to render a view and write the response")
+          .tag("view", this.viewName)
+          .tag("outcome", outcome)
+          .register(TimedViewResolver.this.meterRegistry)
+      );
+    }
+  }
+}
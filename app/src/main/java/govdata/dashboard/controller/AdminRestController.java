@@ -0,0 +1,49 @@
+package govdata.dashboard.controller;
+
+import govdata.dashboard.model.department.OrganizationMatchReport;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.OrganizationMatchReportService;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/v0.1/admin")
+@RequiredArgsConstructor
+public class AdminRestController {
+
+  private final DepartmentService departmentService;
+  private final OrganizationMatchReportService organizationMatchReportService;
+
+  /**
+   * Reloads the departments file without a restart. An invalid file is rejected and the current mapping stays in effect.
+   */
+  @PostMapping("/departments/reload")
+  public Mono<ResponseEntity<Map<String, Object>>> reloadDepartments() {
+    return this.departmentService.reload()
+      .map(index ->
+        ResponseEntity.ok(Map.<String, Object>of("departments", index.size()))
+      )
+      .onErrorResume(error ->
+        Mono.just(
+          ResponseEntity
+            .unprocessableEntity()
+            .body(Map.of("error", error.getMessage()))
+        )
+      );
+  }
+
+  /**
+   * Lists the CKAN organizations without an exact match in the departments file: unmatched ones, whose data sets are not
+   * counted, and approximately matched ones, which could be added as aliases.
+   */
+  @GetMapping("/organizations/unmatched")
+  public Mono<OrganizationMatchReport> unmatchedOrganizations() {
+    return this.organizationMatchReportService.report();
+  }
+}
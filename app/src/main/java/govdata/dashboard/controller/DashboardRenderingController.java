@@ -1,36 +1,120 @@
 package govdata.dashboard.controller;
 
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.service.DashboardResponseCache;
 import govdata.dashboard.service.DashboardService;
-import lombok.RequiredArgsConstructor;
+import govdata.dashboard.service.PrecomputedResponse;
+import java.time.Duration;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.reactive.result.view.Rendering;
+import org.thymeleaf.spring6.context.webflux.ReactiveDataDriverContextVariable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Controller
 @RequestMapping("/api/v0.1/dashboard")
-@RequiredArgsConstructor
+@Slf4j
 public class DashboardRenderingController {
 
   private final DashboardService dashboardService;
+  private final Optional<DashboardResponseCache> responseCache;
+  private final boolean streaming;
+  private final Duration firstFlushTimeout;
+  private final int chunkSize;
 
+  public DashboardRenderingController(
+    DashboardService dashboardService,
+    Optional<DashboardResponseCache> responseCache,
+    @Value("${govdata.view.streaming}") boolean streaming,
+    @Value("${govdata.view.first-flush-timeout}") Duration firstFlushTimeout,
+    @Value("${govdata.view.chunk-size}") int chunkSize
+  ) {
+    this.dashboardService = dashboardService;
+    this.responseCache = responseCache;
+    this.streaming = streaming;
+    this.firstFlushTimeout = firstFlushTimeout;
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Renders the dashboard. In streaming mode the rows are handed to Thymeleaf as a data-driver variable, so that the page
+   * head and table header are flushed right away and the rows follow in chunks. If the snapshot is not available within
+   * the first flush timeout (e.g. on a cold start), rendering starts without waiting for it: errors up to that point
+   * still render the error page, later errors can only abort the response that has already been started.
+   * Unless precomputation is disabled, a loaded snapshot is answered with the page rendered once for it, handled as a
+   * {@link org.springframework.web.reactive.result.view.View} (hence the Object type), with 304 for a matching
+   * If-None-Match.
+   */
   @GetMapping("/")
-  public Mono<Rendering> renderAllDataSetsByFederalMinistry() {
-    return this.dashboardService.computeDepartmentDataSetCounts()
-      .collectList()
-      .map(datasets ->
-        // Use the templates/index.html and pass the data to the template
-        Rendering.view("index").modelAttribute("datasets", datasets).build()
-      )
-      .onErrorResume(error ->
-        Mono.just(
-          // Render the error page templates/error.html if there is an error
-          Rendering
-            .view("error")
-            .modelAttribute("errorMessage", error.getMessage())
-            .build()
-        )
+  public Mono<Object> renderAllDataSetsByFederalMinistry() {
+    Mono<Object> rendering = this.dashboardService.getDepartmentSnapshot()
+      .flatMap(snapshot ->
+        this.responseCache.isPresent()
+          ? this.responseCache.get()
+            .html(snapshot)
+            .map(PrecomputedResponse::toView)
+          : Mono.just(this.render(snapshot))
       );
+    if (this.streaming) {
+      rendering =
+        rendering.timeout(
+          this.firstFlushTimeout,
+          Mono.fromSupplier(this::renderWhileLoading)
+        );
+    }
+    return rendering.onErrorResume(error ->
+      Mono.just(
+        // Render the error page templates/error.html if there is an error
+        Rendering
+          .view("error")
+          .modelAttribute("errorMessage", error.getMessage())
+          .build()
+      )
+    );
+  }
+
+  private Rendering render(DepartmentSnapshot snapshot) {
+    // Use the templates/index.html and pass the data to the template
+    return Rendering
+      .view("index")
+      .modelAttribute(
+        "datasets",
+        this.streaming
+          ? this.rows(Flux.fromIterable(snapshot.departments()))
+          : snapshot.departments()
+      )
+      .modelAttribute("fetchedAt", snapshot.fetchedAt())
+      .build();
+  }
+
+  /**
+   * Renders the page while the snapshot is still loading. The fetch time is not known before the table header has been
+   * written, so it is left out.
+   */
+  private Rendering renderWhileLoading() {
+    Flux<DepartmentDto> departments =
+      this.dashboardService.computeDepartmentDataSetCounts()
+        .doOnError(error ->
+          log.error("Failed to stream dashboard rows: {}", error.getMessage())
+        );
+    return Rendering
+      .view("index")
+      .modelAttribute("datasets", this.rows(departments))
+      .build();
+  }
+
+  /**
+   * Thymeleaf writes and flushes the rows in chunks of chunk-size rows as they are emitted.
+   */
+  private ReactiveDataDriverContextVariable rows(
+    Flux<DepartmentDto> departments
+  ) {
+    return new ReactiveDataDriverContextVariable(departments, this.chunkSize);
   }
 }
@@ -1,25 +1,218 @@
 package govdata.dashboard.controller;
 
 import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.service.DashboardResponseCache;
 import govdata.dashboard.service.DashboardService;
-import lombok.RequiredArgsConstructor;
+import govdata.dashboard.service.DepartmentQuery;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/v0.1/dashboard")
-@RequiredArgsConstructor
 public class DashboardRestController {
 
+  static final String TEXT_CSV_VALUE = "text/csv";
+
   private final DashboardService dashboardService;
+  private final Optional<DashboardResponseCache> responseCache;
+
+  // a single timer shared by all live subscribers keeps idle connections open through proxies
+  private final Flux<ServerSentEvent<List<DepartmentDto>>> heartbeats;
+
+  public DashboardRestController(
+    DashboardService dashboardService,
+    Optional<DashboardResponseCache> responseCache,
+    @Value("${govdata.stream.heartbeat}") Duration heartbeat
+  ) {
+    this.dashboardService = dashboardService;
+    this.responseCache = responseCache;
+    this.heartbeats =
+      Flux
+        .interval(heartbeat, heartbeat)
+        .onBackpressureDrop()
+        .map(tick ->
+          ServerSentEvent.<List<DepartmentDto>>builder().comment("").build()
+        )
+        .share();
+  }
 
+  /**
+   * Returns the departments of the current snapshot. The standard Age header tells how old the underlying CKAN data is.
+   * Unless precomputation is disabled, the body is the JSON serialized once for the snapshot, in the best encoding the
+   * client accepts, and a request with a matching If-None-Match is answered with 304.
+   */
   @GetMapping("/json")
-  public ResponseEntity<Flux<DepartmentDto>> getAllDataSetsByFederalMinistry() {
-    return ResponseEntity.ok(
-      this.dashboardService.computeDepartmentDataSetCounts()
-    );
+  public Mono<ResponseEntity<?>> getAllDataSetsByFederalMinistry(
+    ServerWebExchange exchange
+  ) {
+    return this.dashboardService.getDepartmentSnapshot()
+      .<ResponseEntity<?>>flatMap(snapshot -> {
+        String age = String.valueOf(snapshot.age(Instant.now()).toSeconds());
+        if (this.responseCache.isPresent()) {
+          return this.responseCache.get()
+            .json(snapshot)
+            .<ResponseEntity<?>>map(response ->
+              response.toResponseEntity(
+                exchange,
+                headers -> headers.set(HttpHeaders.AGE, age)
+              )
+            );
+        }
+        return Mono.<ResponseEntity<?>>just(
+          ResponseEntity
+            .ok()
+            .header(HttpHeaders.AGE, age)
+            .body(snapshot.departments())
+        );
+      });
+  }
+
+  /**
+   * Selects departments of the current snapshot, written row by row as a JSON array or, with Accept:
+   * application/x-ndjson, as one JSON object per line. Without parameters the result equals the full list.
+   * @param prefix Case-insensitive prefix of the department name
+   * @param contains Case-insensitive substring of the department name
+   * @param min Minimum data set count, inclusive
+   * @param max Maximum data set count, inclusive
+   * @param sort count or name
+   * @param order desc or asc, descending counts resp. ascending names if omitted
+   * @param limit Maximum number of departments, e.g. 5 for the top five
+   */
+  @GetMapping(
+    value = "/departments",
+    produces = {
+      MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+    }
+  )
+  public Flux<DepartmentDto> getDepartments(
+    @RequestParam(required = false) String prefix,
+    @RequestParam(required = false) String contains,
+    @RequestParam(required = false) Integer min,
+    @RequestParam(required = false) Integer max,
+    @RequestParam(defaultValue = "count") String sort,
+    @RequestParam(required = false) String order,
+    @RequestParam(required = false) Integer limit
+  ) {
+    return this.dashboardService.queryDepartments(
+        this.toQuery(prefix, contains, min, max, sort, order, limit)
+      );
+  }
+
+  /**
+   * Selects departments like {@link #getDepartments}, written row by row as CSV (RFC 4180) with a header row.
+   */
+  @GetMapping(value = "/departments", produces = TEXT_CSV_VALUE)
+  public Flux<String> exportDepartments(
+    @RequestParam(required = false) String prefix,
+    @RequestParam(required = false) String contains,
+    @RequestParam(required = false) Integer min,
+    @RequestParam(required = false) Integer max,
+    @RequestParam(defaultValue = "count") String sort,
+    @RequestParam(required = false) String order,
+    @RequestParam(required = false) Integer limit
+  ) {
+    return this.dashboardService.queryDepartments(
+        this.toQuery(prefix, contains, min, max, sort, order, limit)
+      )
+      .map(department ->
+        csvField(department.name()) + "," + department.dataSetCount() + "\r\n"
+      )
+      .startWith("name,dataSetCount\r\n");
+  }
+
+  /**
+   * Streams live updates as server-sent events: a "snapshot" event with all departments on connect (and whenever the departments mapping changes), then an "update" event with the changed departments whenever the data changes.
+   */
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<List<DepartmentDto>>> streamDataSetsByFederalMinistry() {
+    return this.dashboardService.streamDepartmentUpdates()
+      .map(update ->
+        ServerSentEvent
+          .builder(update.departments())
+          .event(update.complete() ? "snapshot" : "update")
+          .id(String.valueOf(update.fetchedAt().toEpochMilli()))
+          .build()
+      )
+      .mergeWith(this.heartbeats);
+  }
+
+  private DepartmentQuery toQuery(
+    String prefix,
+    String contains,
+    Integer min,
+    Integer max,
+    String sort,
+    String order,
+    Integer limit
+  ) {
+    DepartmentQuery.Sort sortKey = this.toEnum(
+        DepartmentQuery.Sort.class,
+        sort,
+        "Unknown sort: " + sort + ", expected count or name"
+      );
+    DepartmentQuery.Order direction = order != null
+      ? this.toEnum(
+          DepartmentQuery.Order.class,
+          order,
+          "Unknown order: " + order + ", expected asc or desc"
+        )
+      : null;
+    try {
+      return new DepartmentQuery(
+        prefix,
+        contains,
+        min,
+        max,
+        sortKey,
+        direction,
+        limit
+      );
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  private <E extends Enum<E>> E toEnum(
+    Class<E> type,
+    String value,
+    String message
+  ) {
+    try {
+      return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, message);
+    }
+  }
+
+  /**
+   * Quotes a field that contains a separator, a quote or a line break, doubling its quotes.
+   */
+  private static String csvField(String value) {
+    if (
+      value.indexOf(',') < 0 &&
+      value.indexOf('"') < 0 &&
+      value.indexOf('\n') < 0 &&
+      value.indexOf('\r') < 0
+    ) {
+      return value;
+    }
+    return "\"" + value.replace("\"", "\"\"") + "\"";
   }
 }
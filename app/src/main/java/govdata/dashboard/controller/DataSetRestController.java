@@ -0,0 +1,41 @@
+package govdata.dashboard.controller;
+
+import govdata.dashboard.model.department.DataSetDto;
+import govdata.dashboard.service.DataSetDrillDownService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/api/v0.1/dashboard/datasets")
+@RequiredArgsConstructor
+public class DataSetRestController {
+
+  private final DataSetDrillDownService drillDownService;
+
+  /**
+   * Lists the data sets behind the count of a department. The data sets are written while they are paged in from CKAN,
+   * either as a JSON array or, with Accept: application/x-ndjson, as one JSON object per line.
+   * @param department Name of a department
+   */
+  @GetMapping(
+    produces = {
+      MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+    }
+  )
+  public Flux<DataSetDto> getDataSets(@RequestParam String department) {
+    if (!this.drillDownService.isDepartment(department)) {
+      throw new ResponseStatusException(
+        HttpStatus.NOT_FOUND,
+        "Unknown department: " + department
+      );
+    }
+    return this.drillDownService.fetchDataSets(department);
+  }
+}
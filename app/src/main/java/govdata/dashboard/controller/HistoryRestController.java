@@ -0,0 +1,106 @@
+package govdata.dashboard.controller;
+
+import govdata.dashboard.model.history.HistoryPoint;
+import govdata.dashboard.model.history.HistoryResolution;
+import govdata.dashboard.service.DepartmentHistoryStore;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+@RestController
+@RequestMapping("/api/v0.1/dashboard/history")
+@RequiredArgsConstructor
+@ConditionalOnProperty(
+  name = "govdata.history.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class HistoryRestController {
+
+  private final DepartmentHistoryStore historyStore;
+  private final Scheduler blockingScheduler;
+
+  /**
+   * Returns the recorded data set counts per department, downsampled to one point per day, week or month.
+   * @param department Name of a single department, all departments if omitted
+   * @param from Start of the range (ISO-8601 instant), inclusive, from the first record if omitted
+   * @param to End of the range (ISO-8601 instant), exclusive, until now if omitted or later, since nothing is recorded
+   * after now
+   * @param resolution day, week or month
+   * @throws ResponseStatusException 400 if from is after to or the range covers more than
+   * {@link DepartmentHistoryStore#MAX_BUCKETS} buckets
+   */
+  @GetMapping
+  public Mono<ResponseEntity<Map<String, List<HistoryPoint>>>> getHistory(
+    @RequestParam(required = false) String department,
+    @RequestParam(required = false) Instant from,
+    @RequestParam(required = false) Instant to,
+    @RequestParam(defaultValue = "day") String resolution
+  ) {
+    HistoryResolution bucketSize = this.toResolution(resolution);
+    if (from != null && to != null && from.isAfter(to)) {
+      throw new ResponseStatusException(
+        HttpStatus.BAD_REQUEST,
+        "from must not be after to"
+      );
+    }
+    Instant now = Instant.now();
+    Instant start = from != null ? from : Instant.EPOCH;
+    Instant end = to != null && to.isBefore(now) ? to : now;
+    return Mono
+      .fromSupplier(() -> {
+        if (
+          this.historyStore.buckets(start, end, bucketSize) >
+          DepartmentHistoryStore.MAX_BUCKETS
+        ) {
+          throw new ResponseStatusException(
+            HttpStatus.BAD_REQUEST,
+            "The range covers more than " +
+            DepartmentHistoryStore.MAX_BUCKETS +
+            " buckets, narrow it or choose a coarser resolution"
+          );
+        }
+        if (department == null) {
+          return ResponseEntity.ok(
+            this.historyStore.query(start, end, bucketSize)
+          );
+        }
+        if (!this.historyStore.departments().contains(department)) {
+          return ResponseEntity
+            .notFound()
+            .<Map<String, List<HistoryPoint>>>build();
+        }
+        return ResponseEntity.ok(
+          Map.of(
+            department,
+            this.historyStore.query(department, start, end, bucketSize)
+          )
+        );
+      })
+      // segments are memory-mapped files, reading them may fault pages in from disk
+      .subscribeOn(this.blockingScheduler);
+  }
+
+  private HistoryResolution toResolution(String resolution) {
+    try {
+      return HistoryResolution.valueOf(resolution.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(
+        HttpStatus.BAD_REQUEST,
+        "Unknown resolution: " + resolution + ", expected day, week or month"
+      );
+    }
+  }
+}
@@ -2,7 +2,18 @@ package govdata.dashboard.model.ckan;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * Organization of the organization_list response.
+ * @param name Display name, as used in the departments file
+ * @param packageCount Number of data sets of the organization
+ * @param id Organization ID, used to search the data sets of the organization
+ */
 public record CKANOrganizationEntity(
   @JsonProperty("display_name") String name,
-  @JsonProperty("package_count") Integer packageCount
-) {}
+  @JsonProperty("package_count") Integer packageCount,
+  String id
+) {
+  public CKANOrganizationEntity(String name, Integer packageCount) {
+    this(name, packageCount, null);
+  }
+}
@@ -0,0 +1,10 @@
+package govdata.dashboard.model.ckan;
+
+/**
+ * Response of organization_show without the data sets of the organization.
+ */
+public record CKANOrganizationShowResponse(
+  Boolean success,
+  CKANOrganizationEntity result,
+  CKANError error
+) {}
@@ -0,0 +1,12 @@
+package govdata.dashboard.model.ckan;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data set of the package_search response, reduced to the fields shown in the drill-down.
+ */
+public record CKANPackageEntity(
+  String name,
+  String title,
+  @JsonProperty("metadata_modified") String metadataModified
+) {}
@@ -0,0 +1,17 @@
+package govdata.dashboard.model.ckan;
+
+import java.util.Map;
+
+/**
+ * Response of package_search without data sets, only the number of matches per value of the requested facet fields.
+ */
+public record CKANPackageFacetsResponse(
+  Boolean success,
+  Result result,
+  CKANError error
+) {
+  /**
+   * @param facets Number of matching data sets per facet field and value, e.g. per owner_org ID
+   */
+  public record Result(Integer count, Map<String, Map<String, Integer>> facets) {}
+}
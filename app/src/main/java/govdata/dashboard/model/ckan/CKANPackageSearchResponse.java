@@ -0,0 +1,14 @@
+package govdata.dashboard.model.ckan;
+
+import java.util.List;
+
+/**
+ * Response of package_search: one page of the matching data sets and the total number of matches.
+ */
+public record CKANPackageSearchResponse(
+  Boolean success,
+  Result result,
+  CKANError error
+) {
+  public record Result(Integer count, List<CKANPackageEntity> results) {}
+}
@@ -0,0 +1,8 @@
+package govdata.dashboard.model.cluster;
+
+/**
+ * Published when this instance becomes the leader of the cluster or loses the leadership.
+ * @param leader Whether this instance is the leader now
+ * @param term Term of the lease this instance holds resp. last held
+ */
+public record LeadershipChangedEvent(boolean leader, long term) {}
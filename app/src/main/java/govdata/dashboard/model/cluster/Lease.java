@@ -0,0 +1,11 @@
+package govdata.dashboard.model.cluster;
+
+import java.time.Instant;
+
+/**
+ * Leadership of the cluster, held by one instance until it expires unless renewed.
+ * @param owner Node ID of the holder
+ * @param term Incremented whenever the lease changes hands, so that the publications of a former leader can be told apart
+ * @param expiresAt End of the lease
+ */
+public record Lease(String owner, long term, Instant expiresAt) {}
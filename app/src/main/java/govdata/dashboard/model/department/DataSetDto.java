@@ -0,0 +1,15 @@
+package govdata.dashboard.model.department;
+
+/**
+ * Data set behind the count of a department.
+ * @param organization The department or subordinate that published the data set
+ * @param name URL name of the data set
+ * @param title Title of the data set
+ * @param metadataModified Last modification of the data set's metadata as reported by CKAN
+ */
+public record DataSetDto(
+  String organization,
+  String name,
+  String title,
+  String metadataModified
+) {}
@@ -5,9 +5,17 @@ import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
 import java.util.List;
 
+/**
+ * @param aliases Further names the department is published under in CKAN, e.g. former or misspelled names
+ */
 public record Department(
   String name,
   @JsonProperty("subordinates")
   @JsonSetter(nulls = Nulls.AS_EMPTY)
-  List<SubOrdinate> subOrdinates
-) {}
+  List<SubOrdinate> subOrdinates,
+  @JsonSetter(nulls = Nulls.AS_EMPTY) List<String> aliases
+) {
+  public Department(String name, List<SubOrdinate> subOrdinates) {
+    this(name, subOrdinates, List.of());
+  }
+}
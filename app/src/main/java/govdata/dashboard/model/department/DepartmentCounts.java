@@ -0,0 +1,10 @@
+package govdata.dashboard.model.department;
+
+import java.util.List;
+
+/**
+ * Result of one aggregation run before it is cached as a snapshot.
+ * @param departments The sorted departments
+ * @param fingerprint Fingerprint of the departments mapping the counts were aggregated with
+ */
+public record DepartmentCounts(List<DepartmentDto> departments, long fingerprint) {}
@@ -1,6 +1,30 @@
 package govdata.dashboard.model.department;
 
-public record DepartmentDto(String name, Integer dataSetCount) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Data set count of a department.
+ * @param sources Data set count per CKAN source, in source order. Only filled if several sources are configured.
+ */
+public record DepartmentDto(
+  String name,
+  Integer dataSetCount,
+  @JsonInclude(JsonInclude.Include.NON_EMPTY) Map<String, Integer> sources
+) {
+  public DepartmentDto {
+    sources =
+      sources == null || sources.isEmpty()
+        ? Map.of()
+        : Collections.unmodifiableMap(new LinkedHashMap<>(sources));
+  }
+
+  public DepartmentDto(String name, Integer dataSetCount) {
+    this(name, dataSetCount, Map.of());
+  }
+
   public DepartmentDto(String name) {
     this(name, 0);
   }
@@ -0,0 +1,26 @@
+package govdata.dashboard.model.department;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Immutable result of one aggregation run: the sorted departments and the point in time the underlying data was fetched from CKAN.
+ * @param fingerprint Fingerprint of the departments mapping of the primary source the counts were aggregated with
+ */
+public record DepartmentSnapshot(
+  List<DepartmentDto> departments,
+  Instant fetchedAt,
+  long fingerprint
+) {
+  public DepartmentSnapshot {
+    departments = List.copyOf(departments);
+  }
+
+  /**
+   * Age of the snapshot relative to the given point in time.
+   */
+  public Duration age(Instant now) {
+    return Duration.between(this.fetchedAt, now);
+  }
+}
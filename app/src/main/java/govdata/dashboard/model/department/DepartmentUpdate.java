@@ -0,0 +1,16 @@
+package govdata.dashboard.model.department;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Change of the department data pushed to live subscribers.
+ * @param complete Whether departments contains all departments (initial state or changed mapping) or only the changed ones
+ * @param departments All resp. the changed departments
+ * @param fetchedAt Fetch time of the snapshot the update was computed from
+ */
+public record DepartmentUpdate(
+  boolean complete,
+  List<DepartmentDto> departments,
+  Instant fetchedAt
+) {}
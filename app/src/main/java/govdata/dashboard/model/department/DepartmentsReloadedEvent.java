@@ -0,0 +1,7 @@
+package govdata.dashboard.model.department;
+
+/**
+ * Published after the departments file has been reloaded and the new mapping is in effect.
+ * @param departments Number of departments in the new mapping
+ */
+public record DepartmentsReloadedEvent(int departments) {}
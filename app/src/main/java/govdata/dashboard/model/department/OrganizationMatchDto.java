@@ -0,0 +1,22 @@
+package govdata.dashboard.model.department;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * CKAN organization that is not known verbatim to the departments file.
+ * @param source Name of the CKAN source that returned the organization
+ * @param organization Display name of the organization
+ * @param packageCount Number of data sets of the organization
+ * @param department Department the organization was matched to, null if unmatched
+ * @param match How the organization was matched (normalized or fuzzy), null if unmatched
+ * @param similarity Trigram similarity of a fuzzy match
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OrganizationMatchDto(
+  String source,
+  String organization,
+  Integer packageCount,
+  String department,
+  String match,
+  Double similarity
+) {}
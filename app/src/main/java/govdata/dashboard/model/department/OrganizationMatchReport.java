@@ -0,0 +1,14 @@
+package govdata.dashboard.model.department;
+
+import java.util.List;
+
+/**
+ * Organizations of all CKAN sources that are not known verbatim to the departments file, sorted descending by package
+ * count.
+ * @param unmatched Organizations whose data sets are not counted for any department
+ * @param approximate Organizations counted by their normalized name or by similarity, candidates for an alias
+ */
+public record OrganizationMatchReport(
+  List<OrganizationMatchDto> unmatched,
+  List<OrganizationMatchDto> approximate
+) {}
@@ -1,3 +1,17 @@
 package govdata.dashboard.model.department;
 
-public record SubOrdinate(String name) {}
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import java.util.List;
+
+/**
+ * @param aliases Further names the subordinate is published under in CKAN
+ */
+public record SubOrdinate(
+  String name,
+  @JsonSetter(nulls = Nulls.AS_EMPTY) List<String> aliases
+) {
+  public SubOrdinate(String name) {
+    this(name, List.of());
+  }
+}
@@ -0,0 +1,9 @@
+package govdata.dashboard.model.history;
+
+import java.time.Instant;
+
+/**
+ * A data set count of a department at a point in time. For downsampled series, the time is the start of the bucket and
+ * the count is the last one recorded up to the end of the bucket.
+ */
+public record HistoryPoint(Instant time, int dataSetCount) {}
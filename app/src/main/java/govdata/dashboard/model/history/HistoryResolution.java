@@ -0,0 +1,44 @@
+package govdata.dashboard.model.history;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Bucket sizes for downsampling a history. Buckets are aligned to calendar days, ISO weeks (starting on Monday) and
+ * months in UTC.
+ */
+public enum HistoryResolution {
+  DAY,
+  WEEK,
+  MONTH;
+
+  /**
+   * The start of the bucket containing the given time.
+   */
+  public Instant bucketStart(Instant time) {
+    ZonedDateTime day = time.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+    return switch (this) {
+      case DAY -> day.toInstant();
+      case WEEK -> day
+        .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+        .toInstant();
+      case MONTH -> day.withDayOfMonth(1).toInstant();
+    };
+  }
+
+  /**
+   * The start of the bucket following the bucket that starts at the given time.
+   */
+  public Instant nextBucket(Instant bucketStart) {
+    ZonedDateTime start = bucketStart.atZone(ZoneOffset.UTC);
+    return switch (this) {
+      case DAY -> start.plusDays(1).toInstant();
+      case WEEK -> start.plusWeeks(1).toInstant();
+      case MONTH -> start.plusMonths(1).toInstant();
+    };
+  }
+}
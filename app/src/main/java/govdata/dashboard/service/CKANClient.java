@@ -0,0 +1,329 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.ckan.CKANOrganizationShowResponse;
+import govdata.dashboard.model.ckan.CKANPackageFacetsResponse;
+import govdata.dashboard.model.ckan.CKANPackageSearchResponse;
+import govdata.dashboard.util.CircuitBreaker;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Client for the CKAN organization_list endpoint. Organizations are either requested in one shot or, in paged mode,
+ * as limit/offset pages, a window of several pages at a time, until the end of the list is reached. The data sets of a single
+ * organization are searched page by page with package_search. For incremental refreshes, the organizations with
+ * modified data sets are determined with a faceted package_search and looked up one by one with organization_show.
+ * All calls are guarded by the CKAN circuit breaker.
+ */
+@Slf4j
+public class CKANClient {
+
+  /**
+   * Paged fetch settings.
+   * @param enabled Whether organizations are fetched page by page
+   * @param pageSize Number of organizations per page
+   * @param parallelism Maximum number of pages requested at the same time
+   * @param retries Number of retries of a single failed page
+   * @param retryBackoff Minimum delay before a page is retried
+   */
+  public record Paging(
+    boolean enabled,
+    int pageSize,
+    int parallelism,
+    int retries,
+    Duration retryBackoff
+  ) {
+    public static Paging disabled() {
+      return new Paging(false, 0, 1, 0, Duration.ZERO);
+    }
+  }
+
+  /**
+   * Organizations of a window of consecutive pages, and where the next window starts.
+   * @param nextOffset Offset of the first page of the next window, -1 after the end of the list
+   */
+  private record Window(
+    List<CKANOrganizationEntity> organizations,
+    int nextOffset,
+    int nextLimit,
+    int nextPages
+  ) {}
+
+  private final WebClient webClient;
+  private final CircuitBreaker circuitBreaker;
+  private final Paging paging;
+
+  public CKANClient(
+    WebClient webClient,
+    CircuitBreaker circuitBreaker,
+    Paging paging
+  ) {
+    this.webClient = webClient;
+    this.circuitBreaker = circuitBreaker;
+    this.paging = paging;
+  }
+
+  /**
+   * Requests all organizations with their package counts. Only organizations whose display name is accepted by the
+   * filter are emitted; an unsuccessful response terminates with an error message.
+   * @param filter Accepts the display names of relevant organizations
+   * @return Matching organizations in arrival order
+   */
+  public Flux<CKANOrganizationEntity> fetchOrganizations(
+    Predicate<String> filter
+  ) {
+    return this.circuitBreaker.protect(
+        this.paging.enabled()
+          ? this.fetchPaged(filter)
+          : this.fetchPage(this.organizationUri(null, null), filter)
+      );
+  }
+
+  /**
+   * Requests one page of the data sets of an organization, sorted by name so that consecutive pages do not overlap.
+   * Only the fields shown in the drill-down are requested; servers that ignore the field list return full data sets,
+   * which are reduced while binding.
+   * @param organizationId ID of the organization, see {@link CKANOrganizationEntity#id()}
+   * @param start Offset of the first data set
+   * @param rows Maximum number of data sets of the page
+   * @return The page together with the total number of data sets of the organization
+   */
+  public Mono<CKANPackageSearchResponse.Result> searchDataSets(
+    String organizationId,
+    int start,
+    int rows
+  ) {
+    return this.circuitBreaker.protect(
+        this.webClient.get()
+          .uri(uriBuilder ->
+            uriBuilder
+              .path("package_search")
+              .queryParam("fq", "{filter}")
+              .queryParam("fl", "name", "title", "metadata_modified")
+              .queryParam("sort", "{sort}")
+              .queryParam("rows", rows)
+              .queryParam("start", start)
+              .build("owner_org:\"" + organizationId + "\"", "name asc")
+          )
+          .retrieve()
+          .bodyToMono(CKANPackageSearchResponse.class)
+          .flatMap(res ->
+            Boolean.TRUE.equals(res.success()) && res.result() != null
+              ? Mono.just(res.result())
+              : Mono.error(
+                new RuntimeException(
+                  "Failed to load data sets from CKAN API: " +
+                  (res.error() != null
+                      ? res.error().message()
+                      : "invalid response")
+                )
+              )
+          )
+      );
+  }
+
+  /**
+   * Determines the organizations with data sets modified since the given time, by a package_search that returns no data
+   * sets but their number per organization. Data sets deleted in the meantime are not found.
+   * @return The number of modified data sets per organization ID
+   */
+  public Mono<Map<String, Integer>> searchModifiedOrganizations(Instant since) {
+    return this.circuitBreaker.protect(
+        this.webClient.get()
+          .uri(uriBuilder ->
+            uriBuilder
+              .path("package_search")
+              .queryParam("fq", "{filter}")
+              .queryParam("rows", 0)
+              .queryParam("facet.field", "{facets}")
+              // all organizations instead of the 50 most frequent ones
+              .queryParam("facet.limit", -1)
+              .build(
+                "metadata_modified:[" +
+                since.truncatedTo(ChronoUnit.SECONDS) +
+                " TO *]",
+                "[\"owner_org\"]"
+              )
+          )
+          .retrieve()
+          .bodyToMono(CKANPackageFacetsResponse.class)
+          .flatMap(res ->
+            Boolean.TRUE.equals(res.success()) &&
+              res.result() != null &&
+              res.result().facets() != null &&
+              res.result().facets().get("owner_org") != null
+              ? Mono.just(res.result().facets().get("owner_org"))
+              : Mono.error(
+                new RuntimeException(
+                  "Failed to search modified data sets in CKAN API: " +
+                  (res.error() != null
+                      ? res.error().message()
+                      : "invalid response")
+                )
+              )
+          )
+      );
+  }
+
+  /**
+   * Requests a single organization with its package count, but without its data sets.
+   * @return The organization, empty if it does not exist (anymore)
+   */
+  public Mono<CKANOrganizationEntity> showOrganization(String organizationId) {
+    return this.circuitBreaker.protect(
+        this.webClient.get()
+          .uri(uriBuilder ->
+            uriBuilder
+              .path("organization_show")
+              .queryParam("id", "{id}")
+              .queryParam("include_datasets", false)
+              .build(organizationId)
+          )
+          .retrieve()
+          .bodyToMono(CKANOrganizationShowResponse.class)
+          // a missing organization is an answer, not a failure of the API
+          .onErrorResume(
+            WebClientResponseException.NotFound.class,
+            e -> Mono.empty()
+          )
+          .flatMap(res ->
+            Boolean.TRUE.equals(res.success()) && res.result() != null
+              ? Mono.just(res.result())
+              : Mono.error(
+                new RuntimeException(
+                  "Failed to load organization from CKAN API: " +
+                  (res.error() != null
+                      ? res.error().message()
+                      : "invalid response")
+                )
+              )
+          )
+      );
+  }
+
+  /**
+   * Requests pages until the end of the list, a window of parallelism pages at a time. The number of organizations is
+   * not known in advance (a name-only organization_list is capped just like the full one), so the end is the first
+   * empty page. A page that is shorter than requested is either the last one or the server caps the page size: the next
+   * window starts right after it with that smaller size, with a single page first, and the rest of the current window
+   * is requested again. A page longer than requested means the server ignores limit and offset, so it has the complete
+   * list. Every page is collected before it is emitted, so that a retried page does not emit duplicates.
+   */
+  private Flux<CKANOrganizationEntity> fetchPaged(Predicate<String> filter) {
+    int pageSize = Math.max(1, this.paging.pageSize());
+    int parallelism = Math.max(1, this.paging.parallelism());
+    return this.fetchWindow(0, pageSize, parallelism)
+      .expand(window ->
+        window.nextOffset() < 0
+          ? Mono.empty()
+          : this.fetchWindow(
+              window.nextOffset(),
+              window.nextLimit(),
+              window.nextPages()
+            )
+      )
+      .flatMapIterable(Window::organizations)
+      .filter(organization -> filter.test(organization.name()));
+  }
+
+  private Mono<Window> fetchWindow(int offset, int limit, int pages) {
+    int parallelism = Math.max(1, this.paging.parallelism());
+    return Flux
+      .range(0, pages)
+      .flatMapSequential(
+        page -> this.fetchPage(offset + page * limit, limit),
+        pages
+      )
+      .collectList()
+      .map(results -> {
+        List<CKANOrganizationEntity> organizations = new ArrayList<>();
+        for (int page = 0; page < results.size(); page++) {
+          List<CKANOrganizationEntity> result = results.get(page);
+          organizations.addAll(result);
+          if (result.isEmpty() || result.size() > limit) {
+            return new Window(organizations, -1, limit, 0);
+          }
+          if (result.size() < limit) {
+            log.debug(
+              "Short organization page at offset {}: {} of {}",
+              offset + page * limit,
+              result.size(),
+              limit
+            );
+            return new Window(
+              organizations,
+              offset + page * limit + result.size(),
+              result.size(),
+              1
+            );
+          }
+        }
+        return new Window(
+          organizations,
+          offset + pages * limit,
+          limit,
+          parallelism
+        );
+      });
+  }
+
+  /**
+   * Requests a single page with all organizations, the caller filters them once it knows the size of the page.
+   */
+  private Mono<List<CKANOrganizationEntity>> fetchPage(int offset, int limit) {
+    return this.fetchPage(this.organizationUri(limit, offset), name -> true)
+      .collectList()
+      .retryWhen(
+        Retry
+          .backoff(this.paging.retries(), this.paging.retryBackoff())
+          .doBeforeRetry(signal ->
+            log.warn(
+              "Retrying organization page at offset {}: {}",
+              offset,
+              signal.failure().getMessage()
+            )
+          )
+      );
+  }
+
+  private Flux<CKANOrganizationEntity> fetchPage(
+    Function<UriBuilder, URI> uri,
+    Predicate<String> filter
+  ) {
+    return CKANOrganizationListParser.parse(
+      this.webClient.get().uri(uri).retrieve().bodyToFlux(DataBuffer.class),
+      filter
+    );
+  }
+
+  /**
+   * Creates the CKAN request URI with the necessary query params, optionally restricted to a single page.
+   */
+  private Function<UriBuilder, URI> organizationUri(
+    Integer limit,
+    Integer offset
+  ) {
+    return uriBuilder -> {
+      uriBuilder.path("organization_list").queryParam("all_fields", true);
+      if (limit != null) {
+        uriBuilder.queryParam("limit", limit).queryParam("offset", offset);
+      }
+      return uriBuilder.build();
+    };
+  }
+}
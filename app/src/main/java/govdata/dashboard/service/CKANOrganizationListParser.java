@@ -0,0 +1,218 @@
+package govdata.dashboard.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+/**
+ * Incremental parser for the response of the CKAN organization_list endpoint.
+ * Instead of binding the whole (multi-megabyte) payload, the body is fed buffer by buffer into Jackson's non-blocking parser
+ * and only the "display_name", "package_count" and "id" of organizations accepted by the filter are kept. Every other field
+ * (descriptions, images, extras, users, ...) is skipped token by token, so memory usage does not grow with the payload size.
+ */
+public class CKANOrganizationListParser {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  // depth of the fields of the top-level response object resp. of the "error" object and the organizations in "result"
+  private static final int RESPONSE_DEPTH = 1;
+  private static final int ERROR_DEPTH = 2;
+  private static final int RESULT_DEPTH = 2;
+  private static final int ORGANIZATION_DEPTH = 3;
+
+  private final JsonParser parser;
+  private final ByteBufferFeeder feeder;
+  private final Predicate<String> filter;
+
+  private int depth;
+  private String field;
+  private boolean inResult;
+  private boolean inError;
+
+  private Boolean success;
+  private String errorMessage;
+
+  private String name;
+  private Integer packageCount;
+  private String id;
+
+  private CKANOrganizationListParser(Predicate<String> filter) {
+    try {
+      this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.feeder = (ByteBufferFeeder) this.parser.getNonBlockingInputFeeder();
+    this.filter = filter;
+  }
+
+  /**
+   * Parses a streamed organization_list response. Organizations are emitted as soon as their JSON object is complete.
+   * If the response does not report success, the Flux terminates with the same error as a failed CKAN request.
+   * @param body Response body as it arrives from the network. Every buffer is released after it was parsed.
+   * @param filter Accepts the display names of organizations that should be emitted
+   * @return Matching organizations in response order
+   */
+  public static Flux<CKANOrganizationEntity> parse(
+    Flux<DataBuffer> body,
+    Predicate<String> filter
+  ) {
+    return Flux.defer(() -> {
+      CKANOrganizationListParser state = new CKANOrganizationListParser(filter);
+      return body
+        .concatMapIterable(state::feed)
+        .concatWith(Flux.defer(state::finish))
+        .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+        .doFinally(signal -> state.close());
+    });
+  }
+
+  /**
+   * Feeds the next chunk of the body and returns the organizations completed by it.
+   */
+  private List<CKANOrganizationEntity> feed(DataBuffer buffer) {
+    List<CKANOrganizationEntity> organizations = new ArrayList<>();
+    try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+      while (iterator.hasNext()) {
+        ByteBuffer byteBuffer = iterator.next();
+        this.feeder.feedInput(byteBuffer);
+        this.drain(organizations);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      DataBufferUtils.release(buffer);
+    }
+    return organizations;
+  }
+
+  /**
+   * Signals the end of the body and checks the "success" flag of the response.
+   */
+  private Flux<CKANOrganizationEntity> finish() {
+    List<CKANOrganizationEntity> organizations = new ArrayList<>();
+    try {
+      this.feeder.endOfInput();
+      this.drain(organizations);
+    } catch (IOException e) {
+      return Flux.error(e);
+    }
+    if (!Boolean.TRUE.equals(this.success)) {
+      return Flux.error(
+        new RuntimeException(
+          "Failed to load departments from CKAN API: " +
+          (this.errorMessage != null ? this.errorMessage : "invalid response")
+        )
+      );
+    }
+    return Flux.fromIterable(organizations);
+  }
+
+  private void close() {
+    try {
+      this.parser.close();
+    } catch (IOException e) {
+      // nothing left to release
+    }
+  }
+
+  /**
+   * Consumes all tokens that can be decoded from the input fed so far.
+   */
+  private void drain(List<CKANOrganizationEntity> organizations)
+    throws IOException {
+    JsonToken token;
+    while (
+      (token = this.parser.nextToken()) != null &&
+      token != JsonToken.NOT_AVAILABLE
+    ) {
+      switch (token) {
+        case FIELD_NAME -> this.onFieldName();
+        case START_OBJECT, START_ARRAY -> this.onStart(token);
+        case END_OBJECT, END_ARRAY -> this.onEnd(organizations);
+        default -> this.onValue(token);
+      }
+    }
+  }
+
+  private void onFieldName() throws IOException {
+    if (
+      this.depth == RESPONSE_DEPTH ||
+      (this.inError && this.depth == ERROR_DEPTH) ||
+      (this.inResult && this.depth == ORGANIZATION_DEPTH)
+    ) {
+      this.field = this.parser.currentName();
+    } else {
+      this.field = null;
+    }
+  }
+
+  private void onStart(JsonToken token) {
+    if (this.depth == RESPONSE_DEPTH) {
+      this.inResult =
+        token == JsonToken.START_ARRAY && "result".equals(this.field);
+      this.inError =
+        token == JsonToken.START_OBJECT && "error".equals(this.field);
+    } else if (this.inResult && this.depth == RESULT_DEPTH) {
+      this.name = null;
+      this.packageCount = null;
+      this.id = null;
+    }
+    this.depth++;
+  }
+
+  private void onEnd(List<CKANOrganizationEntity> organizations) {
+    this.depth--;
+    if (this.inResult && this.depth == RESULT_DEPTH) {
+      // an organization object is complete
+      if (this.name != null && this.filter.test(this.name)) {
+        organizations.add(
+          new CKANOrganizationEntity(
+            this.name,
+            this.packageCount != null ? this.packageCount : 0,
+            this.id
+          )
+        );
+      }
+    } else if (this.depth == RESPONSE_DEPTH) {
+      this.inResult = false;
+      this.inError = false;
+    }
+    this.field = null;
+  }
+
+  private void onValue(JsonToken token) throws IOException {
+    if (this.field == null) {
+      return;
+    }
+    if (this.depth == RESPONSE_DEPTH && "success".equals(this.field)) {
+      this.success = token == JsonToken.VALUE_TRUE;
+    } else if (this.inError && this.depth == ERROR_DEPTH) {
+      if ("message".equals(this.field) && token == JsonToken.VALUE_STRING) {
+        this.errorMessage = this.parser.getText();
+      }
+    } else if (this.inResult && this.depth == ORGANIZATION_DEPTH) {
+      if ("display_name".equals(this.field) && token == JsonToken.VALUE_STRING) {
+        this.name = this.parser.getText();
+      } else if (
+        "package_count".equals(this.field) &&
+        token == JsonToken.VALUE_NUMBER_INT
+      ) {
+        this.packageCount = this.parser.getIntValue();
+      } else if ("id".equals(this.field) && token == JsonToken.VALUE_STRING) {
+        this.id = this.parser.getText();
+      }
+    }
+  }
+}
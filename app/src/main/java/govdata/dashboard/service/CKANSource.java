@@ -0,0 +1,17 @@
+package govdata.dashboard.service;
+
+import java.time.Duration;
+
+/**
+ * A CKAN portal whose data set counts are part of the dashboard.
+ * @param name Name of the source in the per-source breakdown
+ * @param ckanClient Client with the source's own connection pool and circuit breaker
+ * @param departmentService Departments mapping of the source
+ * @param timeout Maximum time to fetch the source's counts, null for none
+ */
+public record CKANSource(
+  String name,
+  CKANClient ckanClient,
+  DepartmentService departmentService,
+  Duration timeout
+) {}
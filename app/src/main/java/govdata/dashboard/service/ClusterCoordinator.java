@@ -0,0 +1,310 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.cluster.Lease;
+import govdata.dashboard.model.cluster.LeadershipChangedEvent;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Lets the instances of a cluster share one snapshot, so that only one of them requests the CKAN API. The instances
+ * compete for a lease (see {@link LeaseBackend}) every renew-interval; the holder is the leader. The leader refreshes
+ * from CKAN as a single instance would and publishes every new snapshot to a file on the shared volume (see
+ * {@link SharedSnapshotFile}). The others follow: they read the published snapshot instead of requesting CKAN, on every
+ * tick and whenever their cache needs a snapshot, see {@link DashboardService}.
+ * If the leader stops, it releases the lease; if it fails, the lease expires after lease-ttl and the next follower to tick
+ * takes over and refreshes right away. Followers therefore serve data at most refresh-interval + lease-ttl +
+ * renew-interval + refresh-timeout old. The publication version holds the term of the lease in its upper 32 bits, so a
+ * former leader that still publishes after losing the lease cannot replace a newer leader's snapshot for the followers.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "govdata.cluster.enabled", havingValue = "true")
+public class ClusterCoordinator {
+
+  private final String nodeId;
+  private final LeaseBackend leaseBackend;
+  private final SharedSnapshotFile snapshotFile;
+  private final Duration leaseTtl;
+  private final Duration renewInterval;
+  private final DepartmentSnapshotCache snapshotCache;
+  private final DepartmentService departmentService;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Scheduler blockingScheduler;
+  private final Clock clock;
+
+  // the lease held by this instance, null while following
+  private volatile Lease lease;
+  private long lastTerm;
+
+  // last publication accepted as a follower, null before the first one
+  private volatile SharedSnapshotFile.Publication accepted;
+
+  // sequence of the publications in the term of the current lease
+  private long publishedTerm;
+  private long sequence;
+
+  private Disposable ticks;
+  private Disposable publications;
+
+  @Autowired
+  public ClusterCoordinator(
+    @Value("${govdata.cluster.node-id:}") String nodeId,
+    @Value("${govdata.cluster.directory}") Path directory,
+    @Value("${govdata.cluster.lease-ttl}") Duration leaseTtl,
+    @Value("${govdata.cluster.renew-interval}") Duration renewInterval,
+    Optional<LeaseBackend> leaseBackend,
+    DepartmentSnapshotCache snapshotCache,
+    DepartmentService departmentService,
+    ApplicationEventPublisher eventPublisher,
+    Scheduler blockingScheduler,
+    MeterRegistry meterRegistry
+  ) {
+    this(
+      nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId,
+      leaseBackend.orElseGet(() ->
+        new FileLeaseBackend(directory.resolve("leader.lease"))
+      ),
+      new SharedSnapshotFile(directory.resolve("departments.snapshot")),
+      leaseTtl,
+      renewInterval,
+      snapshotCache,
+      departmentService,
+      eventPublisher,
+      blockingScheduler,
+      meterRegistry,
+      Clock.systemUTC()
+    );
+  }
+
+  public ClusterCoordinator(
+    String nodeId,
+    LeaseBackend leaseBackend,
+    SharedSnapshotFile snapshotFile,
+    Duration leaseTtl,
+    Duration renewInterval,
+    DepartmentSnapshotCache snapshotCache,
+    DepartmentService departmentService,
+    ApplicationEventPublisher eventPublisher,
+    Scheduler blockingScheduler,
+    MeterRegistry meterRegistry,
+    Clock clock
+  ) {
+    if (renewInterval.compareTo(leaseTtl) >= 0) {
+      throw new IllegalArgumentException(
+        "The lease must be renewed more often than it expires: renew-interval " +
+        renewInterval +
+        ", lease-ttl " +
+        leaseTtl
+      );
+    }
+    this.nodeId = nodeId;
+    this.leaseBackend = leaseBackend;
+    this.snapshotFile = snapshotFile;
+    this.leaseTtl = leaseTtl;
+    this.renewInterval = renewInterval;
+    this.snapshotCache = snapshotCache;
+    this.departmentService = departmentService;
+    this.eventPublisher = eventPublisher;
+    this.blockingScheduler = blockingScheduler;
+    this.clock = clock;
+    Gauge
+      .builder("govdata.cluster.leader", this, c -> c.isLeader() ? 1 : 0)
+      .description("Whether this instance is the leader of the cluster and refreshes from CKAN")
+      .register(meterRegistry);
+  }
+
+  /**
+   * Starts competing for the lease and publishing the snapshots of this instance while it is the leader. Starts once the
+   * application is ready, so that the listeners of the leadership events are registered.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    this.publications =
+      this.snapshotCache.updates()
+        .onBackpressureLatest()
+        .concatMap(
+          snapshot ->
+            Mono
+              .fromRunnable(() -> this.publish(snapshot))
+              .subscribeOn(this.blockingScheduler),
+          1
+        )
+        .subscribe();
+    this.ticks =
+      Flux
+        .interval(Duration.ZERO, this.renewInterval)
+        .onBackpressureDrop()
+        .concatMap(
+          tick ->
+            Mono
+              .fromRunnable(this::tick)
+              .subscribeOn(this.blockingScheduler)
+              .doOnError(e ->
+                log.warn("Cluster coordination failed: {}", e.getMessage())
+              )
+              .onErrorComplete(),
+          1
+        )
+        .subscribe();
+  }
+
+  /**
+   * Stops coordinating and hands the lease over right away, instead of letting the followers wait until it expires.
+   */
+  @PreDestroy
+  public void stop() {
+    if (this.ticks != null) {
+      this.ticks.dispose();
+    }
+    if (this.publications != null) {
+      this.publications.dispose();
+    }
+    synchronized (this) {
+      if (this.lease != null) {
+        try {
+          this.leaseBackend.release(this.nodeId);
+        } catch (IOException e) {
+          log.warn("Failed to release the lease: {}", e.getMessage());
+        }
+        this.lease = null;
+      }
+    }
+  }
+
+  /**
+   * Acquires or renews the lease and, while following, takes over the published snapshot. Blocks on the lease backend.
+   */
+  public synchronized void tick() {
+    boolean wasLeader = this.isLeader();
+    try {
+      this.lease =
+        this.leaseBackend.tryAcquire(this.nodeId, this.leaseTtl).orElse(null);
+    } catch (IOException e) {
+      // a lease that cannot be renewed expires on its own
+      log.warn("Failed to acquire the lease: {}", e.getMessage());
+    }
+    boolean leader = this.isLeader();
+    if (leader) {
+      this.lastTerm = this.lease.term();
+    }
+    if (leader != wasLeader) {
+      log.info(
+        leader
+          ? "Node {} is the leader now (term {}), refreshing from CKAN"
+          : "Node {} is a follower now (last term {}), reading the shared snapshot",
+        this.nodeId,
+        this.lastTerm
+      );
+      this.eventPublisher.publishEvent(
+          new LeadershipChangedEvent(leader, this.lastTerm)
+        );
+    }
+    if (!leader) {
+      this.snapshotCache.refreshPublished(this::readPublished)
+        .subscribe(
+          snapshot -> {},
+          e -> log.debug("No shared snapshot to follow: {}", e.getMessage())
+        );
+    }
+  }
+
+  /**
+   * Whether this instance holds an unexpired lease.
+   */
+  public boolean isLeader() {
+    Lease current = this.lease;
+    return current != null && current.expiresAt().isAfter(this.clock.instant());
+  }
+
+  public String getNodeId() {
+    return this.nodeId;
+  }
+
+  /**
+   * Reads the snapshot published by the leader off the calling thread. An unchanged publication yields the same snapshot
+   * instance, which the cache does not emit again.
+   * @return The published snapshot, an error if there is none for the current departments mapping
+   */
+  public Mono<DepartmentSnapshot> readPublished() {
+    return Mono
+      .fromCallable(() -> {
+        SharedSnapshotFile.Publication publication =
+          this.snapshotFile.read()
+            .orElseThrow(() ->
+              new IllegalStateException(
+                "No snapshot published in " + this.snapshotFile.getFile()
+              )
+            );
+        if (
+          publication.fingerprint() !=
+          this.departmentService.getIndex().fingerprint()
+        ) {
+          throw new IllegalStateException(
+            "The shared snapshot was built from another departments mapping"
+          );
+        }
+        SharedSnapshotFile.Publication previous = this.accepted;
+        if (previous != null && publication.version() < previous.version()) {
+          // published by a former leader
+          return previous.snapshot();
+        }
+        this.accepted = publication;
+        return publication.snapshot();
+      })
+      .subscribeOn(this.blockingScheduler);
+  }
+
+  /**
+   * Publishes a new snapshot of the cache while this instance is the leader. Snapshots taken over from the shared file are
+   * not published again.
+   */
+  private synchronized void publish(DepartmentSnapshot snapshot) {
+    Lease current = this.lease;
+    SharedSnapshotFile.Publication previous = this.accepted;
+    if (
+      !this.isLeader() ||
+      (previous != null && previous.snapshot() == snapshot)
+    ) {
+      return;
+    }
+    if (current.term() != this.publishedTerm) {
+      this.publishedTerm = current.term();
+      this.sequence = 0;
+    }
+    long version = (current.term() << 32) | ++this.sequence;
+    try {
+      this.snapshotFile.write(snapshot, version, snapshot.fingerprint());
+      log.debug(
+        "Published snapshot fetched at {} as version {}",
+        snapshot.fetchedAt(),
+        version
+      );
+    } catch (IOException e) {
+      log.warn(
+        "Failed to publish snapshot to {}: {}",
+        this.snapshotFile.getFile(),
+        e.getMessage()
+      );
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package govdata.dashboard.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.ObservationRegistry;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the snapshot pipeline. Per organization work is only counted locally and recorded once per fetch, so the hot
+ * path does not touch shared counters.
+ */
+@Component
+public class DashboardMetrics {
+
+  private final ObservationRegistry observationRegistry;
+  private final Counter receivedOrganizations;
+  private final Counter matchedOrganizations;
+  private final Timer aggregation;
+
+  public DashboardMetrics(
+    MeterRegistry meterRegistry,
+    ObservationRegistry observationRegistry
+  ) {
+    this.observationRegistry = observationRegistry;
+    this.receivedOrganizations =
+      this.organizations(meterRegistry, "received");
+    this.matchedOrganizations = this.organizations(meterRegistry, "matched");
+    this.aggregation =
+      Timer
+        .builder("govdata.aggregation")
+        .description("Time to build the sorted department list from the accumulated counts")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Registry of the observations of the individual pipeline stages, see {@code tap(Micrometer.observation(...))}.
+   */
+  public ObservationRegistry getObservationRegistry() {
+    return this.observationRegistry;
+  }
+
+  /**
+   * Records the organizations of a completed fetch.
+   * @param received Organizations in the CKAN response
+   * @param matched Organizations that belong to a known department
+   */
+  public void recordOrganizations(long received, long matched) {
+    this.receivedOrganizations.increment(received);
+    this.matchedOrganizations.increment(matched);
+  }
+
+  public <T> T timeAggregation(Supplier<T> aggregation) {
+    return this.aggregation.record(aggregation);
+  }
+
+  private Counter organizations(MeterRegistry meterRegistry, String result) {
+    return Counter
+      .builder("govdata.ckan.organizations")
+      .description("Organizations received from the CKAN API and matched to a department")
+      .tag("result", result)
+      .register(meterRegistry);
+  }
+}
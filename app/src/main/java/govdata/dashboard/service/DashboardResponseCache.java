@@ -0,0 +1,222 @@
+package govdata.dashboard.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ITemplateResolver;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Serializes the JSON and renders the dashboard HTML once per snapshot instead of once per request. Every new snapshot of
+ * the cache is precomputed in the background; a request that arrives before that computes it itself on the blocking
+ * scheduler, and all later requests for the same snapshot are served the stored bytes without any serialization or
+ * template work.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+  name = "govdata.precompute.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class DashboardResponseCache {
+
+  private static final MediaType TEXT_HTML_UTF8 = new MediaType(
+    MediaType.TEXT_HTML,
+    StandardCharsets.UTF_8
+  );
+
+  private record Responses(
+    DepartmentSnapshot snapshot,
+    PrecomputedResponse json,
+    PrecomputedResponse html
+  ) {}
+
+  private final ObjectMapper objectMapper;
+  private final SpringTemplateEngine templateEngine;
+  private final DepartmentSnapshotCache snapshotCache;
+  private final Scheduler blockingScheduler;
+
+  private final AtomicReference<Responses> responses = new AtomicReference<>();
+
+  private Disposable precomputations;
+
+  public DashboardResponseCache(
+    ObjectMapper objectMapper,
+    List<ITemplateResolver> templateResolvers,
+    @Value("${spring.webflux.base-path:}") String basePath,
+    DepartmentSnapshotCache snapshotCache,
+    Scheduler blockingScheduler
+  ) {
+    this.objectMapper = objectMapper;
+    this.snapshotCache = snapshotCache;
+    this.blockingScheduler = blockingScheduler;
+    // renders the same templates as the web views, but outside of a request
+    this.templateEngine = new SpringTemplateEngine();
+    this.templateEngine.setTemplateResolvers(new HashSet<>(templateResolvers));
+    this.templateEngine.setLinkBuilder(
+        new StandardLinkBuilder() {
+          @Override
+          protected String computeContextPath(
+            IExpressionContext context,
+            String base,
+            Map<String, Object> parameters
+          ) {
+            return basePath;
+          }
+        }
+      );
+  }
+
+  @PostConstruct
+  public void start() {
+    this.precomputations =
+      this.snapshotCache.updates()
+        .onBackpressureLatest()
+        .concatMap(
+          snapshot ->
+            Mono
+              .fromRunnable(() -> this.responses(snapshot))
+              // the first rendering reads the templates
+              .subscribeOn(this.blockingScheduler)
+              .doOnError(e ->
+                log.warn("Failed to precompute responses: {}", e.getMessage())
+              )
+              .onErrorComplete(),
+          1
+        )
+        .subscribe();
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (this.precomputations != null) {
+      this.precomputations.dispose();
+    }
+  }
+
+  /**
+   * @return The departments of the snapshot as JSON
+   */
+  public Mono<PrecomputedResponse> json(DepartmentSnapshot snapshot) {
+    return this.lookup(snapshot).map(Responses::json);
+  }
+
+  /**
+   * @return The dashboard page (index template) of the snapshot
+   */
+  public Mono<PrecomputedResponse> html(DepartmentSnapshot snapshot) {
+    return this.lookup(snapshot).map(Responses::html);
+  }
+
+  /**
+   * @return The JSON of the newest snapshot precomputed so far, without waiting for the current snapshot
+   */
+  public Optional<PrecomputedResponse> latestJson() {
+    return Optional.ofNullable(this.responses.get()).map(Responses::json);
+  }
+
+  /**
+   * @return The dashboard page of the newest snapshot precomputed so far, without waiting for the current snapshot
+   */
+  public Optional<PrecomputedResponse> latestHtml() {
+    return Optional.ofNullable(this.responses.get()).map(Responses::html);
+  }
+
+  /**
+   * Returns the stored responses right away, otherwise computes them off the calling thread, which may be an event loop.
+   */
+  private Mono<Responses> lookup(DepartmentSnapshot snapshot) {
+    Responses current = this.responses.get();
+    if (current != null && current.snapshot() == snapshot) {
+      return Mono.just(current);
+    }
+    return Mono
+      .fromSupplier(() -> this.responses(snapshot))
+      .subscribeOn(this.blockingScheduler);
+  }
+
+  /**
+   * Returns the responses of the snapshot, computing them if they are not stored yet. Only the responses of the newest
+   * snapshot are kept.
+   */
+  private Responses responses(DepartmentSnapshot snapshot) {
+    Responses current = this.responses.get();
+    if (current != null && current.snapshot() == snapshot) {
+      return current;
+    }
+    Responses computed = this.precompute(snapshot);
+    this.responses.accumulateAndGet(
+        computed,
+        (previous, next) ->
+          previous == null ||
+            !next.snapshot().fetchedAt().isBefore(previous.snapshot().fetchedAt())
+            ? next
+            : previous
+      );
+    return computed;
+  }
+
+  private Responses precompute(DepartmentSnapshot snapshot) {
+    long start = System.nanoTime();
+    byte[] json;
+    try {
+      json = this.objectMapper.writeValueAsBytes(snapshot.departments());
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+    String html = this.templateEngine.process(
+        "index",
+        new Context(
+          Locale.ROOT,
+          Map.of(
+            "datasets",
+            snapshot.departments(),
+            "fetchedAt",
+            snapshot.fetchedAt()
+          )
+        )
+      );
+    Responses responses = new Responses(
+      snapshot,
+      PrecomputedResponse.of(
+        json,
+        MediaType.APPLICATION_JSON,
+        snapshot.fetchedAt()
+      ),
+      PrecomputedResponse.of(
+        html.getBytes(StandardCharsets.UTF_8),
+        TEXT_HTML_UTF8,
+        snapshot.fetchedAt()
+      )
+    );
+    log.debug(
+      "Precomputed responses of snapshot fetched at {} ({} bytes) in {} ms",
+      snapshot.fetchedAt(),
+      responses.json().size() + responses.html().size(),
+      (System.nanoTime() - start) / 1_000_000
+    );
+    return responses;
+  }
+}
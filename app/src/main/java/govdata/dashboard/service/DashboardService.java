@@ -1,132 +1,345 @@
 package govdata.dashboard.service;
 
-import govdata.dashboard.model.ckan.CKANOrganizationEntity;
-import govdata.dashboard.model.ckan.CKANOrganizationResponse;
+import govdata.dashboard.model.cluster.LeadershipChangedEvent;
+import govdata.dashboard.model.department.DepartmentCounts;
 import govdata.dashboard.model.department.DepartmentDto;
-import java.net.URI;
-import java.util.Comparator;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import lombok.RequiredArgsConstructor;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.model.department.DepartmentUpdate;
+import govdata.dashboard.model.department.DepartmentsReloadedEvent;
+import govdata.dashboard.service.DepartmentSourceMerger.SourceCounts;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.extern.slf4j.Slf4j;
-import org.reactivestreams.Publisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriBuilder;
+import reactor.core.observability.micrometer.Micrometer;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.GroupedFlux;
 import reactor.core.publisher.Mono;
 
 /**
- * Service for communicating with the GovData CKAN API to retrieve organizations (ministries and subordinates) and their publications
+ * Service for communicating with the GovData CKAN API to retrieve organizations (ministries and subordinates) and their publications.
+ * If several CKAN sources are configured, they are fetched concurrently and their counts are merged per department.
+ * In incremental mode, the counts of every source are patched with the changes since the previous run, see {@link IncrementalDepartmentCounts}.
+ * In cluster mode, only the leader requests the CKAN API; the other instances load the snapshot it published, see {@link ClusterCoordinator}.
  */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class DashboardService {
 
-  private final WebClient webClient;
-  private final DepartmentService departmentService;
+  private final List<CKANSource> sources;
+  private final DepartmentSnapshotCache snapshotCache;
+  private final DashboardMetrics metrics;
+  private final Optional<IncrementalDepartmentCounts> incrementalCounts;
+  private final Optional<ClusterCoordinator> cluster;
+
+  public DashboardService(
+    List<CKANSource> sources,
+    DepartmentSnapshotCache snapshotCache,
+    DashboardMetrics metrics,
+    Optional<IncrementalDepartmentCounts> incrementalCounts,
+    Optional<ClusterCoordinator> cluster
+  ) {
+    this.sources = List.copyOf(sources);
+    this.snapshotCache = snapshotCache;
+    this.metrics = metrics;
+    this.incrementalCounts = incrementalCounts;
+    this.cluster = cluster;
+  }
 
   /**
-   * Computes the total number of data sets for each department resp. ministry by calling the CKAN organization_list endpoint with all details to retrieve the package count (=data set count) for each organization. It then filters out all unmatched departments and subordinates and finally sums up all subordinate's and department's package counts belonging to a matched departments. The results are stored as a Flux of DepartmentDto instances for each ministry. Sorting is done in descending order by total number of data sets.
+   * Returns the total number of data sets for each department resp. ministry. The result is served from the snapshot cache and only recomputed once the cached snapshot has expired; concurrent callers share a single upstream request.
    * @return Departments with name and data set count as a Flux
    */
   public Flux<DepartmentDto> computeDepartmentDataSetCounts() {
-    // check if the departments service generated an error while processing the departments JSON file
-    return this.departmentService.getError()
-      // discard previous Mono only if there was no error and continue to make API GET request for organizations
-      .then(this.requestOrganizations())
-      // Propagate error message on request failure
-      .flatMap(this.handleError())
-      // extract organizations list from "result" field (only on success)
-      .map(CKANOrganizationResponse::result)
-      // turn the result list into flux
-      .flatMapMany(Flux::fromIterable)
-      // filter out unmatched resp. invalid organizations (departments and subordinates)
-      .filter(this.isValidSubordinateOrDepartment())
-      // create DTO with name and dataset counter
-      .map(this.toDepartmentDto())
-      // merge with missing departments from departments service (to ensure there is a DTO for each department)
-      .mergeWith(this.defaultDepartmentNames())
-      // group by name because there are duplicates
-      .groupBy(DepartmentDto::name)
-      // sum data set counts for all departments with the same name
-      .flatMap(this.combineDuplicates())
-      // sort items descending by data set count
-      .sort(Comparator.comparingInt(DepartmentDto::dataSetCount).reversed())
-      .doOnError(e -> log.error(e.getMessage()));
+    return this.getDepartmentSnapshot()
+      .flatMapIterable(DepartmentSnapshot::departments);
   }
 
   /**
-   * Requests the organization list from the CKAN API.
+   * Selects departments of the current snapshot. The rows are emitted as they are selected, without a list of the result.
    */
-  private Mono<CKANOrganizationResponse> requestOrganizations() {
-    return this.webClient.get()
-      .uri(this.organizationUri())
-      .retrieve()
-      .bodyToMono(CKANOrganizationResponse.class);
+  public Flux<DepartmentDto> queryDepartments(DepartmentQuery query) {
+    return this.getDepartmentSnapshot()
+      .flatMapMany(snapshot ->
+        Flux.fromStream(() -> query.select(snapshot.departments()))
+      );
   }
 
   /**
-   * Creates an error with an error message if the response was not successful.
+   * Returns the last good snapshot of the departments together with its fetch time. Only waits for the CKAN API if no snapshot has been loaded yet.
+   * @return The current department snapshot
    */
-  private Function<? super CKANOrganizationResponse, ? extends Mono<CKANOrganizationResponse>> handleError() {
-    return res ->
-      res.success().booleanValue()
-        ? Mono.just(res)
-        : Mono.error(
-          new RuntimeException(
-            "Failed to load departments from CKAN API: " + res.error().message()
-          )
+  public Mono<DepartmentSnapshot> getDepartmentSnapshot() {
+    Optional<ClusterCoordinator> coordinator = this.following();
+    return coordinator.isPresent()
+      ? this.snapshotCache.getPublished(coordinator.get()::readPublished)
+      : this.snapshotCache.get(this::fetchDepartmentDataSetCounts);
+  }
+
+  /**
+   * Rebuilds the department snapshot from the CKAN API regardless of its age. The cached snapshot is only replaced on success.
+   * @return The new snapshot
+   */
+  public Mono<DepartmentSnapshot> refreshDepartmentSnapshot() {
+    Optional<ClusterCoordinator> coordinator = this.following();
+    return coordinator.isPresent()
+      ? this.snapshotCache.refreshPublished(coordinator.get()::readPublished)
+      : this.snapshotCache.refresh(this::fetchDepartmentDataSetCounts);
+  }
+
+  /**
+   * The coordinator of the cluster if this instance follows the leader's snapshot instead of requesting CKAN itself.
+   */
+  private Optional<ClusterCoordinator> following() {
+    return this.cluster.filter(coordinator -> !coordinator.isLeader());
+  }
+
+  /**
+   * Streams the department data to a live subscriber: first all departments of the current snapshot, then only the departments whose data set count changed whenever a new snapshot is available. All subscribers share the snapshot stream of the cache; a subscriber that cannot keep up skips intermediate snapshots and receives the changes relative to the last snapshot it has seen.
+   * @return Department updates, never completes
+   */
+  public Flux<DepartmentUpdate> streamDepartmentUpdates() {
+    return Flux.defer(() -> {
+      Map<String, Integer> seen = new HashMap<>();
+      return this.getDepartmentSnapshot()
+        .concatWith(this.snapshotCache.updates())
+        // the cache replays the snapshot that was just returned
+        .distinctUntilChanged(snapshot -> snapshot, (s1, s2) -> s1 == s2)
+        .onBackpressureLatest()
+        .map(snapshot -> this.diff(seen, snapshot))
+        .filter(update ->
+          update.complete() || !update.departments().isEmpty()
         );
+    });
+  }
+
+  /**
+   * Computes the update of a subscriber from the counts it has seen so far and records the new counts.
+   */
+  private DepartmentUpdate diff(
+    Map<String, Integer> seen,
+    DepartmentSnapshot snapshot
+  ) {
+    List<DepartmentDto> departments = snapshot.departments();
+    // the set of departments differs on the first snapshot or after the departments mapping changed
+    boolean complete =
+      seen.size() != departments.size() ||
+      !departments.stream().allMatch(d -> seen.containsKey(d.name()));
+    List<DepartmentDto> changed = new ArrayList<>();
+    for (DepartmentDto department : departments) {
+      if (
+        complete ||
+        !Objects.equals(seen.get(department.name()), department.dataSetCount())
+      ) {
+        changed.add(department);
+      }
+    }
+    if (complete) {
+      seen.clear();
+    }
+    changed.forEach(d -> seen.put(d.name(), d.dataSetCount()));
+    return new DepartmentUpdate(complete, changed, snapshot.fetchedAt());
   }
 
   /**
-   * Creates the CKAN request URI with the necessary query param.
+   * Invalidates the snapshot built from the previous departments mapping and starts rebuilding it right away. Until the new snapshot is available, requests are answered with the old one.
    */
-  private Function<UriBuilder, URI> organizationUri() {
-    return uriBuilder ->
-      uriBuilder
-        .path("organization_list")
-        .queryParam("all_fields", true)
-        .build();
+  @EventListener
+  public void onDepartmentsReloaded(DepartmentsReloadedEvent event) {
+    log.info(
+      "Departments reloaded ({} departments), rebuilding snapshot",
+      event.departments()
+    );
+    this.snapshotCache.invalidate();
+    this.refreshDepartmentSnapshot()
+      .onErrorResume(e -> Mono.empty())
+      .subscribe();
   }
 
   /**
-   * Checks if an organization is a matching subordinate or department.
+   * Refreshes from the CKAN API right away once this instance has become the leader of the cluster, so that a failover
+   * does not wait for the next scheduled refresh.
    */
-  private Predicate<? super CKANOrganizationEntity> isValidSubordinateOrDepartment() {
-    return org ->
-      this.departmentService.isValidSubordinateOrDepartment(org.name());
+  @EventListener
+  public void onLeadershipChanged(LeadershipChangedEvent event) {
+    if (event.leader()) {
+      this.refreshDepartmentSnapshot()
+        .onErrorResume(e -> Mono.empty())
+        .subscribe();
+    }
   }
 
   /**
-   * Creates a Flux of DepartmentDto objects from all known departments with initial dataset count 0.
+   * Computes the data set counts of all sources. A single source is fetched as is. Several sources are fetched
+   * concurrently, each within its own timeout; a source that fails or times out contributes the counts it had in the
+   * previous snapshot (or nothing if there is none), so that it degrades the result only partially. Only if every
+   * source fails, the whole run fails and the previous snapshot is kept.
+   * @return Departments with name, total data set count and per-source breakdown as a sorted list, with the fingerprint of
+   * the mapping of the primary source they were aggregated with
    */
-  private Flux<DepartmentDto> defaultDepartmentNames() {
+  private Mono<DepartmentCounts> fetchDepartmentDataSetCounts() {
+    if (this.sources.size() == 1) {
+      return this.fetchDepartmentDataSetCounts(this.sources.get(0));
+    }
+    List<String> failures = new ArrayList<>();
+    // the counts of the primary source are those of the previous snapshot if it fails
+    AtomicLong fingerprint = new AtomicLong(
+      this.snapshotCache.current()
+        .map(DepartmentSnapshot::fingerprint)
+        .orElse(0L)
+    );
     return Flux
-      .fromIterable(this.departmentService.getDepartmentNames())
-      .map(DepartmentDto::new);
+      .range(0, this.sources.size())
+      .flatMap(
+        i -> {
+          CKANSource source = this.sources.get(i);
+          Mono<DepartmentCounts> counts = this.fetchDepartmentDataSetCounts(
+            source
+          );
+          if (source.timeout() != null) {
+            counts = counts.timeout(source.timeout());
+          }
+          return counts
+            .map(fresh -> {
+              if (i == 0) {
+                fingerprint.set(fresh.fingerprint());
+              }
+              return Map.entry(
+                i,
+                new SourceCounts(source.name(), fresh.departments(), true)
+              );
+            })
+            .onErrorResume(e -> {
+              log.warn(
+                "CKAN source {} failed, keeping its previous counts: {}",
+                source.name(),
+                e.getMessage()
+              );
+              synchronized (failures) {
+                failures.add(source.name() + ": " + e.getMessage());
+              }
+              return Mono.justOrEmpty(
+                this.snapshotCache.current()
+                  .map(previous ->
+                    Map.entry(
+                      i,
+                      new SourceCounts(
+                        source.name(),
+                        DepartmentSourceMerger.countsOf(
+                          source.name(),
+                          previous.departments()
+                        ),
+                        false
+                      )
+                    )
+                  )
+              );
+            });
+        },
+        this.sources.size()
+      )
+      .collectList()
+      .flatMap(results -> {
+        if (results.stream().noneMatch(result -> result.getValue().fresh())) {
+          return Mono.error(
+            new RuntimeException(
+              "Failed to load departments from all CKAN sources: " +
+              String.join("; ", failures)
+            )
+          );
+        }
+        return Mono.just(
+          new DepartmentCounts(
+            DepartmentSourceMerger.merge(
+              results
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(Map.Entry::getValue)
+                .toList()
+            ),
+            fingerprint.get()
+          )
+        );
+      });
   }
 
   /**
-   * Adds up dataset counts for all departments with the same name.
+   * Computes the total number of data sets for each department resp. ministry of one source by calling the CKAN organization_list endpoint with all details to retrieve the package count (=data set count) for each organization. The response is parsed while it arrives, filtering out all unmatched departments and subordinates, and the package counts are summed up per department in a primitive array indexed by department ID. The results are collected as a list of DepartmentDto instances for each ministry. Sorting is done in descending order by total number of data sets.
+   * @return Departments with name and data set count as a sorted list, with the fingerprint of the mapping of the run
    */
-  private Function<GroupedFlux<String, DepartmentDto>, Publisher<DepartmentDto>> combineDuplicates() {
-    return group ->
-      group.reduce((d1, d2) ->
-        new DepartmentDto(d1.name(), d1.dataSetCount() + d2.dataSetCount())
-      );
+  private Mono<DepartmentCounts> fetchDepartmentDataSetCounts(
+    CKANSource source
+  ) {
+    DepartmentService departmentService = source.departmentService();
+    // check if the departments service generated an error while processing the departments JSON file
+    return departmentService.getError()
+      .checkpoint("departments")
+      // discard previous Mono only if there was no error and use the same department index for the whole run
+      .then(Mono.fromSupplier(departmentService::getIndex))
+      .flatMap(index ->
+        this.incrementalCounts
+          .map(incremental ->
+            incremental.refresh(
+              source,
+              index,
+              () -> this.fetchOrganizations(source, index, true)
+            )
+          )
+          .orElseGet(() -> this.fetchOrganizations(source, index, false))
+      )
+      // sort items descending by data set count
+      .map(aggregator ->
+        new DepartmentCounts(
+          this.metrics.timeAggregation(aggregator::toSortedList),
+          aggregator.index().fingerprint()
+        )
+      )
+      .checkpoint("aggregation")
+      .doOnError(e -> log.error(e.getMessage()));
   }
 
   /**
-   * Creates a DepartmentDto from a CKANOrganizationEntity. Subordinate organizations are mapped to their departments.
+   * Requests the complete organization list of a source and sums up the package counts of its departments.
+   * @param tracking Whether all organizations are kept by ID, unknown ones included, to patch the counts later on
    */
-  private Function<CKANOrganizationEntity, DepartmentDto> toDepartmentDto() {
-    return org -> {
-      String department = this.departmentService.toDepartment(org.name());
-      return new DepartmentDto(department, org.packageCount());
-    };
+  private Mono<DepartmentCountAggregator> fetchOrganizations(
+    CKANSource source,
+    DepartmentIndex index,
+    boolean tracking
+  ) {
+    // pages may be parsed concurrently in paged mode
+    LongAdder received = new LongAdder();
+    return source
+      .ckanClient()
+      // make API GET request for organizations that are streamed from the response while unmatched resp. invalid organizations are already filtered out
+      .fetchOrganizations(name -> {
+        received.increment();
+        return tracking || index.departmentId(name) != DepartmentIndex.UNKNOWN;
+      })
+      .name("govdata.ckan.fetch")
+      .tag("stage", "fetch")
+      .tag("source", source.name())
+      .tap(Micrometer.observation(this.metrics.getObservationRegistry()))
+      .checkpoint("CKAN organizations")
+      // sum data set counts per department, starting with 0 for every known department
+      .collect(
+        () ->
+          tracking
+            ? DepartmentCountAggregator.tracking(index)
+            : new DepartmentCountAggregator(index),
+        DepartmentCountAggregator::add
+      )
+      .doOnNext(aggregator ->
+        this.metrics.recordOrganizations(
+            received.sum(),
+            aggregator.organizations()
+          )
+      );
   }
 }
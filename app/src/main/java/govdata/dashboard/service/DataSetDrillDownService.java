@@ -0,0 +1,215 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.DataSetDto;
+import govdata.dashboard.util.LruCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Lists the data sets behind the count of a department, i.e. the data sets of the department itself and of all its
+ * subordinates. The organizations are searched with package_search concurrently, but at most parallelism at a time, and
+ * every organization is paged through sequentially: the next page is only requested once the previous one has been
+ * consumed, so that a large ministry neither piles up thousands of data sets in memory nor opens a connection per page.
+ * Pages are cached per organization in an LRU cache bounded by the number of pages.
+ */
+@Service
+@Slf4j
+public class DataSetDrillDownService {
+
+  /**
+   * One page of the data sets of an organization.
+   * @param count Total number of data sets of the organization when the page was requested
+   */
+  private record Page(List<DataSetDto> dataSets, int count) {}
+
+  private record PageKey(String organizationId, int start) {}
+
+  /**
+   * CKAN IDs of the organizations of a departments mapping, resolved once per mapping.
+   */
+  private record OrganizationIds(
+    DepartmentIndex index,
+    Mono<Map<String, String>> ids
+  ) {}
+
+  private final CKANClient ckanClient;
+  private final DepartmentService departmentService;
+  private final int pageSize;
+  private final int parallelism;
+  private final Duration ttl;
+  private final LruCache<PageKey, Page> pages;
+
+  private final AtomicReference<OrganizationIds> organizationIds =
+    new AtomicReference<>(
+      new OrganizationIds(DepartmentIndex.empty(), Mono.empty())
+    );
+
+  public DataSetDrillDownService(
+    CKANClient ckanClient,
+    DepartmentService departmentService,
+    @Value("${govdata.drilldown.page-size}") int pageSize,
+    @Value("${govdata.drilldown.parallelism}") int parallelism,
+    @Value("${govdata.drilldown.cache.max-pages}") int maxPages,
+    @Value("${govdata.drilldown.cache.ttl}") Duration ttl,
+    MeterRegistry meterRegistry
+  ) {
+    this.ckanClient = ckanClient;
+    this.departmentService = departmentService;
+    this.pageSize = Math.max(1, pageSize);
+    this.parallelism = Math.max(1, parallelism);
+    this.ttl = ttl;
+    this.pages = new LruCache<>(maxPages, ttl);
+    Gauge
+      .builder("govdata.drilldown.cache.pages", this.pages, LruCache::size)
+      .description("Number of cached data set pages")
+      .register(meterRegistry);
+  }
+
+  /**
+   * Checks if the name is a department of the current mapping; subordinates have no drill-down of their own.
+   */
+  public boolean isDepartment(String department) {
+    DepartmentIndex index = this.departmentService.getIndex();
+    int departmentId = index.departmentId(department);
+    return (
+      departmentId != DepartmentIndex.UNKNOWN &&
+      index.departmentName(departmentId).equals(department)
+    );
+  }
+
+  /**
+   * Streams the data sets of a department and its subordinates. Data sets of different organizations are interleaved,
+   * the data sets of one organization arrive sorted by name. Organizations unknown to CKAN are skipped.
+   * @param department Name of a department, see {@link #isDepartment(String)}
+   * @return The data sets, empty for an unknown department
+   */
+  public Flux<DataSetDto> fetchDataSets(String department) {
+    return Flux.defer(() -> {
+      DepartmentIndex index = this.departmentService.getIndex();
+      int departmentId = index.departmentId(department);
+      if (departmentId == DepartmentIndex.UNKNOWN) {
+        return Flux.empty();
+      }
+      return this.organizationIds(index)
+        .flatMapMany(ids ->
+          Flux
+            // the CKAN names of the department's organizations, including aliases and approximate matches
+            .fromIterable(ids.keySet())
+            .filter(organization ->
+              index.departmentId(organization) == departmentId
+            )
+            .sort()
+            .flatMap(
+              organization ->
+                this.fetchOrganizationDataSets(
+                    organization,
+                    ids.get(organization)
+                  ),
+              this.parallelism,
+              // an organization delivers at most one page ahead of the subscriber
+              this.pageSize
+            )
+        );
+    });
+  }
+
+  /**
+   * Requests the first page to learn the number of data sets, then the remaining pages one after the other on demand.
+   */
+  private Flux<DataSetDto> fetchOrganizationDataSets(
+    String organization,
+    String organizationId
+  ) {
+    return this.fetchPage(organization, organizationId, 0)
+      .flatMapMany(first -> {
+        int pages = (first.count() + this.pageSize - 1) / this.pageSize;
+        return Flux
+          .fromIterable(first.dataSets())
+          .concatWith(
+            Flux
+              .range(1, Math.max(0, pages - 1))
+              .concatMap(
+                page ->
+                  this.fetchPage(
+                      organization,
+                      organizationId,
+                      page * this.pageSize
+                    )
+                    .flatMapIterable(Page::dataSets),
+                1
+              )
+          );
+      });
+  }
+
+  private Mono<Page> fetchPage(
+    String organization,
+    String organizationId,
+    int start
+  ) {
+    PageKey key = new PageKey(organizationId, start);
+    return Mono.defer(() -> {
+      Page cached = this.pages.get(key);
+      if (cached != null) {
+        return Mono.just(cached);
+      }
+      return this.ckanClient.searchDataSets(organizationId, start, this.pageSize)
+        .map(result ->
+          new Page(
+            result
+              .results()
+              .stream()
+              .map(dataSet ->
+                new DataSetDto(
+                  organization,
+                  dataSet.name(),
+                  dataSet.title(),
+                  dataSet.metadataModified()
+                )
+              )
+              .toList(),
+            result.count() != null ? result.count() : 0
+          )
+        )
+        .doOnNext(page -> this.pages.put(key, page));
+    });
+  }
+
+  /**
+   * Resolves the display names of all organizations matched by the departments file to CKAN organization IDs, which
+   * package_search filters by. The lookup is shared by concurrent callers, also by those that see a new mapping at the
+   * same time, and cached for the time to live of the pages; failures are not cached.
+   */
+  private Mono<Map<String, String>> organizationIds(DepartmentIndex index) {
+    while (true) {
+      OrganizationIds current = this.organizationIds.get();
+      if (current.index() == index) {
+        return current.ids();
+      }
+      OrganizationIds resolved = new OrganizationIds(
+        index,
+        this.ckanClient.fetchOrganizations(name ->
+            index.departmentId(name) != DepartmentIndex.UNKNOWN
+          )
+          .filter(organization -> organization.id() != null)
+          .collectMap(CKANOrganizationEntity::name, CKANOrganizationEntity::id)
+          .doOnNext(ids -> log.debug("Resolved {} organization IDs", ids.size()))
+          .cache(ids -> this.ttl, e -> Duration.ZERO, () -> Duration.ZERO)
+      );
+      // only one of the callers that see a new mapping installs its lookup, the others share it
+      if (this.organizationIds.compareAndSet(current, resolved)) {
+        return resolved.ids();
+      }
+    }
+  }
+}
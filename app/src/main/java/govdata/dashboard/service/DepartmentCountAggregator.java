@@ -0,0 +1,177 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.DepartmentDto;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accumulates package counts per department in a primitive array indexed by department ID. Every department of the
+ * index starts with a count of 0, so departments without any organization in the CKAN response are still reported.
+ * A tracking aggregator also remembers every organization by its ID, so that the counts can later be patched with
+ * changed organizations only (see {@link IncrementalDepartmentCounts}).
+ * Not thread-safe: one instance is used by exactly one aggregation run; a run that patches counts works on a copy.
+ */
+public final class DepartmentCountAggregator {
+
+  private final DepartmentIndex index;
+  private final int[] counts;
+  private int organizations;
+
+  // only for tracking aggregators: the matched organizations and the IDs of all organizations
+  private final Map<String, CKANOrganizationEntity> matched;
+  private final Set<String> ids;
+  private int untracked;
+
+  public DepartmentCountAggregator(DepartmentIndex index) {
+    this(index, new int[index.size()], 0, null, null, 0);
+  }
+
+  private DepartmentCountAggregator(
+    DepartmentIndex index,
+    int[] counts,
+    int organizations,
+    Map<String, CKANOrganizationEntity> matched,
+    Set<String> ids,
+    int untracked
+  ) {
+    this.index = index;
+    this.counts = counts;
+    this.organizations = organizations;
+    this.matched = matched;
+    this.ids = ids;
+    this.untracked = untracked;
+  }
+
+  /**
+   * Creates an aggregator that remembers the organizations it is given, unknown ones included.
+   */
+  public static DepartmentCountAggregator tracking(DepartmentIndex index) {
+    return new DepartmentCountAggregator(
+      index,
+      new int[index.size()],
+      0,
+      new HashMap<>(),
+      new HashSet<>(),
+      0
+    );
+  }
+
+  /**
+   * Adds the package count of an organization to its department. Unknown organizations are ignored.
+   */
+  public void add(CKANOrganizationEntity organization) {
+    int departmentId = this.index.departmentId(organization.name());
+    if (this.ids != null) {
+      if (organization.id() == null) {
+        this.untracked++;
+      } else {
+        this.ids.add(organization.id());
+        if (departmentId != DepartmentIndex.UNKNOWN) {
+          this.matched.put(organization.id(), organization);
+        }
+      }
+    }
+    if (departmentId != DepartmentIndex.UNKNOWN) {
+      this.counts[departmentId] += organization.packageCount();
+      this.organizations++;
+    }
+  }
+
+  /**
+   * Replaces the previous state of an organization of a tracking aggregator, e.g. after its package count or its name
+   * changed. The counts of the departments it belonged to before and belongs to now are adjusted by the difference.
+   */
+  public void update(CKANOrganizationEntity organization) {
+    CKANOrganizationEntity previous = this.matched.remove(organization.id());
+    if (previous != null) {
+      this.counts[this.index.departmentId(previous.name())] -=
+        previous.packageCount();
+      this.organizations--;
+    }
+    this.add(organization);
+  }
+
+  /**
+   * Whether a tracking aggregator has seen the organization, matched or not.
+   */
+  public boolean contains(String organizationId) {
+    return this.ids.contains(organizationId);
+  }
+
+  /**
+   * Whether the organization of a tracking aggregator belongs to a department.
+   */
+  public boolean isMatched(String organizationId) {
+    return this.matched.containsKey(organizationId);
+  }
+
+  /**
+   * Number of organizations of a tracking aggregator that could not be tracked because they have no ID.
+   */
+  public int untracked() {
+    return this.untracked;
+  }
+
+  /**
+   * Whether a department count dropped below 0, i.e. the patches do not add up.
+   */
+  public boolean hasNegativeCount() {
+    return Arrays.stream(this.counts).anyMatch(count -> count < 0);
+  }
+
+  /**
+   * Copies a tracking aggregator, so that the copy can be patched while the original is still in use.
+   */
+  public DepartmentCountAggregator copy() {
+    return new DepartmentCountAggregator(
+      this.index,
+      this.counts.clone(),
+      this.organizations,
+      new HashMap<>(this.matched),
+      new HashSet<>(this.ids),
+      this.untracked
+    );
+  }
+
+  /**
+   * The departments mapping the counts are aggregated with.
+   */
+  public DepartmentIndex index() {
+    return this.index;
+  }
+
+  /**
+   * Number of organizations added to a department so far.
+   */
+  public int organizations() {
+    return this.organizations;
+  }
+
+  /**
+   * Creates the result once all organizations have been added: departments sorted descending by data set count,
+   * ties ordered like the departments file.
+   */
+  public List<DepartmentDto> toSortedList() {
+    // sort primitive keys: the inverted count in the upper, the department ID in the lower 32 bits
+    long[] keys = new long[this.counts.length];
+    for (int id = 0; id < this.counts.length; id++) {
+      keys[id] = ((long) (Integer.MAX_VALUE - this.counts[id]) << 32) | id;
+    }
+    Arrays.sort(keys);
+
+    List<DepartmentDto> departments = new ArrayList<>(keys.length);
+    for (long key : keys) {
+      int id = (int) key;
+      departments.add(
+        new DepartmentDto(this.index.departmentName(id), this.counts[id])
+      );
+    }
+    return departments;
+  }
+}
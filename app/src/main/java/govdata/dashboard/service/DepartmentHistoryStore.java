@@ -0,0 +1,522 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.model.history.HistoryPoint;
+import govdata.dashboard.model.history.HistoryResolution;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Embedded append-only time series of the data set count of every department, recorded from each new snapshot.
+ * <p>
+ * Every department has its own series, stored as a sequence of memory-mapped segment files in
+ * {@code <directory>/<series id>/<base epoch second>.seg}. A segment has a 16 byte header (magic, record count, base
+ * time) followed by fixed-width 8 byte records: the time as seconds since the segment's base time and the count. Only
+ * changes are recorded, so a series is a step function and the count at any time is the one of the last record before
+ * it. Fixed-width records ordered by time allow finding that record with a binary search, so a downsampled range query
+ * costs one binary search per bucket regardless of how many samples the range covers.
+ * <p>
+ * Series IDs are assigned in the order departments are first seen and listed in {@code departments.tsv}. Records are
+ * appended by a single writer; readers see a record once the segment's record count includes it.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+  name = "govdata.history.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class DepartmentHistoryStore {
+
+  // "GDH" followed by the format version
+  private static final int MAGIC = 0x47444801;
+  private static final int HEADER_BYTES = 16;
+  private static final int RECORD_BYTES = 8;
+  private static final int NONE = -1;
+  private static final String CATALOG = "departments.tsv";
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  /**
+   * Maximum number of buckets per department a query may cover, see {@link #buckets}.
+   */
+  public static final int MAX_BUCKETS = 10_000;
+
+  private final Path directory;
+  private final int segmentRecords;
+  private final DepartmentSnapshotCache snapshotCache;
+  private final Scheduler blockingScheduler;
+
+  // replaced as a whole when a department is seen for the first time, in series ID order
+  private volatile Map<String, Series> series = Map.of();
+
+  private Disposable recordings;
+
+  public DepartmentHistoryStore(
+    @Value("${govdata.history.directory}") Path directory,
+    @Value("${govdata.history.segment-records}") int segmentRecords,
+    DepartmentSnapshotCache snapshotCache,
+    Scheduler blockingScheduler
+  ) {
+    this.directory = directory.toAbsolutePath();
+    this.segmentRecords = segmentRecords;
+    this.snapshotCache = snapshotCache;
+    this.blockingScheduler = blockingScheduler;
+  }
+
+  /**
+   * Opens the store and starts recording every new snapshot of the cache.
+   */
+  @PostConstruct
+  public void start() throws IOException {
+    this.open();
+    this.recordings =
+      this.snapshotCache.updates()
+        .onBackpressureLatest()
+        .concatMap(
+          snapshot ->
+            Mono
+              .fromRunnable(() -> this.record(snapshot))
+              .subscribeOn(this.blockingScheduler)
+              .onErrorResume(e -> {
+                log.warn("Failed to record history: {}", e.getMessage());
+                return Mono.empty();
+              }),
+          1
+        )
+        .subscribe();
+  }
+
+  /**
+   * Maps the existing series into memory.
+   */
+  public synchronized void open() throws IOException {
+    Files.createDirectories(this.directory);
+    Path catalog = this.directory.resolve(CATALOG);
+    Map<String, Series> opened = new LinkedHashMap<>();
+    if (Files.exists(catalog)) {
+      for (String line : Files.readAllLines(catalog, StandardCharsets.UTF_8)) {
+        int separator = line.indexOf('\t');
+        if (separator < 0) {
+          continue;
+        }
+        int id = Integer.parseInt(line.substring(0, separator));
+        String department = line.substring(separator + 1);
+        opened.put(department, Series.open(this.seriesDirectory(id)));
+      }
+    }
+    this.series = opened;
+    log.info(
+      "Opened history of {} departments in {}",
+      opened.size(),
+      this.directory
+    );
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    if (this.recordings != null) {
+      this.recordings.dispose();
+    }
+    this.series.values().forEach(Series::close);
+    this.series = Map.of();
+  }
+
+  /**
+   * Appends the counts of the snapshot that differ from the last recorded ones. Samples that are not newer than the last
+   * record of a series, e.g. a snapshot restored at startup, are ignored.
+   * @return The number of appended records
+   */
+  public synchronized int record(DepartmentSnapshot snapshot) {
+    long time = snapshot.fetchedAt().getEpochSecond();
+    int appended = 0;
+    for (DepartmentDto department : snapshot.departments()) {
+      Series departmentSeries = this.series.get(department.name());
+      if (departmentSeries == null) {
+        departmentSeries = this.createSeries(department.name());
+      } else if (
+        time <= departmentSeries.lastTime ||
+        department.dataSetCount() == departmentSeries.lastCount
+      ) {
+        continue;
+      }
+      departmentSeries.append(
+        time,
+        department.dataSetCount(),
+        this.segmentRecords
+      );
+      appended++;
+    }
+    return appended;
+  }
+
+  /**
+   * Names of all recorded departments, including departments that are no longer part of the mapping.
+   */
+  public List<String> departments() {
+    return List.copyOf(this.series.keySet());
+  }
+
+  /**
+   * Counts the buckets per department a query of the range would return at most, i.e. from the first record of all
+   * series on. Stops counting after {@link #MAX_BUCKETS}.
+   * @return The number of buckets, {@link #MAX_BUCKETS} + 1 if there are more
+   */
+  public int buckets(Instant from, Instant to, HistoryResolution resolution) {
+    long firstTime = this.series.values()
+      .stream()
+      .mapToLong(Series::firstTime)
+      .filter(time -> time != NONE)
+      .min()
+      .orElse(NONE);
+    if (firstTime == NONE) {
+      return 0;
+    }
+    Instant start = from.getEpochSecond() > firstTime
+      ? from
+      : Instant.ofEpochSecond(firstTime);
+    int buckets = 0;
+    for (
+      Instant bucket = resolution.bucketStart(start);
+      bucket.isBefore(to) && buckets <= MAX_BUCKETS;
+      bucket = resolution.nextBucket(bucket)
+    ) {
+      buckets++;
+    }
+    return buckets;
+  }
+
+  /**
+   * The downsampled series of a department.
+   * @param from Start of the range, inclusive
+   * @param to End of the range, exclusive
+   * @return One point per bucket from the first record on, empty for unknown departments
+   */
+  public List<HistoryPoint> query(
+    String department,
+    Instant from,
+    Instant to,
+    HistoryResolution resolution
+  ) {
+    Series departmentSeries = this.series.get(department);
+    long firstTime = departmentSeries == null
+      ? NONE
+      : departmentSeries.firstTime();
+    if (firstTime == NONE) {
+      return List.of();
+    }
+    // buckets before the first record would be empty anyway
+    Instant start = from.getEpochSecond() > firstTime
+      ? from
+      : Instant.ofEpochSecond(firstTime);
+    List<HistoryPoint> points = new ArrayList<>();
+    for (
+      Instant bucket = resolution.bucketStart(start);
+      bucket.isBefore(to);
+      bucket = resolution.nextBucket(bucket)
+    ) {
+      Instant next = resolution.nextBucket(bucket);
+      Instant end = next.isBefore(to) ? next : to;
+      int count = departmentSeries.countAt(end.getEpochSecond() - 1);
+      if (count != NONE) {
+        points.add(new HistoryPoint(bucket, count));
+      }
+    }
+    return points;
+  }
+
+  /**
+   * The downsampled series of all recorded departments that have data in the range.
+   */
+  public Map<String, List<HistoryPoint>> query(
+    Instant from,
+    Instant to,
+    HistoryResolution resolution
+  ) {
+    Map<String, List<HistoryPoint>> result = new LinkedHashMap<>();
+    for (String department : this.series.keySet()) {
+      List<HistoryPoint> points = this.query(department, from, to, resolution);
+      if (!points.isEmpty()) {
+        result.put(department, points);
+      }
+    }
+    return result;
+  }
+
+  private Series createSeries(String department) {
+    int id = this.series.size();
+    try {
+      Path seriesDirectory = this.seriesDirectory(id);
+      Files.createDirectories(seriesDirectory);
+      Files.writeString(
+        this.directory.resolve(CATALOG),
+        id + "\t" + department + "\n",
+        StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND
+      );
+      Series created = new Series(seriesDirectory, new ArrayList<>());
+      Map<String, Series> extended = new LinkedHashMap<>(this.series);
+      extended.put(department, created);
+      this.series = extended;
+      return created;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Path seriesDirectory(int id) {
+    return this.directory.resolve(String.valueOf(id));
+  }
+
+  /**
+   * The segments of one department, ordered by time.
+   */
+  private static final class Series {
+
+    private final Path directory;
+    // replaced as a whole when a segment is added, so that readers never see a list being modified
+    private volatile List<Segment> segments;
+
+    // last record, only used by the writer
+    private long lastTime = Long.MIN_VALUE;
+    private int lastCount = NONE;
+
+    private Series(Path directory, List<Segment> segments) {
+      this.directory = directory;
+      this.segments = List.copyOf(segments);
+      for (Segment segment : this.segments) {
+        if (segment.size > 0) {
+          this.lastTime = segment.time(segment.size - 1);
+          this.lastCount = segment.count(segment.size - 1);
+        }
+      }
+    }
+
+    static Series open(Path directory) throws IOException {
+      List<Segment> segments = new ArrayList<>();
+      if (Files.isDirectory(directory)) {
+        try (Stream<Path> files = Files.list(directory)) {
+          for (Path file : files
+            .filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+            .sorted(Comparator.comparingLong(Series::baseTime))
+            .toList()) {
+            segments.add(Segment.open(file));
+          }
+        }
+      }
+      return new Series(directory, segments);
+    }
+
+    private static long baseTime(Path file) {
+      String name = file.getFileName().toString();
+      return Long.parseLong(
+        name.substring(0, name.length() - SEGMENT_SUFFIX.length())
+      );
+    }
+
+    void append(long time, int count, int segmentRecords) {
+      List<Segment> current = this.segments;
+      Segment last = current.isEmpty() ? null : current.get(current.size() - 1);
+      if (last == null || !last.append(time, count)) {
+        try {
+          Segment created = Segment.create(
+            this.directory.resolve(time + SEGMENT_SUFFIX),
+            time,
+            segmentRecords
+          );
+          created.append(time, count);
+          List<Segment> extended = new ArrayList<>(current);
+          extended.add(created);
+          this.segments = List.copyOf(extended);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      this.lastTime = time;
+      this.lastCount = count;
+    }
+
+    /**
+     * The time of the first record, {@link #NONE} if there is none.
+     */
+    long firstTime() {
+      for (Segment segment : this.segments) {
+        if (segment.size > 0) {
+          return segment.time(0);
+        }
+      }
+      return NONE;
+    }
+
+    /**
+     * The count of the last record at or before the given time, {@link #NONE} if there is none.
+     */
+    int countAt(long time) {
+      List<Segment> current = this.segments;
+      // last segment starting at or before the time
+      int low = 0;
+      int high = current.size() - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (current.get(middle).base <= time) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      // earlier segments only matter if the later ones are empty
+      for (int i = high; i >= 0; i--) {
+        Segment segment = current.get(i);
+        int index = segment.floor(time);
+        if (index != NONE) {
+          return segment.count(index);
+        }
+      }
+      return NONE;
+    }
+
+    void close() {
+      this.segments.forEach(Segment::close);
+    }
+  }
+
+  /**
+   * A memory-mapped segment file of fixed-width records.
+   */
+  private static final class Segment {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long base;
+    private final int capacity;
+    // published after the record has been written
+    private volatile int size;
+
+    private Segment(
+      FileChannel channel,
+      MappedByteBuffer buffer,
+      long base,
+      int capacity,
+      int size
+    ) {
+      this.channel = channel;
+      this.buffer = buffer;
+      this.base = base;
+      this.capacity = capacity;
+      this.size = size;
+    }
+
+    static Segment create(Path file, long base, int capacity)
+      throws IOException {
+      FileChannel channel = FileChannel.open(
+        file,
+        StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      );
+      MappedByteBuffer buffer = channel.map(
+        FileChannel.MapMode.READ_WRITE,
+        0,
+        HEADER_BYTES + (long) capacity * RECORD_BYTES
+      );
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, 0);
+      buffer.putLong(8, base);
+      return new Segment(channel, buffer, base, capacity, 0);
+    }
+
+    static Segment open(Path file) throws IOException {
+      FileChannel channel = FileChannel.open(
+        file,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      );
+      long length = channel.size();
+      MappedByteBuffer buffer = channel.map(
+        FileChannel.MapMode.READ_WRITE,
+        0,
+        length
+      );
+      if (length < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+        channel.close();
+        throw new IOException("Not a history segment: " + file);
+      }
+      int capacity = (int) ((length - HEADER_BYTES) / RECORD_BYTES);
+      int size = Math.min(buffer.getInt(4), capacity);
+      return new Segment(channel, buffer, buffer.getLong(8), capacity, size);
+    }
+
+    /**
+     * Appends a record unless the segment is full or the time is too far from the base time.
+     */
+    boolean append(long time, int count) {
+      long offset = time - this.base;
+      if (this.size == this.capacity || offset > Integer.MAX_VALUE) {
+        return false;
+      }
+      int position = HEADER_BYTES + this.size * RECORD_BYTES;
+      this.buffer.putInt(position, (int) offset);
+      this.buffer.putInt(position + 4, count);
+      this.buffer.putInt(4, this.size + 1);
+      this.size++;
+      return true;
+    }
+
+    long time(int index) {
+      return this.base + this.buffer.getInt(HEADER_BYTES + index * RECORD_BYTES);
+    }
+
+    int count(int index) {
+      return this.buffer.getInt(HEADER_BYTES + index * RECORD_BYTES + 4);
+    }
+
+    /**
+     * The index of the last record at or before the given time, {@link #NONE} if there is none.
+     */
+    int floor(long time) {
+      int low = 0;
+      int high = this.size - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (this.time(middle) <= time) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return high;
+    }
+
+    void close() {
+      try {
+        this.buffer.force();
+        this.channel.close();
+      } catch (IOException e) {
+        log.warn("Failed to close history segment: {}", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.SubOrdinate;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup structure built once from the departments file. Every known organization name, i.e. every department
+ * and every subordinate and their aliases, resolves to a dense department ID (0 to size - 1) with a single hash lookup,
+ * which allows aggregating counts in a primitive array indexed by department ID. Names that are not known verbatim are
+ * resolved by their normalized form and, if enabled, by similarity, see {@link OrganizationNameMatcher}.
+ */
+public final class DepartmentIndex {
+
+  public static final int UNKNOWN = -1;
+
+  /**
+   * Similarity matching settings.
+   * @param enabled Whether names without an exact or normalized match are matched by trigram similarity
+   * @param threshold Minimum similarity (0 to 1) of an accepted match
+   */
+  public record Fuzzy(boolean enabled, double threshold) {
+    public static Fuzzy disabled() {
+      return new Fuzzy(false, 1.0);
+    }
+  }
+
+  public enum MatchKind {
+    EXACT,
+    NORMALIZED,
+    FUZZY,
+    UNMATCHED,
+  }
+
+  /**
+   * How an organization name was resolved.
+   * @param departmentId The department ID or {@link #UNKNOWN}
+   * @param similarity Trigram similarity for fuzzy matches, 1 for exact and normalized matches, 0 if unmatched
+   */
+  public record Match(
+    String organization,
+    int departmentId,
+    MatchKind kind,
+    double similarity
+  ) {
+    static Match unmatched(String organization) {
+      return new Match(organization, UNKNOWN, MatchKind.UNMATCHED, 0);
+    }
+  }
+
+  private static final DepartmentIndex EMPTY = new DepartmentIndex(
+    List.of(),
+    List.of(),
+    Map.of(),
+    0L,
+    Fuzzy.disabled()
+  );
+
+  private final List<String> departmentNames;
+  private final List<List<String>> departmentOrganizations;
+  private final Map<String, Integer> organizationToDepartmentId;
+  private final long fingerprint;
+  private final OrganizationNameMatcher matcher;
+
+  private DepartmentIndex(
+    List<String> departmentNames,
+    List<List<String>> departmentOrganizations,
+    Map<String, Integer> organizationToDepartmentId,
+    long fingerprint,
+    Fuzzy fuzzy
+  ) {
+    this.departmentNames = departmentNames;
+    this.departmentOrganizations = departmentOrganizations;
+    this.organizationToDepartmentId = organizationToDepartmentId;
+    this.fingerprint = fingerprint;
+    this.matcher = new OrganizationNameMatcher(organizationToDepartmentId, fuzzy);
+  }
+
+  public static DepartmentIndex empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Builds the index without similarity matching.
+   * @see #of(List, Fuzzy)
+   */
+  public static DepartmentIndex of(List<Department> departments) {
+    return of(departments, Fuzzy.disabled());
+  }
+
+  /**
+   * Builds the index. Department IDs are assigned in the order of the departments file.
+   * @param departments The departments extracted from the departments file
+   * @throws IllegalArgumentException If an organization name or alias is used more than once, naming both departments involved
+   */
+  public static DepartmentIndex of(List<Department> departments, Fuzzy fuzzy) {
+    List<String> names = new ArrayList<>(departments.size());
+    List<List<String>> organizations = new ArrayList<>(departments.size());
+    Map<String, Integer> ids = new HashMap<>();
+    MessageDigest digest = sha256();
+    for (Department department : departments) {
+      int id = names.size();
+      names.add(department.name());
+      register(ids, names, department.name(), id);
+      update(digest, '{', department.name());
+      registerAliases(ids, names, digest, department.aliases(), id);
+      List<String> members = new ArrayList<>();
+      members.add(department.name());
+      for (SubOrdinate subOrdinate : department.subOrdinates()) {
+        register(ids, names, subOrdinate.name(), id);
+        update(digest, ',', subOrdinate.name());
+        registerAliases(ids, names, digest, subOrdinate.aliases(), id);
+        members.add(subOrdinate.name());
+      }
+      organizations.add(List.copyOf(members));
+    }
+    if (fuzzy.enabled()) {
+      // fuzzy matching counts other organizations, so snapshots built with other settings must not be taken over
+      update(digest, '~', Double.toString(fuzzy.threshold()));
+    }
+    return new DepartmentIndex(
+      List.copyOf(names),
+      List.copyOf(organizations),
+      Map.copyOf(ids),
+      ByteBuffer.wrap(digest.digest()).getLong(),
+      fuzzy
+    );
+  }
+
+  /**
+   * Registers aliases like organization names. A mapping without aliases keeps its fingerprint.
+   */
+  private static void registerAliases(
+    Map<String, Integer> ids,
+    List<String> names,
+    MessageDigest digest,
+    List<String> aliases,
+    int id
+  ) {
+    for (String alias : aliases) {
+      register(ids, names, alias, id);
+      update(digest, '|', alias);
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void update(
+    MessageDigest digest,
+    char separator,
+    String organization
+  ) {
+    digest.update((byte) separator);
+    digest.update(organization.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void register(
+    Map<String, Integer> ids,
+    List<String> names,
+    String organization,
+    int id
+  ) {
+    if (organization == null) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Missing organization name in department \"%s\"",
+          names.get(id)
+        )
+      );
+    }
+    Integer previous = ids.putIfAbsent(organization, id);
+    if (previous != null) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Duplicate organization name \"%s\" in departments \"%s\" and \"%s\"",
+          organization,
+          names.get(previous),
+          names.get(id)
+        )
+      );
+    }
+  }
+
+  /**
+   * Hash of the mapping the index was built from, i.e. of every department, subordinate and alias in file order and of the
+   * fuzzy matching settings if enabled. Formatting changes of the departments file do not change it.
+   */
+  public long fingerprint() {
+    return this.fingerprint;
+  }
+
+  /**
+   * Number of departments, i.e. the exclusive upper bound of department IDs.
+   */
+  public int size() {
+    return this.departmentNames.size();
+  }
+
+  /**
+   * Resolves a department or subordinate name to the ID of its department.
+   * @param organization Any organization name
+   * @return The department ID or {@link #UNKNOWN}
+   */
+  public int departmentId(String organization) {
+    Integer id = this.organizationToDepartmentId.get(organization);
+    return id != null ? id : this.matcher.match(organization).departmentId();
+  }
+
+  /**
+   * Resolves an organization name like {@link #departmentId(String)}, telling how it was matched.
+   */
+  public Match match(String organization) {
+    Integer id = this.organizationToDepartmentId.get(organization);
+    return id != null
+      ? new Match(organization, id, MatchKind.EXACT, 1.0)
+      : this.matcher.match(organization);
+  }
+
+  public String departmentName(int departmentId) {
+    return this.departmentNames.get(departmentId);
+  }
+
+  /**
+   * Department names ordered by department ID.
+   */
+  public List<String> departmentNames() {
+    return this.departmentNames;
+  }
+
+  /**
+   * Organizations counted for a department: the department itself followed by its subordinates in file order.
+   */
+  public List<String> organizations(int departmentId) {
+    return this.departmentOrganizations.get(departmentId);
+  }
+}
@@ -0,0 +1,160 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.SubOrdinate;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Binary form of a departments file, precomputed at build time for the bundled departments.json (Gradle task
+ * precomputeDepartmentIndex), so that the application builds its {@link DepartmentIndex} at startup without parsing and
+ * binding JSON. It holds the departments as validated from the JSON file together with the SHA-256 of that file; it is
+ * ignored for any other content of the departments file.
+ */
+public final class DepartmentIndexFile {
+
+  // "GDI" followed by the format version
+  private static final int MAGIC = 0x47444901;
+
+  private DepartmentIndexFile() {}
+
+  /**
+   * Writes the binary form of a departments file.
+   * @param args The departments JSON file and the file to write
+   */
+  public static void main(String[] args) throws IOException {
+    Path json = Path.of(args[0]);
+    Path index = Path.of(args[1]);
+    List<Department> departments = new DepartmentService(
+      json.toString(),
+      DepartmentIndex.Fuzzy.disabled(),
+      event -> {},
+      Schedulers.boundedElastic()
+    )
+      .parseDepartments()
+      .block();
+    // fails the build on an invalid mapping, e.g. a duplicate organization name
+    DepartmentIndex.of(departments);
+    Files.createDirectories(index.toAbsolutePath().getParent());
+    try (OutputStream out = Files.newOutputStream(index)) {
+      write(departments, Files.readAllBytes(json), out);
+    }
+  }
+
+  /**
+   * Name of the classpath resource with the binary form of a departments file on the classpath, e.g. departments.index for
+   * departments.json.
+   */
+  public static String resourceName(String departmentsResource) {
+    return (
+      (departmentsResource.endsWith(".json")
+          ? departmentsResource.substring(
+            0,
+            departmentsResource.length() - ".json".length()
+          )
+          : departmentsResource) +
+      ".index"
+    );
+  }
+
+  /**
+   * @param json Content of the departments file the departments were read from
+   */
+  public static void write(
+    List<Department> departments,
+    byte[] json,
+    OutputStream target
+  ) throws IOException {
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(target)
+    );
+    out.writeInt(MAGIC);
+    out.write(sha256(json));
+    out.writeInt(departments.size());
+    for (Department department : departments) {
+      out.writeUTF(department.name());
+      writeStrings(out, department.aliases());
+      out.writeInt(department.subOrdinates().size());
+      for (SubOrdinate subOrdinate : department.subOrdinates()) {
+        out.writeUTF(subOrdinate.name());
+        writeStrings(out, subOrdinate.aliases());
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * @param json Current content of the departments file
+   * @return The departments, empty if the binary form was written for different content or in an unknown format
+   */
+  public static Optional<List<Department>> read(
+    InputStream source,
+    byte[] json
+  ) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(source));
+    if (in.readInt() != MAGIC) {
+      return Optional.empty();
+    }
+    byte[] hash = new byte[32];
+    in.readFully(hash);
+    if (!Arrays.equals(hash, sha256(json))) {
+      return Optional.empty();
+    }
+    int size = in.readInt();
+    List<Department> departments = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String name = in.readUTF();
+      List<String> aliases = readStrings(in);
+      int subOrdinateCount = in.readInt();
+      List<SubOrdinate> subOrdinates = new ArrayList<>(subOrdinateCount);
+      for (int s = 0; s < subOrdinateCount; s++) {
+        subOrdinates.add(new SubOrdinate(in.readUTF(), readStrings(in)));
+      }
+      departments.add(
+        new Department(name, List.copyOf(subOrdinates), aliases)
+      );
+    }
+    return Optional.of(departments);
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings)
+    throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in)
+    throws IOException {
+    int size = in.readInt();
+    List<String> strings = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      strings.add(in.readUTF());
+    }
+    return List.copyOf(strings);
+  }
+
+  private static byte[] sha256(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Selects departments from a snapshot by name and data set count, in an order and up to a limit. Snapshots are sorted
+ * descending by data set count when they are built, so a query by count scans the snapshot from either end and stops at
+ * the limit. A query by name with a limit keeps the first departments in a bounded heap of limit entries instead of
+ * sorting all matches. Rows are produced lazily, so that they can be streamed without collecting the result.
+ * @param prefix Case-insensitive prefix of the name, any name if null
+ * @param contains Case-insensitive substring of the name, any name if null
+ * @param min Minimum data set count, inclusive, no minimum if null
+ * @param max Maximum data set count, inclusive, no maximum if null
+ * @param order Order of the result, the default order of the sort key if null: descending counts, ascending names
+ * @param limit Maximum number of departments, all if null
+ */
+public record DepartmentQuery(
+  String prefix,
+  String contains,
+  Integer min,
+  Integer max,
+  Sort sort,
+  Order order,
+  Integer limit
+) {
+  public enum Sort {
+    COUNT,
+    NAME,
+  }
+
+  public enum Order {
+    ASC,
+    DESC,
+  }
+
+  /**
+   * @throws IllegalArgumentException If the limit is not positive or the minimum count exceeds the maximum count
+   */
+  public DepartmentQuery {
+    if (limit != null && limit < 1) {
+      throw new IllegalArgumentException(
+        "limit must be positive, was " + limit
+      );
+    }
+    if (min != null && max != null && min > max) {
+      throw new IllegalArgumentException(
+        String.format("min (%d) must not exceed max (%d)", min, max)
+      );
+    }
+    sort = sort != null ? sort : Sort.COUNT;
+    order = order != null ? order : sort == Sort.COUNT ? Order.DESC : Order.ASC;
+    contains = contains != null ? contains.toLowerCase(Locale.ROOT) : null;
+  }
+
+  /**
+   * All departments in the order of the snapshot.
+   */
+  public static DepartmentQuery all() {
+    return new DepartmentQuery(null, null, null, null, null, null, null);
+  }
+
+  public boolean matches(DepartmentDto department) {
+    String name = department.name();
+    int count = department.dataSetCount();
+    return (
+      (this.prefix == null ||
+        name.regionMatches(true, 0, this.prefix, 0, this.prefix.length())) &&
+      (this.contains == null ||
+        name.toLowerCase(Locale.ROOT).contains(this.contains)) &&
+      (this.min == null || count >= this.min) &&
+      (this.max == null || count <= this.max)
+    );
+  }
+
+  /**
+   * @param departments Departments sorted descending by data set count, as in a snapshot
+   * @return The matching departments in query order, up to the limit
+   */
+  public Stream<DepartmentDto> select(List<DepartmentDto> departments) {
+    if (this.sort == Sort.COUNT) {
+      // ascending counts list ties in reverse order of the snapshot
+      Stream<DepartmentDto> matches =
+        (this.order == Order.DESC ? departments : departments.reversed())
+          .stream()
+          .filter(this::matches);
+      return this.limit != null ? matches.limit(this.limit) : matches;
+    }
+    Comparator<DepartmentDto> byName = Comparator.comparing(
+      DepartmentDto::name,
+      Collator.getInstance(Locale.GERMAN)
+    );
+    Comparator<DepartmentDto> comparator = this.order == Order.ASC
+      ? byName
+      : byName.reversed();
+    if (this.limit == null) {
+      return departments.stream().filter(this::matches).sorted(comparator);
+    }
+    return this.first(departments, comparator).stream();
+  }
+
+  /**
+   * Selects the first limit matches in the given order with a heap that holds at most limit + 1 departments.
+   */
+  private List<DepartmentDto> first(
+    List<DepartmentDto> departments,
+    Comparator<DepartmentDto> comparator
+  ) {
+    // the head is the last of the departments selected so far
+    PriorityQueue<DepartmentDto> heap = new PriorityQueue<>(
+      Math.min(this.limit, departments.size()) + 1,
+      comparator.reversed()
+    );
+    for (DepartmentDto department : departments) {
+      if (this.matches(department)) {
+        heap.add(department);
+        if (heap.size() > this.limit) {
+          heap.poll();
+        }
+      }
+    }
+    List<DepartmentDto> selected = new ArrayList<>(heap);
+    selected.sort(comparator);
+    return selected;
+  }
+}
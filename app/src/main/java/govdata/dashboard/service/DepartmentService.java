@@ -1,55 +1,164 @@
 package govdata.dashboard.service;
 
-import static java.util.stream.Collectors.toMap;
-
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import govdata.dashboard.model.department.Department;
-import govdata.dashboard.model.department.SubOrdinate;
+import govdata.dashboard.model.department.DepartmentsReloadedEvent;
 import govdata.dashboard.util.CheckedFunctionHelper;
 import jakarta.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Consumer;
-import lombok.Getter;
+import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ResourceUtils;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @Service
 @Slf4j
 public class DepartmentService {
 
-  @Value("${departments.file}")
-  private String departmentsFile;
+  /**
+   * The index together with the error of the load that produced it, published as one immutable value so that readers
+   * never see an index and an error from different loads.
+   */
+  private record Departments(DepartmentIndex index, Mono<String> error) {}
 
-  private Map<String, String> subordinateToDepartmentMap;
+  private final String departmentsFile;
+  private final DepartmentIndex.Fuzzy fuzzy;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Scheduler blockingScheduler;
 
-  @Getter
-  private List<String> departmentNames;
+  private volatile Departments departments = new Departments(
+    DepartmentIndex.empty(),
+    Mono.empty()
+  );
 
-  @Getter
-  private Mono<String> error = Mono.empty();
+  @Autowired
+  public DepartmentService(
+    @Value("${departments.file}") String departmentsFile,
+    @Value("${govdata.matching.fuzzy.enabled}") boolean fuzzyEnabled,
+    @Value("${govdata.matching.fuzzy.threshold}") double fuzzyThreshold,
+    ApplicationEventPublisher eventPublisher,
+    Scheduler blockingScheduler
+  ) {
+    this(
+      departmentsFile,
+      new DepartmentIndex.Fuzzy(fuzzyEnabled, fuzzyThreshold),
+      eventPublisher,
+      blockingScheduler
+    );
+  }
+
+  /**
+   * @param blockingScheduler Scheduler to read the departments file on when reloading
+   */
+  public DepartmentService(
+    String departmentsFile,
+    DepartmentIndex.Fuzzy fuzzy,
+    ApplicationEventPublisher eventPublisher,
+    Scheduler blockingScheduler
+  ) {
+    this.departmentsFile = departmentsFile;
+    this.fuzzy = fuzzy;
+    this.eventPublisher = eventPublisher;
+    this.blockingScheduler = blockingScheduler;
+  }
 
   /**
    * Tries to read departments from a given JSON resource at startup.
-   * On success, departments are provided as a list to process by other services.
+   * On success, departments are provided as an index to process by other services.
    * On failure, an error Mono is created to be queried.
+   * Blocks the calling thread, i.e. the thread that creates the application context; Reactor rejects the call on an event
+   * loop. Use {@link #reload()} at runtime.
    */
   @PostConstruct
   public void loadDefaultDepartments() {
+    this.departments =
+      this.readDepartments()
+        .map(index -> new Departments(index, Mono.<String>empty()))
+        // Catch any error and store it for later
+        .onErrorResume(e ->
+          Mono.just(
+            new Departments(DepartmentIndex.empty(), this.createLoadError(e))
+          )
+        )
+        .block();
+  }
+
+  /**
+   * Reads the departments file again off the calling thread and, if it is valid, replaces the current mapping with a single
+   * reference swap. Requests in flight keep the mapping they started with. An invalid file leaves the current mapping
+   * untouched.
+   * @return The new index, or an error describing why the file was rejected
+   */
+  public Mono<DepartmentIndex> reload() {
+    return this.readDepartments()
+      .subscribeOn(this.blockingScheduler)
+      .doOnNext(index -> {
+        this.departments = new Departments(index, Mono.empty());
+        this.eventPublisher.publishEvent(
+            new DepartmentsReloadedEvent(index.size())
+          );
+      })
+      .doOnError(e ->
+        log.error(
+          "Failed to reload departments, keeping the current mapping: {}",
+          e.getMessage()
+        )
+      );
+  }
+
+  /**
+   * The departments file if it is an external file that can change at runtime, empty for classpath resources.
+   */
+  public Optional<Path> getExternalDepartmentsFile() {
+    if (this.departmentsFile.startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)) {
+      return Optional.empty();
+    }
+    File file = new File(this.departmentsFile);
+    return file.isFile()
+      ? Optional.of(file.toPath().toAbsolutePath())
+      : Optional.empty();
+  }
+
+  public DepartmentIndex getIndex() {
+    return this.departments.index();
+  }
+
+  public Mono<String> getError() {
+    return this.departments.error();
+  }
+
+  /**
+   * Reads the departments, from their precomputed binary form if there is one, and builds the index.
+   */
+  private Mono<DepartmentIndex> readDepartments() {
+    return Mono
+      .fromCallable(this::readPrecomputedDepartments)
+      .switchIfEmpty(Mono.defer(this::parseDepartments))
+      // build the lookup index, fails on duplicate organization names
+      .map(departments -> DepartmentIndex.of(departments, this.fuzzy))
+      .doOnSuccess(i -> log.info("Loaded {} departments", i.size()));
+  }
+
+  /**
+   * Reads and validates the departments file.
+   */
+  Mono<List<Department>> parseDepartments() {
     ObjectMapper mapper = new ObjectMapper();
 
-    List<Department> departments = Mono
+    return Mono
       // propagates error if there is a problem with the resource
       .fromCallable(this::getDepartmentsFromFile)
       // try to read the file content as JSON
@@ -68,17 +177,50 @@ public class DepartmentService {
           mapper.readValue(node.traverse(), Department[].class)
         )
       )
-      .map(Arrays::asList)
-      // Catch any error and store it for later
-      .doOnError(this.handleError())
-      .doOnSuccess(d -> log.info("Loaded {} departments", d.size()))
-      // finally, create an empty list if there is an error
-      .onErrorReturn(new ArrayList<>())
-      .block();
+      .map(Arrays::asList);
+  }
 
-    this.departmentNames = departments.stream().map(Department::name).toList();
-    this.subordinateToDepartmentMap =
-      this.mapSubordinateToDepartment(departments);
+  /**
+   * Reads the binary form precomputed at build time for a departments file on the classpath, see
+   * {@link DepartmentIndexFile}.
+   * @return The departments, null if the departments file is an external file or there is no binary form for its content
+   */
+  private List<Department> readPrecomputedDepartments() throws IOException {
+    if (this.getExternalDepartmentsFile().isPresent()) {
+      return null;
+    }
+    String resource =
+      this.departmentsFile.startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)
+        ? this.departmentsFile.substring(
+          ResourceUtils.CLASSPATH_URL_PREFIX.length()
+        )
+        : this.departmentsFile;
+    ClassPathResource precomputed = new ClassPathResource(
+      DepartmentIndexFile.resourceName(resource)
+    );
+    if (!precomputed.exists()) {
+      return null;
+    }
+    byte[] json = new ClassPathResource(resource).getContentAsByteArray();
+    try (InputStream in = precomputed.getInputStream()) {
+      Optional<List<Department>> departments = DepartmentIndexFile.read(
+        in,
+        json
+      );
+      if (departments.isPresent()) {
+        log.info(
+          "Reading precomputed classpath resource: {}",
+          precomputed.getPath()
+        );
+      } else {
+        log.info(
+          "Ignoring precomputed classpath resource {}, it does not match {}",
+          precomputed.getPath(),
+          this.departmentsFile
+        );
+      }
+      return departments.orElse(null);
+    }
   }
 
   /**
@@ -109,15 +251,20 @@ public class DepartmentService {
     );
   }
 
-  private Consumer<? super Throwable> handleError() {
-    return e -> {
-      String errorMessage = String.format(
-        "Failed to load departments: %s",
-        e.getMessage()
-      );
-      this.error = Mono.error(new RuntimeException(errorMessage));
-      log.error(errorMessage);
-    };
+  private Mono<String> createLoadError(Throwable e) {
+    String errorMessage = String.format(
+      "Failed to load departments: %s",
+      e.getMessage()
+    );
+    log.error(errorMessage);
+    return Mono.error(new RuntimeException(errorMessage));
+  }
+
+  /**
+   * Names of all known departments, ordered by department ID.
+   */
+  public List<String> getDepartmentNames() {
+    return this.getIndex().departmentNames();
   }
 
   /**
@@ -125,11 +272,8 @@ public class DepartmentService {
    * @param departmentName Departments or subordinate
    * @return
    */
-  public Boolean isValidSubordinateOrDepartment(String departmentName) {
-    return (
-      this.departmentNames.contains(departmentName) ||
-      this.subordinateToDepartmentMap.containsKey(departmentName)
-    );
+  public boolean isValidSubordinateOrDepartment(String departmentName) {
+    return this.getIndex().departmentId(departmentName) != DepartmentIndex.UNKNOWN;
   }
 
   /**
@@ -139,29 +283,10 @@ public class DepartmentService {
    * @return Matching Department name
    */
   public String toDepartment(String organization) {
-    return this.subordinateToDepartmentMap.getOrDefault(
-        organization,
-        organization
-      );
-  }
-
-  /**
-   * Create a mapping from subordinates to their department.
-   * @param departments The departments extracted from the departments file
-   */
-  private Map<String, String> mapSubordinateToDepartment(
-    List<Department> departments
-  ) {
-    return departments
-      .stream()
-      .flatMap(department ->
-        department
-          .subOrdinates()
-          .stream()
-          .collect(toMap(SubOrdinate::name, subOrdinate -> department.name()))
-          .entrySet()
-          .stream()
-      )
-      .collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
+    DepartmentIndex index = this.getIndex();
+    int departmentId = index.departmentId(organization);
+    return departmentId != DepartmentIndex.UNKNOWN
+      ? index.departmentName(departmentId)
+      : organization;
   }
 }
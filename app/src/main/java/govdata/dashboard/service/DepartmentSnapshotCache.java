@@ -0,0 +1,326 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.DepartmentCounts;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Caches the aggregated departments as an immutable snapshot for a configurable time to live.
+ * Concurrent callers that miss the cache share a single in-flight load instead of each sending their own upstream request.
+ * Once a snapshot exists, callers never wait for a load again: an expired snapshot is served as is (stale-while-revalidate)
+ * while a load replaces it in the background. Failed loads keep the last good snapshot.
+ */
+@Component
+@Slf4j
+public class DepartmentSnapshotCache {
+
+  private static final String METRIC_NAME = "govdata.cache.requests";
+
+  /**
+   * The cached snapshot together with the generation it belongs to, replaced as a whole, so that a load cannot publish
+   * its snapshot after an invalidation that happened in between.
+   * @param generation Incremented on invalidation, so that loads started before are not cached
+   * @param invalidated The snapshot that was cached when the cache was invalidated last
+   */
+  private record State(
+    long generation,
+    DepartmentSnapshot snapshot,
+    DepartmentSnapshot invalidated
+  ) {}
+
+  private final Duration ttl;
+  private final Clock clock;
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter staleHits;
+  private final Counter coalescedWaits;
+
+  private final AtomicReference<State> state = new AtomicReference<>(
+    new State(0, null, null)
+  );
+  private final AtomicReference<Mono<DepartmentSnapshot>> inFlight =
+    new AtomicReference<>();
+
+  // hot stream of new snapshots that replays the latest one to new subscribers
+  private final Sinks.Many<DepartmentSnapshot> updates = Sinks
+    .many()
+    .replay()
+    .latest();
+
+  @Autowired
+  public DepartmentSnapshotCache(
+    @Value("${govdata.cache.ttl}") Duration ttl,
+    MeterRegistry meterRegistry
+  ) {
+    this(ttl, meterRegistry, Clock.systemUTC());
+  }
+
+  public DepartmentSnapshotCache(
+    Duration ttl,
+    MeterRegistry meterRegistry,
+    Clock clock
+  ) {
+    this.ttl = ttl;
+    this.clock = clock;
+    this.hits = this.counter(meterRegistry, "hit");
+    this.misses = this.counter(meterRegistry, "miss");
+    this.staleHits = this.counter(meterRegistry, "stale");
+    this.coalescedWaits = this.counter(meterRegistry, "coalesced");
+    Gauge
+      .builder(
+        "govdata.cache.snapshot.age",
+        this,
+        DepartmentSnapshotCache::ageInSeconds
+      )
+      .description("Age of the cached snapshot in seconds")
+      .baseUnit("seconds")
+      .register(meterRegistry);
+  }
+
+  /**
+   * Returns the cached snapshot. A fresh snapshot is returned directly, an expired one is returned as well while a reload
+   * is started in the background. Only if there is no snapshot at all, the caller waits for the loader, which is subscribed
+   * once and shared with every caller arriving while the load is in flight. Failed loads are not cached.
+   * @param loader Supplies the aggregated departments on a cache miss, with the fingerprint of their mapping
+   * @return The current snapshot
+   */
+  public Mono<DepartmentSnapshot> get(
+    Supplier<Mono<DepartmentCounts>> loader
+  ) {
+    return this.lookup(() -> this.stamp(loader));
+  }
+
+  /**
+   * Starts loading a new snapshot unless a load is already in flight. The load runs to completion even if nobody
+   * subscribes to the returned Mono.
+   * @param loader Supplies the aggregated departments
+   * @return The shared in-flight load
+   */
+  public Mono<DepartmentSnapshot> refresh(
+    Supplier<Mono<DepartmentCounts>> loader
+  ) {
+    return this.load(() -> this.stamp(loader));
+  }
+
+  /**
+   * Like {@link #get}, but the loader supplies complete snapshots published elsewhere, e.g. by the leader of a cluster,
+   * which keep their original fetch time. A loaded snapshot that is already cached (the same instance) is not emitted
+   * again.
+   */
+  public Mono<DepartmentSnapshot> getPublished(
+    Supplier<Mono<DepartmentSnapshot>> loader
+  ) {
+    return this.lookup(loader);
+  }
+
+  /**
+   * Like {@link #refresh}, for snapshots published elsewhere, see {@link #getPublished}.
+   */
+  public Mono<DepartmentSnapshot> refreshPublished(
+    Supplier<Mono<DepartmentSnapshot>> loader
+  ) {
+    return this.load(loader);
+  }
+
+  private Mono<DepartmentSnapshot> stamp(
+    Supplier<Mono<DepartmentCounts>> loader
+  ) {
+    return loader
+      .get()
+      .map(counts ->
+        new DepartmentSnapshot(
+          counts.departments(),
+          this.clock.instant(),
+          counts.fingerprint()
+        )
+      );
+  }
+
+  private Mono<DepartmentSnapshot> lookup(
+    Supplier<Mono<DepartmentSnapshot>> loader
+  ) {
+    return Mono.defer(() -> {
+      State state = this.state.get();
+      DepartmentSnapshot current = state.snapshot();
+      if (current == null) {
+        Mono<DepartmentSnapshot> pending = this.inFlight.get();
+        if (pending != null) {
+          this.coalescedWaits.increment();
+          return pending;
+        }
+        this.misses.increment();
+        return this.load(loader);
+      }
+      if (this.isExpired(state)) {
+        this.staleHits.increment();
+        this.load(loader);
+      } else {
+        this.hits.increment();
+      }
+      return Mono.just(current);
+    });
+  }
+
+  private Mono<DepartmentSnapshot> load(
+    Supplier<Mono<DepartmentSnapshot>> loader
+  ) {
+    while (true) {
+      Mono<DepartmentSnapshot> pending = this.inFlight.get();
+      if (pending != null) {
+        return pending;
+      }
+
+      // read before the load is registered, so that an invalidation racing with the registration discards the load
+      long loadGeneration = this.state.get().generation();
+      Sinks.One<DepartmentSnapshot> result = Sinks.one();
+      Mono<DepartmentSnapshot> shared = result.asMono();
+      if (this.inFlight.compareAndSet(null, shared)) {
+        // the load is subscribed independently of the callers, so a cancelled request does not abort the shared load
+        loader
+          .get()
+          .doOnNext(loaded -> {
+            if (this.publish(loaded, loadGeneration)) {
+              this.updates.emitNext(
+                  loaded,
+                  Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1))
+                );
+            }
+          })
+          // the load is no longer in flight before callers see its result, so they can start the next one right away
+          .subscribe(
+            loaded -> {
+              this.inFlight.compareAndSet(shared, null);
+              result.tryEmitValue(loaded);
+            },
+            error -> {
+              this.inFlight.compareAndSet(shared, null);
+              result.tryEmitError(error);
+            },
+            () -> {
+              this.inFlight.compareAndSet(shared, null);
+              result.tryEmitEmpty();
+            }
+          );
+        return shared;
+      }
+    }
+  }
+
+  /**
+   * Caches a loaded snapshot unless the cache was invalidated since the load started.
+   * @return Whether the snapshot replaced the cached one
+   */
+  private boolean publish(DepartmentSnapshot loaded, long loadGeneration) {
+    while (true) {
+      State current = this.state.get();
+      if (
+        current.generation() != loadGeneration || current.snapshot() == loaded
+      ) {
+        return false;
+      }
+      if (
+        this.state.compareAndSet(
+            current,
+            new State(loadGeneration, loaded, current.invalidated())
+          )
+      ) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Seeds an empty cache with a snapshot loaded from elsewhere, e.g. a persisted one at startup. It keeps its original
+   * fetch time, so an old snapshot is served right away but refreshed on the first lookup.
+   * @return Whether the snapshot was taken, i.e. the cache had no snapshot yet
+   */
+  public boolean seed(DepartmentSnapshot seeded) {
+    while (true) {
+      State current = this.state.get();
+      if (current.snapshot() != null) {
+        return false;
+      }
+      if (
+        this.state.compareAndSet(
+            current,
+            new State(current.generation(), seeded, current.invalidated())
+          )
+      ) {
+        break;
+      }
+    }
+    this.updates.emitNext(
+        seeded,
+        Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1))
+      );
+    return true;
+  }
+
+  /**
+   * Every snapshot that replaces the cached one, starting with the current snapshot if there is one. The stream is shared by
+   * all subscribers; slow subscribers have to apply their own backpressure strategy.
+   */
+  public Flux<DepartmentSnapshot> updates() {
+    return this.updates.asFlux();
+  }
+
+  /**
+   * The last successfully loaded snapshot, regardless of its age.
+   */
+  public Optional<DepartmentSnapshot> current() {
+    return Optional.ofNullable(this.state.get().snapshot());
+  }
+
+  /**
+   * Marks the cached snapshot as expired, e.g. because it was built from an outdated departments mapping. It is still
+   * served until a new snapshot is available, but the next lookup or refresh starts a new load; a load that is already in
+   * flight is detached and its result not cached.
+   */
+  public void invalidate() {
+    this.state.updateAndGet(current ->
+        new State(
+          current.generation() + 1,
+          current.snapshot(),
+          current.snapshot()
+        )
+      );
+    this.inFlight.set(null);
+  }
+
+  private boolean isExpired(State state) {
+    return (
+      state.snapshot() == state.invalidated() ||
+      state.snapshot().age(this.clock.instant()).compareTo(this.ttl) >= 0
+    );
+  }
+
+  private double ageInSeconds() {
+    DepartmentSnapshot current = this.state.get().snapshot();
+    return current == null
+      ? Double.NaN
+      : current.age(this.clock.instant()).toMillis() / 1000.0;
+  }
+
+  private Counter counter(MeterRegistry meterRegistry, String result) {
+    return Counter
+      .builder(METRIC_NAME)
+      .description("Snapshot cache lookups by result")
+      .tag("result", result)
+      .register(meterRegistry);
+  }
+}
@@ -0,0 +1,118 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.util.CircuitBreaker;
+import govdata.dashboard.util.CircuitBreakerOpenException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rebuilds the department snapshot in the background before it expires, so that requests are always answered from the cache.
+ * After a failed refresh the next attempt is delayed by the circuit breaker's jittered exponential backoff instead of the regular interval.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+  name = "govdata.refresh.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class DepartmentSnapshotRefresher {
+
+  private final DashboardService dashboardService;
+  private final CircuitBreaker circuitBreaker;
+  private final Duration interval;
+  private final Duration timeout;
+
+  private final Timer successes;
+  private final Timer failures;
+
+  private Disposable schedule;
+
+  public DepartmentSnapshotRefresher(
+    DashboardService dashboardService,
+    CircuitBreaker circuitBreaker,
+    @Value("${govdata.refresh.interval}") Duration interval,
+    @Value("${govdata.refresh.timeout}") Duration timeout,
+    MeterRegistry meterRegistry
+  ) {
+    this.dashboardService = dashboardService;
+    this.circuitBreaker = circuitBreaker;
+    this.interval = interval;
+    this.timeout = timeout;
+    this.successes = this.timer(meterRegistry, "success");
+    this.failures = this.timer(meterRegistry, "failure");
+  }
+
+  /**
+   * Starts refreshing as soon as the application is ready. The first run warms up the cache.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    this.schedule =
+      Mono
+        .defer(this::refreshOnce)
+        .flatMap(Mono::delay)
+        .repeat()
+        .subscribe();
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (this.schedule != null) {
+      this.schedule.dispose();
+    }
+  }
+
+  /**
+   * Runs a single refresh and records its outcome.
+   * @return The delay until the next refresh. Never errors.
+   */
+  public Mono<Duration> refreshOnce() {
+    long start = System.nanoTime();
+    return this.dashboardService.refreshDepartmentSnapshot()
+      .timeout(this.timeout)
+      .map(snapshot -> {
+        this.successes.record(Duration.ofNanos(System.nanoTime() - start));
+        log.debug("Refreshed {} departments", snapshot.departments().size());
+        return this.interval;
+      })
+      .onErrorResume(error -> {
+        Duration delay;
+        if (error instanceof CircuitBreakerOpenException open) {
+          // the circuit is open, so no request was sent: just wait for it to permit the next trial
+          delay =
+            open.getRetryAfter().isZero()
+              ? this.circuitBreaker.backoff()
+              : open.getRetryAfter();
+        } else {
+          this.failures.record(Duration.ofNanos(System.nanoTime() - start));
+          delay = this.circuitBreaker.backoff();
+        }
+        log.warn(
+          "Failed to refresh departments, retrying in {} ms: {}",
+          delay.toMillis(),
+          error.getMessage()
+        );
+        return Mono.just(delay);
+      })
+      .defaultIfEmpty(this.interval);
+  }
+
+  private Timer timer(MeterRegistry meterRegistry, String outcome) {
+    return Timer
+      .builder("govdata.refresh")
+      .description("Background refreshes of the department snapshot by outcome")
+      .tag("outcome", outcome)
+      .register(meterRegistry);
+  }
+}
@@ -0,0 +1,300 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Persists the latest department snapshot to a local file, so that a restarted instance can answer the first requests
+ * from disk instead of waiting for the CKAN API (or showing an error while it is unreachable). The snapshot is restored
+ * while the application context starts, i.e. before the web server accepts requests, and written after every successful
+ * refresh. A snapshot built from a different departments mapping is discarded.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+  name = "govdata.snapshot.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class DepartmentSnapshotStore {
+
+  // "GDS" followed by the format version; version 2 adds the per-source breakdown of the counts, version 3 the length
+  // and CRC-32C of the departments
+  private static final int MAGIC = 0x47445303;
+  private static final int MAGIC_V2 = 0x47445302;
+  private static final int MAGIC_V1 = 0x47445301;
+  // name length, count and number of sources of a department resp. name length and count of a source
+  private static final int MIN_DEPARTMENT_SIZE = 10;
+  private static final int MIN_SOURCE_SIZE = 6;
+
+  private final Path file;
+  private final DepartmentService departmentService;
+  private final DepartmentSnapshotCache snapshotCache;
+  private final Scheduler blockingScheduler;
+
+  private Disposable writes;
+
+  public DepartmentSnapshotStore(
+    @Value("${govdata.snapshot.file}") Path file,
+    DepartmentService departmentService,
+    DepartmentSnapshotCache snapshotCache,
+    Scheduler blockingScheduler
+  ) {
+    this.file = file.toAbsolutePath();
+    this.departmentService = departmentService;
+    this.snapshotCache = snapshotCache;
+    this.blockingScheduler = blockingScheduler;
+  }
+
+  /**
+   * Seeds the cache with the persisted snapshot and starts persisting every new snapshot of the cache.
+   */
+  @PostConstruct
+  public void start() {
+    DepartmentSnapshot restored = this.restore().orElse(null);
+    this.writes =
+      this.snapshotCache.updates()
+        // the restored snapshot is already on disk
+        .filter(snapshot -> snapshot != restored)
+        .onBackpressureLatest()
+        .concatMap(
+          snapshot ->
+            Mono
+              .fromRunnable(() -> this.save(snapshot))
+              .subscribeOn(this.blockingScheduler),
+          1
+        )
+        .subscribe();
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (this.writes != null) {
+      this.writes.dispose();
+    }
+  }
+
+  /**
+   * Loads the persisted snapshot into the cache if it was built from the current departments mapping.
+   * @return The restored snapshot, empty if there is none, it is unreadable or outdated, or the departments failed to load
+   */
+  public Optional<DepartmentSnapshot> restore() {
+    DepartmentIndex index = this.departmentService.getIndex();
+    if (index.size() == 0) {
+      return Optional.empty();
+    }
+    Optional<DepartmentSnapshot> restored = this.read(index.fingerprint())
+      .filter(this.snapshotCache::seed);
+    restored.ifPresent(snapshot ->
+      log.info(
+        "Restored snapshot of {} departments fetched at {} from {}",
+        snapshot.departments().size(),
+        snapshot.fetchedAt(),
+        this.file
+      )
+    );
+    return restored;
+  }
+
+  /**
+   * Writes the snapshot with the fingerprint of the mapping it was aggregated with, which may already have been replaced
+   * by a reload. Failures are logged; the previous file stays intact.
+   */
+  public void save(DepartmentSnapshot snapshot) {
+    try {
+      this.write(snapshot, snapshot.fingerprint());
+    } catch (IOException e) {
+      log.warn("Failed to persist snapshot to {}: {}", this.file, e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the persisted snapshot.
+   * @param fingerprint Fingerprint of the current departments mapping, see {@link DepartmentIndex#fingerprint()}
+   * @return The snapshot, empty if there is none, it is unreadable or it was built from another mapping
+   */
+  public Optional<DepartmentSnapshot> read(long fingerprint) {
+    try (
+      DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(Files.readAllBytes(this.file))
+      )
+    ) {
+      int magic = in.readInt();
+      if (magic != MAGIC && magic != MAGIC_V2 && magic != MAGIC_V1) {
+        log.warn("Ignoring snapshot {} with unknown format", this.file);
+        return Optional.empty();
+      }
+      if (in.readLong() != fingerprint) {
+        log.info(
+          "Discarding snapshot {}, the departments mapping changed",
+          this.file
+        );
+        return Optional.empty();
+      }
+      Instant fetchedAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+      DataInputStream departments = in;
+      if (magic == MAGIC) {
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length != in.available()) {
+          log.warn("Ignoring truncated snapshot {}", this.file);
+          return Optional.empty();
+        }
+        byte[] payload = in.readNBytes(length);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          log.warn("Ignoring snapshot {} with wrong checksum", this.file);
+          return Optional.empty();
+        }
+        departments = new DataInputStream(new ByteArrayInputStream(payload));
+      }
+      return Optional.of(
+        new DepartmentSnapshot(
+          decode(departments, magic != MAGIC_V1),
+          fetchedAt,
+          fingerprint
+        )
+      );
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable snapshot {}: {}", this.file, e.getMessage());
+      return Optional.empty();
+    } catch (
+      DateTimeException | ArithmeticException | IllegalArgumentException e
+    ) {
+      log.warn("Ignoring unreadable snapshot {}", this.file);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Decodes the departments. The counts are checked against the remaining bytes before anything is allocated, so that a
+   * corrupt snapshot of a format without checksum fails with an IOException.
+   * @param withSources Whether the departments include the per-source breakdown, i.e. the format is not version 1
+   */
+  private static List<DepartmentDto> decode(
+    DataInputStream in,
+    boolean withSources
+  ) throws IOException {
+    int size = in.readInt();
+    if (size < 0 || size > in.available() / MIN_DEPARTMENT_SIZE) {
+      throw new IOException("Invalid number of departments " + size);
+    }
+    List<DepartmentDto> departments = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      // readUTF fails with an EOFException if the length exceeds the remaining bytes
+      String name = in.readUTF();
+      int count = in.readInt();
+      Map<String, Integer> sources = new LinkedHashMap<>();
+      if (withSources) {
+        int n = in.readInt();
+        if (n < 0 || n > in.available() / MIN_SOURCE_SIZE) {
+          throw new IOException("Invalid number of sources " + n);
+        }
+        for (; n > 0; n--) {
+          sources.put(in.readUTF(), in.readInt());
+        }
+      }
+      departments.add(new DepartmentDto(name, count, sources));
+    }
+    if (in.available() > 0) {
+      throw new IOException("Trailing bytes after the departments");
+    }
+    return departments;
+  }
+
+  /**
+   * Writes the snapshot to a temporary file next to the target and moves it into place atomically, so that readers and
+   * a crash never see a partially written snapshot.
+   * @param fingerprint Fingerprint of the departments mapping the snapshot was built from
+   */
+  public void write(DepartmentSnapshot snapshot, long fingerprint)
+    throws IOException {
+    Path directory = this.file.getParent();
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(
+      directory,
+      this.file.getFileName().toString(),
+      ".tmp"
+    );
+    try {
+      try (
+        FileOutputStream fileOut = new FileOutputStream(temporary.toFile());
+        DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(fileOut)
+        )
+      ) {
+        byte[] payload = encode(snapshot.departments());
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        out.writeInt(MAGIC);
+        out.writeLong(fingerprint);
+        out.writeLong(snapshot.fetchedAt().getEpochSecond());
+        out.writeInt(snapshot.fetchedAt().getNano());
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        out.flush();
+        fileOut.getFD().sync();
+      }
+      Files.move(
+        temporary,
+        this.file,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static byte[] encode(List<DepartmentDto> departments)
+    throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(departments.size());
+      for (DepartmentDto department : departments) {
+        out.writeUTF(department.name());
+        out.writeInt(department.dataSetCount());
+        out.writeInt(department.sources().size());
+        for (Map.Entry<String, Integer> source : department
+          .sources()
+          .entrySet()) {
+          out.writeUTF(source.getKey());
+          out.writeInt(source.getValue());
+        }
+      }
+    }
+    return bytes.toByteArray();
+  }
+}
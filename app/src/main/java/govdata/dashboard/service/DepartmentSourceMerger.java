@@ -0,0 +1,76 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the department counts of several CKAN sources into one list. Departments are matched by name across the
+ * departments mappings of the sources; the total of a department is the sum over all sources and the per-source counts
+ * are kept as breakdown.
+ */
+public final class DepartmentSourceMerger {
+
+  /**
+   * Counts of one source.
+   * @param fresh Whether the counts were fetched in this run or carried over from the previous snapshot
+   */
+  public record SourceCounts(
+    String source,
+    List<DepartmentDto> departments,
+    boolean fresh
+  ) {}
+
+  private DepartmentSourceMerger() {}
+
+  /**
+   * @param sources Counts per source, in source order
+   * @return Departments sorted descending by total data set count, ties in order of first appearance
+   */
+  public static List<DepartmentDto> merge(List<SourceCounts> sources) {
+    Map<String, Map<String, Integer>> breakdowns = new LinkedHashMap<>();
+    for (SourceCounts source : sources) {
+      for (DepartmentDto department : source.departments()) {
+        breakdowns
+          .computeIfAbsent(department.name(), name -> new LinkedHashMap<>())
+          .merge(source.source(), department.dataSetCount(), Integer::sum);
+      }
+    }
+    List<DepartmentDto> departments = new ArrayList<>(breakdowns.size());
+    breakdowns.forEach((name, breakdown) ->
+      departments.add(
+        new DepartmentDto(
+          name,
+          breakdown.values().stream().mapToInt(Integer::intValue).sum(),
+          breakdown
+        )
+      )
+    );
+    // stable sort keeps the order of first appearance for ties
+    departments.sort(
+      Comparator.comparing(DepartmentDto::dataSetCount).reversed()
+    );
+    return departments;
+  }
+
+  /**
+   * Extracts the counts a source contributed to a merged snapshot.
+   * @return The departments with the count of the source, empty if the source is not part of the snapshot
+   */
+  public static List<DepartmentDto> countsOf(
+    String source,
+    List<DepartmentDto> merged
+  ) {
+    List<DepartmentDto> departments = new ArrayList<>();
+    for (DepartmentDto department : merged) {
+      Integer count = department.sources().get(source);
+      if (count != null) {
+        departments.add(new DepartmentDto(department.name(), count));
+      }
+    }
+    return departments;
+  }
+}
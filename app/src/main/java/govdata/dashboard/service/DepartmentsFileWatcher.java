@@ -0,0 +1,109 @@
+package govdata.dashboard.service;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Watches an external departments file (--departments.file=...) and reloads the departments whenever it changes.
+ * Bursts of file system events, e.g. an editor writing the file in several steps, are debounced into a single reload.
+ * Classpath resources are not watched.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+  name = "departments.watch.enabled",
+  havingValue = "true",
+  matchIfMissing = true
+)
+public class DepartmentsFileWatcher {
+
+  private final DepartmentService departmentService;
+  private final Duration debounce;
+
+  private WatchService watchService;
+  private Disposable reloads;
+
+  public DepartmentsFileWatcher(
+    DepartmentService departmentService,
+    @Value("${departments.watch.debounce}") Duration debounce
+  ) {
+    this.departmentService = departmentService;
+    this.debounce = debounce;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    Path file =
+      this.departmentService.getExternalDepartmentsFile().orElse(null);
+    if (file == null) {
+      log.debug("Departments file is not an external file, not watching it");
+      return;
+    }
+
+    this.watchService = file.getFileSystem().newWatchService();
+    // watch the directory, because editors and deployments often replace the file instead of modifying it
+    file.getParent().register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+    Sinks.Many<Path> changes = Sinks.many().unicast().onBackpressureBuffer();
+    this.reloads =
+      changes
+        .asFlux()
+        .sampleTimeout(change -> Mono.delay(this.debounce))
+        .concatMap(change ->
+          this.departmentService.reload().onErrorResume(e -> Mono.empty())
+        )
+        .subscribe();
+
+    Thread
+      .ofPlatform()
+      .daemon()
+      .name("departments-file-watcher")
+      .start(() -> this.poll(file, changes));
+    log.info("Watching departments file {} for changes", file);
+  }
+
+  @PreDestroy
+  public void stop() throws IOException {
+    if (this.watchService != null) {
+      this.watchService.close();
+    }
+    if (this.reloads != null) {
+      this.reloads.dispose();
+    }
+  }
+
+  private void poll(Path file, Sinks.Many<Path> changes) {
+    try {
+      while (true) {
+        WatchKey key = this.watchService.take();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (file.getFileName().equals(event.context())) {
+            changes.tryEmitNext(file);
+          }
+        }
+        key.reset();
+      }
+    } catch (ClosedWatchServiceException e) {
+      // stopped
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.cluster.Lease;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the cluster lease in a small text file on a shared volume: owner, term and expiry in epoch milliseconds, one per
+ * line. Every read-modify-write holds an exclusive file lock, which the file system enforces between processes resp.
+ * hosts. File locks are held per JVM, so instances within the same JVM (e.g. in tests) additionally synchronize on the
+ * path. The instances must have roughly synchronized clocks; the lease TTL has to cover their skew.
+ */
+@Slf4j
+public class FileLeaseBackend implements LeaseBackend {
+
+  private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final Clock clock;
+
+  public FileLeaseBackend(Path file) {
+    this(file, Clock.systemUTC());
+  }
+
+  public FileLeaseBackend(Path file, Clock clock) {
+    this.file = file.toAbsolutePath();
+    this.clock = clock;
+  }
+
+  @Override
+  public Optional<Lease> tryAcquire(String owner, Duration ttl)
+    throws IOException {
+    synchronized (this.monitor()) {
+      try (
+        FileChannel channel = this.open();
+        FileLock lock = channel.lock()
+      ) {
+        Instant now = this.clock.instant();
+        Lease current = this.read(channel);
+        if (
+          current != null &&
+          !current.owner().equals(owner) &&
+          current.expiresAt().isAfter(now)
+        ) {
+          return Optional.empty();
+        }
+        long term = current == null
+          ? 1
+          : current.owner().equals(owner) && current.expiresAt().isAfter(now)
+            ? current.term()
+            : current.term() + 1;
+        Lease lease = new Lease(owner, term, now.plus(ttl));
+        this.write(channel, lease);
+        return Optional.of(lease);
+      }
+    }
+  }
+
+  @Override
+  public void release(String owner) throws IOException {
+    synchronized (this.monitor()) {
+      try (
+        FileChannel channel = this.open();
+        FileLock lock = channel.lock()
+      ) {
+        Lease current = this.read(channel);
+        if (current != null && current.owner().equals(owner)) {
+          // keeps the term, so that the next holder gets a higher one
+          this.write(channel, new Lease(owner, current.term(), Instant.EPOCH));
+        }
+      }
+    }
+  }
+
+  private Object monitor() {
+    return MONITORS.computeIfAbsent(this.file, path -> new Object());
+  }
+
+  private FileChannel open() throws IOException {
+    Files.createDirectories(this.file.getParent());
+    return FileChannel.open(
+      this.file,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE
+    );
+  }
+
+  /**
+   * @return The lease in the file, null if there is none or it is unreadable, i.e. the lease is free
+   */
+  private Lease read(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+    while (
+      buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0
+    ) {
+      // reads until the end of the file
+    }
+    if (buffer.position() == 0) {
+      return null;
+    }
+    String[] lines = new String(
+      buffer.array(),
+      0,
+      buffer.position(),
+      StandardCharsets.UTF_8
+    )
+      .split("\n");
+    try {
+      return new Lease(
+        lines[0],
+        Long.parseLong(lines[1].trim()),
+        Instant.ofEpochMilli(Long.parseLong(lines[2].trim()))
+      );
+    } catch (RuntimeException e) {
+      log.warn("Ignoring unreadable lease file {}", this.file);
+      return null;
+    }
+  }
+
+  private void write(FileChannel channel, Lease lease) throws IOException {
+    byte[] content = (
+      lease.owner() +
+      "\n" +
+      lease.term() +
+      "\n" +
+      lease.expiresAt().toEpochMilli() +
+      "\n"
+    ).getBytes(StandardCharsets.UTF_8);
+    channel.truncate(0);
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, buffer.position());
+    }
+    channel.force(false);
+  }
+}
@@ -0,0 +1,229 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Refreshes the data set counts of a source by patching the counts of the previous run instead of requesting the full
+ * organization list. The previous run's organizations are kept by CKAN organization ID; a refresh only asks CKAN which
+ * organizations have data sets modified since then (one faceted package_search) and requests those of them that belong
+ * to a department, or are new, with organization_show. Only the totals of the affected departments change.
+ * Data sets and organizations deleted in the meantime and organizations renamed without modified data sets are not
+ * seen this way, so a full refresh still runs every full-interval, after the departments mapping changed and whenever
+ * the patches do not add up.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+  name = "govdata.refresh.incremental.enabled",
+  havingValue = "true"
+)
+public class IncrementalDepartmentCounts {
+
+  /**
+   * Counts of a source after the last successful run.
+   * @param since Start of the last run, modifications after it are picked up by the next run
+   * @param fullAt Start of the last full run
+   */
+  private record State(
+    DepartmentIndex index,
+    DepartmentCountAggregator aggregator,
+    Instant since,
+    Instant fullAt
+  ) {}
+
+  /**
+   * The patches of a run do not add up, e.g. a known organization no longer exists.
+   */
+  private static class InconsistentDeltaException extends RuntimeException {
+
+    InconsistentDeltaException(String message) {
+      super(message);
+    }
+  }
+
+  private final Duration fullInterval;
+  private final Duration overlap;
+  private final int parallelism;
+  private final Clock clock;
+
+  private final Counter fullRuns;
+  private final Counter deltaRuns;
+  private final Counter changedOrganizations;
+
+  private final Map<String, State> states = new ConcurrentHashMap<>();
+
+  @Autowired
+  public IncrementalDepartmentCounts(
+    @Value("${govdata.refresh.incremental.full-interval}") Duration fullInterval,
+    @Value("${govdata.refresh.incremental.overlap}") Duration overlap,
+    @Value("${govdata.refresh.incremental.parallelism}") int parallelism,
+    MeterRegistry meterRegistry
+  ) {
+    this(fullInterval, overlap, parallelism, meterRegistry, Clock.systemUTC());
+  }
+
+  public IncrementalDepartmentCounts(
+    Duration fullInterval,
+    Duration overlap,
+    int parallelism,
+    MeterRegistry meterRegistry,
+    Clock clock
+  ) {
+    this.fullInterval = fullInterval;
+    this.overlap = overlap;
+    this.parallelism = parallelism;
+    this.clock = clock;
+    this.fullRuns = this.runs(meterRegistry, "full");
+    this.deltaRuns = this.runs(meterRegistry, "delta");
+    this.changedOrganizations =
+      Counter
+        .builder("govdata.refresh.incremental.organizations")
+        .description("Organizations requested one by one because their data sets changed")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Computes the counts of a source, by patching the previous counts if possible.
+   * @param full Fetches the complete organization list into a tracking aggregator
+   * @return Counts of the source, only stored for the next run once complete
+   */
+  public Mono<DepartmentCountAggregator> refresh(
+    CKANSource source,
+    DepartmentIndex index,
+    Supplier<Mono<DepartmentCountAggregator>> full
+  ) {
+    return Mono.defer(() -> {
+      Instant started = this.clock.instant();
+      State state = this.states.get(source.name());
+      String reason = state == null
+        ? "no previous counts"
+        : state.index() != index
+          ? "departments changed"
+          : state.aggregator().untracked() > 0
+            ? "organizations without ID"
+            : !started.isBefore(state.fullAt().plus(this.fullInterval))
+              ? "full refresh due"
+              : null;
+      if (reason != null) {
+        return this.full(source, index, started, full, reason);
+      }
+      return this.delta(source, state, started)
+        .onErrorResume(
+          InconsistentDeltaException.class,
+          e -> this.full(source, index, started, full, e.getMessage())
+        );
+    });
+  }
+
+  private Mono<DepartmentCountAggregator> full(
+    CKANSource source,
+    DepartmentIndex index,
+    Instant started,
+    Supplier<Mono<DepartmentCountAggregator>> full,
+    String reason
+  ) {
+    log.debug("Full refresh of {}: {}", source.name(), reason);
+    return full
+      .get()
+      .doOnNext(aggregator -> {
+        this.states.put(
+            source.name(),
+            new State(index, aggregator, started, started)
+          );
+        this.fullRuns.increment();
+      });
+  }
+
+  private Mono<DepartmentCountAggregator> delta(
+    CKANSource source,
+    State state,
+    Instant started
+  ) {
+    CKANClient ckanClient = source.ckanClient();
+    DepartmentCountAggregator previous = state.aggregator();
+    return ckanClient
+      .searchModifiedOrganizations(state.since().minus(this.overlap))
+      .flatMap(modified -> {
+        // modified organizations that do not belong to a department do not change any count
+        List<String> ids = modified
+          .keySet()
+          .stream()
+          .filter(id -> previous.isMatched(id) || !previous.contains(id))
+          .toList();
+        return Flux
+          .fromIterable(ids)
+          .flatMap(
+            id ->
+              ckanClient
+                .showOrganization(id)
+                .switchIfEmpty(
+                  Mono.error(
+                    () ->
+                      new InconsistentDeltaException(
+                        "organization " + id + " no longer exists"
+                      )
+                  )
+                ),
+            Math.max(1, this.parallelism)
+          )
+          .collectList()
+          .map(organizations -> this.patch(source, state, organizations, started));
+      });
+  }
+
+  private DepartmentCountAggregator patch(
+    CKANSource source,
+    State state,
+    List<CKANOrganizationEntity> organizations,
+    Instant started
+  ) {
+    DepartmentCountAggregator aggregator = state.aggregator().copy();
+    for (CKANOrganizationEntity organization : organizations) {
+      if (organization.id() == null || organization.packageCount() == null) {
+        throw new InconsistentDeltaException(
+          "organization " + organization.name() + " without ID or package count"
+        );
+      }
+      aggregator.update(organization);
+    }
+    if (aggregator.hasNegativeCount()) {
+      throw new InconsistentDeltaException("negative department count");
+    }
+    this.states.put(
+        source.name(),
+        new State(state.index(), aggregator, started, state.fullAt())
+      );
+    this.deltaRuns.increment();
+    this.changedOrganizations.increment(organizations.size());
+    log.debug(
+      "Incremental refresh of {}: {} changed organizations",
+      source.name(),
+      organizations.size()
+    );
+    return aggregator;
+  }
+
+  private Counter runs(MeterRegistry meterRegistry, String mode) {
+    return Counter
+      .builder("govdata.refresh.incremental.runs")
+      .description("Refreshes of the data set counts from the full organization list resp. from changes only")
+      .tag("mode", mode)
+      .register(meterRegistry);
+  }
+}
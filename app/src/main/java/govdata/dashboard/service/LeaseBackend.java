@@ -0,0 +1,27 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.cluster.Lease;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Shared store of the cluster lease that elects the instance refreshing from CKAN, see {@link ClusterCoordinator}.
+ * The default stores the lease in a file on a shared volume ({@link FileLeaseBackend}); another store, e.g. a key-value
+ * store with expiring keys, is used by defining a bean of this type. Acquiring the lease must be atomic across all
+ * instances of the cluster.
+ */
+public interface LeaseBackend {
+  /**
+   * Acquires the lease if it is free or expired, or renews it if the owner holds it already.
+   * @param owner Node ID of the calling instance
+   * @param ttl Time until the lease expires unless it is renewed
+   * @return The lease now held by the owner, empty if another owner holds an unexpired lease
+   */
+  Optional<Lease> tryAcquire(String owner, Duration ttl) throws IOException;
+
+  /**
+   * Gives up the lease if the owner holds it, so that another instance can take over right away.
+   */
+  void release(String owner) throws IOException;
+}
@@ -0,0 +1,183 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.department.DepartmentsReloadedEvent;
+import govdata.dashboard.model.department.OrganizationMatchDto;
+import govdata.dashboard.model.department.OrganizationMatchReport;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Reports the CKAN organizations that the departments files do not name verbatim, so that operators can add aliases for
+ * approximate matches and spot organizations that are not counted at all. The organizations are requested from every
+ * source on demand; the counts of the dashboard are not affected. A report is cached for the time to live of the
+ * snapshot cache (govdata.cache.ttl) and until the departments are reloaded, and concurrent callers share a single
+ * request per source, so that polling the report does not multiply the load on the CKAN API.
+ */
+@Service
+public class OrganizationMatchReportService {
+
+  private static final Comparator<OrganizationMatchDto> BY_PACKAGE_COUNT =
+    Comparator.comparing(
+      OrganizationMatchDto::packageCount,
+      Comparator.nullsFirst(Comparator.<Integer>naturalOrder())
+    )
+      .reversed();
+
+  /**
+   * A report and when it was built.
+   */
+  private record CachedReport(OrganizationMatchReport report, Instant builtAt) {}
+
+  private final List<CKANSource> sources;
+  private final Duration ttl;
+  private final Clock clock;
+
+  private final AtomicReference<CachedReport> cached = new AtomicReference<>();
+  private final AtomicReference<Mono<OrganizationMatchReport>> inFlight =
+    new AtomicReference<>();
+
+  @Autowired
+  public OrganizationMatchReportService(
+    List<CKANSource> sources,
+    @Value("${govdata.cache.ttl}") Duration ttl
+  ) {
+    this(sources, ttl, Clock.systemUTC());
+  }
+
+  public OrganizationMatchReportService(
+    List<CKANSource> sources,
+    Duration ttl,
+    Clock clock
+  ) {
+    this.sources = List.copyOf(sources);
+    this.ttl = ttl;
+    this.clock = clock;
+  }
+
+  /**
+   * @return Unmatched and approximately matched organizations of all sources
+   */
+  public Mono<OrganizationMatchReport> report() {
+    return Mono.defer(() -> {
+      CachedReport current = this.cached.get();
+      if (
+        current != null &&
+        current.builtAt().plus(this.ttl).isAfter(this.clock.instant())
+      ) {
+        return Mono.just(current.report());
+      }
+      return this.load();
+    });
+  }
+
+  /**
+   * Drops the cached report, whose matches were computed with the previous departments mapping. A build that is in
+   * flight is detached and its result not cached.
+   */
+  @EventListener
+  public void onDepartmentsReloaded(DepartmentsReloadedEvent event) {
+    this.inFlight.set(null);
+    this.cached.set(null);
+  }
+
+  /**
+   * Builds a new report unless a build is already in flight. The build runs to completion even if the caller cancels.
+   */
+  private Mono<OrganizationMatchReport> load() {
+    while (true) {
+      Mono<OrganizationMatchReport> pending = this.inFlight.get();
+      if (pending != null) {
+        return pending;
+      }
+      Sinks.One<OrganizationMatchReport> result = Sinks.one();
+      Mono<OrganizationMatchReport> shared = result.asMono();
+      if (this.inFlight.compareAndSet(null, shared)) {
+        this.build()
+          .subscribe(
+            report -> {
+              if (this.inFlight.compareAndSet(shared, null)) {
+                this.cached.set(
+                    new CachedReport(report, this.clock.instant())
+                  );
+              }
+              result.tryEmitValue(report);
+            },
+            error -> {
+              this.inFlight.compareAndSet(shared, null);
+              result.tryEmitError(error);
+            }
+          );
+        return shared;
+      }
+    }
+  }
+
+  private Mono<OrganizationMatchReport> build() {
+    return Flux
+      .fromIterable(this.sources)
+      .concatMap(source -> {
+        DepartmentIndex index = source.departmentService().getIndex();
+        return source
+          .ckanClient()
+          .fetchOrganizations(name ->
+            index.match(name).kind() != DepartmentIndex.MatchKind.EXACT
+          )
+          .map(organization -> this.toDto(source, index, organization));
+      })
+      .collectList()
+      .map(organizations -> {
+        List<OrganizationMatchDto> unmatched = new ArrayList<>();
+        List<OrganizationMatchDto> approximate = new ArrayList<>();
+        for (OrganizationMatchDto organization : organizations) {
+          (organization.match() == null ? unmatched : approximate).add(
+              organization
+            );
+        }
+        unmatched.sort(BY_PACKAGE_COUNT);
+        approximate.sort(BY_PACKAGE_COUNT);
+        return new OrganizationMatchReport(unmatched, approximate);
+      });
+  }
+
+  private OrganizationMatchDto toDto(
+    CKANSource source,
+    DepartmentIndex index,
+    CKANOrganizationEntity organization
+  ) {
+    DepartmentIndex.Match match = index.match(organization.name());
+    if (match.departmentId() == DepartmentIndex.UNKNOWN) {
+      return new OrganizationMatchDto(
+        source.name(),
+        organization.name(),
+        organization.packageCount(),
+        null,
+        null,
+        null
+      );
+    }
+    return new OrganizationMatchDto(
+      source.name(),
+      organization.name(),
+      organization.packageCount(),
+      index.departmentName(match.departmentId()),
+      match.kind().name().toLowerCase(Locale.ROOT),
+      match.kind() == DepartmentIndex.MatchKind.FUZZY
+        ? match.similarity()
+        : null
+    );
+  }
+}
@@ -0,0 +1,200 @@
+package govdata.dashboard.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves organization names that are not known verbatim: first by a normalized key (Unicode NFKC, case folding,
+ * umlauts transliterated, punctuation and repeated whitespace removed), then, if enabled, by the trigram similarity
+ * (Dice coefficient) of the normalized name to every known key. Keys and trigram postings are built once per departments
+ * mapping; results are memoized, so that the organizations of later refreshes resolve with a single hash lookup.
+ * Thread-safe.
+ */
+final class OrganizationNameMatcher {
+
+  // a key shared by organizations of different departments
+  private static final int AMBIGUOUS = -2;
+
+  // bounds the memory of the memo if CKAN returns ever new names
+  private static final int MAX_MEMOIZED = 100_000;
+
+  private final DepartmentIndex.Fuzzy fuzzy;
+  private final Map<String, Integer> keyToDepartmentId;
+  private final String[] keys;
+  private final int[] keyDepartmentIds;
+  private final int[] keyTrigramCounts;
+  private final Map<String, int[]> trigramToKeys;
+  private final Map<String, DepartmentIndex.Match> memo =
+    new ConcurrentHashMap<>();
+
+  /**
+   * @param organizationToDepartmentId Every known organization name and alias with its department ID
+   */
+  OrganizationNameMatcher(
+    Map<String, Integer> organizationToDepartmentId,
+    DepartmentIndex.Fuzzy fuzzy
+  ) {
+    this.fuzzy = fuzzy;
+    Map<String, Integer> ids = new HashMap<>();
+    organizationToDepartmentId.forEach((organization, id) ->
+      ids.merge(
+        normalize(organization),
+        id,
+        (previous, next) -> previous.equals(next) ? previous : AMBIGUOUS
+      )
+    );
+    this.keyToDepartmentId = Map.copyOf(ids);
+    this.keys = ids.keySet().toArray(String[]::new);
+    this.keyDepartmentIds = new int[this.keys.length];
+    this.keyTrigramCounts = new int[this.keys.length];
+    Map<String, List<Integer>> postings = new HashMap<>();
+    for (int k = 0; k < this.keys.length; k++) {
+      this.keyDepartmentIds[k] = ids.get(this.keys[k]);
+      Set<String> trigrams = trigrams(this.keys[k]);
+      this.keyTrigramCounts[k] = trigrams.size();
+      for (String trigram : trigrams) {
+        postings.computeIfAbsent(trigram, t -> new ArrayList<>()).add(k);
+      }
+    }
+    Map<String, int[]> trigramToKeys = new HashMap<>(postings.size() * 2);
+    postings.forEach((trigram, keys) ->
+      trigramToKeys.put(
+        trigram,
+        keys.stream().mapToInt(Integer::intValue).toArray()
+      )
+    );
+    this.trigramToKeys = trigramToKeys;
+  }
+
+  /**
+   * Resolves a name that has no exact match.
+   */
+  DepartmentIndex.Match match(String organization) {
+    DepartmentIndex.Match match = this.memo.get(organization);
+    if (match == null) {
+      match = this.resolve(organization);
+      if (this.memo.size() >= MAX_MEMOIZED) {
+        this.memo.clear();
+      }
+      this.memo.put(organization, match);
+    }
+    return match;
+  }
+
+  private DepartmentIndex.Match resolve(String organization) {
+    String key = normalize(organization);
+    Integer id = this.keyToDepartmentId.get(key);
+    if (id != null) {
+      return id == AMBIGUOUS
+        ? DepartmentIndex.Match.unmatched(organization)
+        : new DepartmentIndex.Match(
+          organization,
+          id,
+          DepartmentIndex.MatchKind.NORMALIZED,
+          1.0
+        );
+    }
+    return this.fuzzy.enabled()
+      ? this.similar(organization, key)
+      : DepartmentIndex.Match.unmatched(organization);
+  }
+
+  /**
+   * Finds the key with the highest trigram similarity. Only keys that share a trigram with the name are scored; a tie
+   * between keys of different departments is no match.
+   */
+  private DepartmentIndex.Match similar(String organization, String key) {
+    Set<String> trigrams = trigrams(key);
+    if (trigrams.isEmpty()) {
+      return DepartmentIndex.Match.unmatched(organization);
+    }
+    int[] shared = new int[this.keys.length];
+    for (String trigram : trigrams) {
+      int[] keys = this.trigramToKeys.get(trigram);
+      if (keys != null) {
+        for (int k : keys) {
+          shared[k]++;
+        }
+      }
+    }
+    double best = 0;
+    int bestId = DepartmentIndex.UNKNOWN;
+    for (int k = 0; k < shared.length; k++) {
+      if (shared[k] == 0) {
+        continue;
+      }
+      double similarity =
+        2.0 * shared[k] / (trigrams.size() + this.keyTrigramCounts[k]);
+      if (similarity > best) {
+        best = similarity;
+        bestId = this.keyDepartmentIds[k];
+      } else if (similarity == best && bestId != this.keyDepartmentIds[k]) {
+        bestId = AMBIGUOUS;
+      }
+    }
+    if (best < this.fuzzy.threshold() || bestId < 0) {
+      return DepartmentIndex.Match.unmatched(organization);
+    }
+    return new DepartmentIndex.Match(
+      organization,
+      bestId,
+      DepartmentIndex.MatchKind.FUZZY,
+      best
+    );
+  }
+
+  /**
+   * Normalizes a name for matching, e.g. "Bundesanstalt für Arbeitsschutz " and "BUNDESANSTALT FUER ARBEITSSCHUTZ"
+   * both become "bundesanstalt fuer arbeitsschutz".
+   */
+  static String normalize(String name) {
+    // upper-casing first folds ß to SS
+    String folded = Normalizer
+      .normalize(name, Normalizer.Form.NFKC)
+      .toUpperCase(Locale.ROOT)
+      .toLowerCase(Locale.ROOT);
+    StringBuilder key = new StringBuilder(folded.length() + 8);
+    boolean space = false;
+    for (int i = 0; i < folded.length(); ) {
+      int c = folded.codePointAt(i);
+      i += Character.charCount(c);
+      String letters = switch (c) {
+        case 'ä' -> "ae";
+        case 'ö' -> "oe";
+        case 'ü' -> "ue";
+        default -> Character.isLetterOrDigit(c)
+          ? Character.toString(c)
+          : null;
+      };
+      if (letters == null) {
+        space = key.length() > 0;
+        continue;
+      }
+      if (space) {
+        key.append(' ');
+        space = false;
+      }
+      key.append(letters);
+    }
+    return key.toString();
+  }
+
+  private static Set<String> trigrams(String key) {
+    if (key.isEmpty()) {
+      return Set.of();
+    }
+    String padded = "  " + key + " ";
+    Set<String> trigrams = new HashSet<>(padded.length());
+    for (int i = 0; i + 3 <= padded.length(); i++) {
+      trigrams.add(padded.substring(i, i + 3));
+    }
+    return trigrams;
+  }
+}
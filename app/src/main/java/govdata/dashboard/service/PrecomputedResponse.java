@@ -0,0 +1,267 @@
+package govdata.dashboard.service;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.reactive.result.view.View;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Response body that is serialized and compressed once and then served to every request as is. The body is kept in
+ * direct memory in identity, gzip and, where the native Brotli encoder is available, Brotli encoding; a request gets the
+ * best encoding its Accept-Encoding header allows, wrapped into a buffer without copying. Every encoding has its own
+ * strong ETag, so that conditional requests are answered with 304 Not Modified.
+ */
+@Slf4j
+public final class PrecomputedResponse {
+
+  private static final boolean BROTLI_AVAILABLE = Brotli4jLoader.isAvailable();
+
+  static {
+    if (!BROTLI_AVAILABLE) {
+      log.info(
+        "Brotli encoder not available on this platform, precomputed responses are only gzip-compressed"
+      );
+    }
+  }
+
+  /**
+   * The body in one content encoding.
+   * @param encoding Value of the Content-Encoding header, null for identity
+   */
+  private record Variant(String encoding, ByteBuffer body, String etag) {}
+
+  private final MediaType contentType;
+  private final Instant lastModified;
+  private final Variant identity;
+  private final Variant gzip;
+  private final Variant brotli;
+
+  private PrecomputedResponse(
+    MediaType contentType,
+    Instant lastModified,
+    Variant identity,
+    Variant gzip,
+    Variant brotli
+  ) {
+    this.contentType = contentType;
+    this.lastModified = lastModified;
+    this.identity = identity;
+    this.gzip = gzip;
+    this.brotli = brotli;
+  }
+
+  /**
+   * Compresses the body with the highest compression levels, the cost is paid once per snapshot.
+   * @param lastModified Last-Modified of the response, i.e. the fetch time of the underlying data
+   */
+  public static PrecomputedResponse of(
+    byte[] body,
+    MediaType contentType,
+    Instant lastModified
+  ) {
+    String hash = hash(body);
+    return new PrecomputedResponse(
+      contentType,
+      lastModified,
+      new Variant(null, direct(body), "\"" + hash + "\""),
+      new Variant("gzip", direct(gzip(body)), "\"" + hash + "-gz\""),
+      BROTLI_AVAILABLE
+        ? new Variant("br", direct(brotli(body)), "\"" + hash + "-br\"")
+        : null
+    );
+  }
+
+  /**
+   * Creates the response entity for a controller method. Spring answers it with 304 if the request's If-None-Match or
+   * If-Modified-Since matches.
+   * @param headers Additional response headers
+   */
+  public ResponseEntity<DataBuffer> toResponseEntity(
+    ServerWebExchange exchange,
+    Consumer<HttpHeaders> headers
+  ) {
+    Variant variant = this.select(exchange);
+    return ResponseEntity
+      .ok()
+      .headers(responseHeaders -> this.setHeaders(responseHeaders, variant))
+      .headers(headers)
+      .body(this.wrap(exchange.getResponse(), variant));
+  }
+
+  /**
+   * Creates a view that writes the response, for controllers that otherwise render templates.
+   */
+  public View toView() {
+    return new View() {
+      @Override
+      public List<MediaType> getSupportedMediaTypes() {
+        return List.of(PrecomputedResponse.this.contentType);
+      }
+
+      @Override
+      public Mono<Void> render(
+        Map<String, ?> model,
+        MediaType contentType,
+        ServerWebExchange exchange
+      ) {
+        return PrecomputedResponse.this.write(exchange);
+      }
+    };
+  }
+
+  /**
+   * Writes the response directly, e.g. from a web filter; answers 304 if the request's If-None-Match or
+   * If-Modified-Since matches.
+   */
+  public Mono<Void> write(ServerWebExchange exchange) {
+    Variant variant = this.select(exchange);
+    ServerHttpResponse response = exchange.getResponse();
+    this.setHeaders(response.getHeaders(), variant);
+    if (exchange.checkNotModified(variant.etag(), this.lastModified)) {
+      return response.setComplete();
+    }
+    response.getHeaders().setContentLength(variant.body().remaining());
+    return response.writeWith(Mono.just(this.wrap(response, variant)));
+  }
+
+  private void setHeaders(HttpHeaders headers, Variant variant) {
+    headers.setContentType(this.contentType);
+    headers.setETag(variant.etag());
+    headers.setLastModified(this.lastModified);
+    headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+    if (variant.encoding() != null) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, variant.encoding());
+    }
+  }
+
+  private DataBuffer wrap(ServerHttpResponse response, Variant variant) {
+    // every request reads its own view of the shared bytes
+    return response.bufferFactory().wrap(variant.body().duplicate());
+  }
+
+  /**
+   * Picks Brotli over gzip over identity, as far as the Accept-Encoding header of the request allows.
+   */
+  private Variant select(ServerWebExchange exchange) {
+    List<String> acceptEncoding = exchange
+      .getRequest()
+      .getHeaders()
+      .getOrEmpty(HttpHeaders.ACCEPT_ENCODING);
+    if (this.brotli != null && accepts(acceptEncoding, "br")) {
+      return this.brotli;
+    }
+    if (accepts(acceptEncoding, "gzip")) {
+      return this.gzip;
+    }
+    return this.identity;
+  }
+
+  /**
+   * Checks if the coding is listed without q=0. Only if it is not listed at all, * decides, so that e.g. "gzip;q=0, *"
+   * rejects gzip (RFC 9110, section 12.5.3).
+   */
+  private static boolean accepts(List<String> acceptEncoding, String coding) {
+    Boolean wildcard = null;
+    for (String header : acceptEncoding) {
+      for (String element : header.split(",")) {
+        String[] parts = element.split(";");
+        String name = parts[0].trim().toLowerCase(Locale.ROOT);
+        if (!name.equals(coding) && !name.equals("*")) {
+          continue;
+        }
+        boolean rejected = false;
+        for (int i = 1; i < parts.length; i++) {
+          String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+          if (parameter.startsWith("q=")) {
+            rejected = parameter.substring(2).trim().matches("0(\\.0*)?");
+          }
+        }
+        if (name.equals(coding)) {
+          return !rejected;
+        }
+        wildcard = !rejected;
+      }
+    }
+    return Boolean.TRUE.equals(wildcard);
+  }
+
+  public Instant lastModified() {
+    return this.lastModified;
+  }
+
+  /**
+   * Number of bytes kept for all encodings.
+   */
+  public int size() {
+    return (
+      this.identity.body().capacity() +
+      this.gzip.body().capacity() +
+      (this.brotli != null ? this.brotli.body().capacity() : 0)
+    );
+  }
+
+  private static ByteBuffer direct(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static String hash(byte[] body) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+      return Base64
+        .getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(Arrays.copyOf(digest, 16));
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] gzip(byte[] body) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+    try (
+      GZIPOutputStream gzip = new GZIPOutputStream(out) {
+        {
+          this.def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+      }
+    ) {
+      gzip.write(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] brotli(byte[] body) {
+    try {
+      return Encoder.compress(body, new Encoder.Parameters().setQuality(11));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+package govdata.dashboard.service;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Department snapshot published by the leader of a cluster to a shared volume, read by the followers. The file starts with
+ * a fixed-size header (magic, publication version, fingerprint of the departments mapping, fetch time, payload length
+ * and CRC-32C of the payload), followed by the departments. It is written to a temporary file and moved into place
+ * atomically, so a reader always sees a complete publication. Readers read the header on every poll and only memory-map,
+ * verify and decode the payload if the version in it changed; otherwise the previously decoded publication is returned as is.
+ */
+@Slf4j
+public class SharedSnapshotFile {
+
+  // "GDC" followed by the format version
+  private static final int MAGIC = 0x47444301;
+  private static final int HEADER_SIZE = 40;
+
+  /**
+   * A decoded publication.
+   * @param version Increases with every publication, see {@link ClusterCoordinator}
+   * @param fingerprint Fingerprint of the departments mapping the snapshot was built from
+   */
+  public record Publication(
+    long version,
+    long fingerprint,
+    DepartmentSnapshot snapshot
+  ) {}
+
+  private final Path file;
+
+  private volatile Publication last;
+
+  public SharedSnapshotFile(Path file) {
+    this.file = file.toAbsolutePath();
+  }
+
+  public Path getFile() {
+    return this.file;
+  }
+
+  /**
+   * Publishes the snapshot, replacing the previous publication atomically.
+   */
+  public void write(DepartmentSnapshot snapshot, long version, long fingerprint)
+    throws IOException {
+    ByteBuffer payload = encode(snapshot.departments());
+    CRC32C crc = new CRC32C();
+    crc.update(payload.duplicate());
+    ByteBuffer header = ByteBuffer
+      .allocate(HEADER_SIZE)
+      .putInt(MAGIC)
+      .putLong(version)
+      .putLong(fingerprint)
+      .putLong(snapshot.fetchedAt().getEpochSecond())
+      .putInt(snapshot.fetchedAt().getNano())
+      .putInt(payload.remaining())
+      .putInt((int) crc.getValue())
+      .flip();
+
+    Path directory = this.file.getParent();
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(
+      directory,
+      this.file.getFileName().toString(),
+      ".tmp"
+    );
+    try {
+      try (
+        FileChannel channel = FileChannel.open(
+          temporary,
+          StandardOpenOption.WRITE
+        )
+      ) {
+        ByteBuffer[] buffers = { header, payload };
+        while (payload.hasRemaining()) {
+          channel.write(buffers);
+        }
+        channel.force(true);
+      }
+      Files.move(
+        temporary,
+        this.file,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Reads the current publication. Only the header is read as long as the version is unchanged; the payload of a new
+   * version is memory-mapped, verified and decoded once.
+   * @return The publication, empty if nothing has been published yet or the file is corrupt
+   */
+  public Optional<Publication> read() throws IOException {
+    try (
+      FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)
+    ) {
+      // the channel keeps reading the publication it was opened on, even if the file is replaced meanwhile
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {}
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+        log.warn("Ignoring shared snapshot {} with unknown format", this.file);
+        return Optional.empty();
+      }
+      long version = header.getLong(4);
+      Publication previous = this.last;
+      if (previous != null && previous.version() == version) {
+        return Optional.of(previous);
+      }
+      long fingerprint = header.getLong(12);
+      Instant fetchedAt = Instant.ofEpochSecond(
+        header.getLong(20),
+        header.getInt(28)
+      );
+      int length = header.getInt(32);
+      int checksum = header.getInt(36);
+      if (length != channel.size() - HEADER_SIZE) {
+        log.warn("Ignoring truncated shared snapshot {}", this.file);
+        return Optional.empty();
+      }
+      MappedByteBuffer payload = channel.map(
+        FileChannel.MapMode.READ_ONLY,
+        HEADER_SIZE,
+        length
+      );
+      CRC32C crc = new CRC32C();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != checksum) {
+        log.warn("Ignoring shared snapshot {} with wrong checksum", this.file);
+        return Optional.empty();
+      }
+      Publication publication = new Publication(
+        version,
+        fingerprint,
+        new DepartmentSnapshot(decode(payload), fetchedAt, fingerprint)
+      );
+      this.last = publication;
+      return Optional.of(publication);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (
+      BufferUnderflowException
+      | IllegalArgumentException
+      | NegativeArraySizeException e
+    ) {
+      log.warn("Ignoring unreadable shared snapshot {}", this.file);
+      return Optional.empty();
+    }
+  }
+
+  private static ByteBuffer encode(List<DepartmentDto> departments) {
+    List<byte[]> names = new ArrayList<>();
+    int size = Integer.BYTES;
+    for (DepartmentDto department : departments) {
+      size += 3 * Integer.BYTES + utf8(department.name(), names);
+      for (String source : department.sources().keySet()) {
+        size += 2 * Integer.BYTES + utf8(source, names);
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size).putInt(departments.size());
+    int name = 0;
+    for (DepartmentDto department : departments) {
+      byte[] bytes = names.get(name++);
+      buffer.putInt(bytes.length).put(bytes);
+      buffer.putInt(department.dataSetCount());
+      buffer.putInt(department.sources().size());
+      for (Map.Entry<String, Integer> source : department
+        .sources()
+        .entrySet()) {
+        bytes = names.get(name++);
+        buffer.putInt(bytes.length).put(bytes).putInt(source.getValue());
+      }
+    }
+    return buffer.flip();
+  }
+
+  /**
+   * Encodes the string once for sizing and writing.
+   * @return The number of encoded bytes
+   */
+  private static int utf8(String value, List<byte[]> encoded) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    encoded.add(bytes);
+    return bytes.length;
+  }
+
+  private static List<DepartmentDto> decode(ByteBuffer payload) {
+    int size = payload.getInt();
+    List<DepartmentDto> departments = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String name = string(payload);
+      int count = payload.getInt();
+      Map<String, Integer> sources = new LinkedHashMap<>();
+      for (int n = payload.getInt(); n > 0; n--) {
+        sources.put(string(payload), payload.getInt());
+      }
+      departments.add(new DepartmentDto(name, count, sources));
+    }
+    return departments;
+  }
+
+  private static String string(ByteBuffer payload) {
+    byte[] bytes = new byte[payload.getInt()];
+    payload.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
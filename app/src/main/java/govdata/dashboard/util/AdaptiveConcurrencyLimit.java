@@ -0,0 +1,142 @@
+package govdata.dashboard.util;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts to the observed latency (additive increase, multiplicative decrease, AIMD).
+ * A request is admitted while fewer requests than the limit are in flight. Each completed request is a sample: if it took
+ * longer than the latency threshold or failed, the limit is multiplied by the backoff ratio; otherwise, if the limit was
+ * actually in use (at least half of it in flight when the request was admitted), it grows by one. The limit stays
+ * between the minimum and maximum limit. The limit is decreased at most once per round trip: slow requests that were
+ * admitted before the last decrease saw the same overload, so a burst of them backs off once instead of once each.
+ */
+public class AdaptiveConcurrencyLimit {
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+  private final double backoffRatio;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private volatile int limit;
+
+  // incremented on every decrease, requests admitted before it do not decrease the limit again
+  private volatile long decreases;
+
+  public AdaptiveConcurrencyLimit(
+    String name,
+    int initialLimit,
+    int minLimit,
+    int maxLimit,
+    Duration latencyThreshold,
+    double backoffRatio
+  ) {
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException(
+        "Invalid limits of " + name + ": min " + minLimit + ", max " + maxLimit
+      );
+    }
+    if (backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException(
+        "Backoff ratio of " + name + " must be between 0 and 1: " + backoffRatio
+      );
+    }
+    this.name = name;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.backoffRatio = backoffRatio;
+    this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+  }
+
+  /**
+   * Admits a request if the limit permits it.
+   * @return The permit to release once the request completes, empty if the limit is reached
+   */
+  public Optional<Permit> tryAcquire() {
+    while (true) {
+      int current = this.inFlight.get();
+      if (current >= this.limit) {
+        return Optional.empty();
+      }
+      if (this.inFlight.compareAndSet(current, current + 1)) {
+        return Optional.of(new Permit(current + 1, this.decreases));
+      }
+    }
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public int getLimit() {
+    return this.limit;
+  }
+
+  public int getInFlight() {
+    return this.inFlight.get();
+  }
+
+  private synchronized void onSample(
+    long latencyNanos,
+    boolean failed,
+    int inFlight,
+    long decreases
+  ) {
+    if (failed || latencyNanos > this.latencyThresholdNanos) {
+      if (decreases == this.decreases) {
+        this.limit =
+          Math.max(this.minLimit, (int) (this.limit * this.backoffRatio));
+        this.decreases++;
+      }
+    } else if (inFlight * 2 >= this.limit) {
+      this.limit = Math.min(this.maxLimit, this.limit + 1);
+    }
+  }
+
+  /**
+   * An admitted request. Releasing it more than once has no effect.
+   */
+  public final class Permit {
+
+    private final int inFlight;
+    private final long decreases;
+    private final long start = System.nanoTime();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(int inFlight, long decreases) {
+      this.inFlight = inFlight;
+      this.decreases = decreases;
+    }
+
+    /**
+     * Releases the permit and adapts the limit to the latency of the request.
+     * @param failed Whether the request failed in a way that indicates overload, e.g. with a server error
+     */
+    public void release(boolean failed) {
+      if (this.released.compareAndSet(false, true)) {
+        AdaptiveConcurrencyLimit.this.inFlight.decrementAndGet();
+        AdaptiveConcurrencyLimit.this.onSample(
+            System.nanoTime() - this.start,
+            failed,
+            this.inFlight,
+            this.decreases
+          );
+      }
+    }
+
+    /**
+     * Releases the permit without a sample, e.g. when the client cancelled the request.
+     */
+    public void ignore() {
+      if (this.released.compareAndSet(false, true)) {
+        AdaptiveConcurrencyLimit.this.inFlight.decrementAndGet();
+      }
+    }
+  }
+}
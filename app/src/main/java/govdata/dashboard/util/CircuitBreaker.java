@@ -0,0 +1,178 @@
+package govdata.dashboard.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Minimal circuit breaker guarding calls to an unreliable upstream.
+ * After a number of consecutive failures the circuit opens and calls fail fast. Once the backoff has elapsed a single trial
+ * call is let through (half-open); its outcome closes the circuit again or reopens it with a longer backoff.
+ * Backoff grows exponentially with the number of consecutive failures and is randomized ("equal jitter") so that several
+ * instances do not retry in lockstep.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+  }
+
+  private final String name;
+  private final int failureThreshold;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+  private final Clock clock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private Instant openUntil = Instant.MIN;
+  private boolean trialInFlight;
+
+  public CircuitBreaker(
+    String name,
+    int failureThreshold,
+    Duration initialBackoff,
+    Duration maxBackoff
+  ) {
+    this(name, failureThreshold, initialBackoff, maxBackoff, Clock.systemUTC());
+  }
+
+  public CircuitBreaker(
+    String name,
+    int failureThreshold,
+    Duration initialBackoff,
+    Duration maxBackoff,
+    Clock clock
+  ) {
+    this.name = name;
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.initialBackoff = initialBackoff;
+    this.maxBackoff = maxBackoff;
+    this.clock = clock;
+  }
+
+  /**
+   * Subscribes to the given call only if the circuit permits it, otherwise fails fast with a {@link CircuitBreakerOpenException}.
+   * @param <T> Result type
+   * @param call The guarded upstream call
+   */
+  public <T> Mono<T> protect(Mono<T> call) {
+    return Mono.defer(() -> {
+      if (!this.tryAcquire()) {
+        return Mono.error(
+          new CircuitBreakerOpenException(this.name, this.remainingOpenTime())
+        );
+      }
+      return call
+        .doOnSuccess(result -> this.onSuccess())
+        .doOnError(error -> this.onFailure())
+        .doOnCancel(this::onCancel);
+    });
+  }
+
+  /**
+   * Streaming variant of {@link #protect(Mono)}: the call counts as successful once the Flux completes.
+   * @param <T> Element type
+   * @param call The guarded upstream call
+   */
+  public <T> Flux<T> protect(Flux<T> call) {
+    return Flux.defer(() -> {
+      if (!this.tryAcquire()) {
+        return Flux.error(
+          new CircuitBreakerOpenException(this.name, this.remainingOpenTime())
+        );
+      }
+      return call
+        .doOnComplete(this::onSuccess)
+        .doOnError(error -> this.onFailure())
+        .doOnCancel(this::onCancel);
+    });
+  }
+
+  public synchronized State getState() {
+    return this.state;
+  }
+
+  public synchronized int getConsecutiveFailures() {
+    return this.consecutiveFailures;
+  }
+
+  /**
+   * Time until the next call is let through, zero if the circuit is not open.
+   */
+  public synchronized Duration remainingOpenTime() {
+    if (this.state != State.OPEN) {
+      return Duration.ZERO;
+    }
+    Duration remaining = Duration.between(this.clock.instant(), this.openUntil);
+    return remaining.isNegative() ? Duration.ZERO : remaining;
+  }
+
+  /**
+   * Jittered exponential backoff for the current number of consecutive failures: a random duration between half and the full
+   * exponential delay, capped at the maximum backoff.
+   */
+  public synchronized Duration backoff() {
+    int exponent = Math.min(
+      20,
+      Math.max(0, this.consecutiveFailures - this.failureThreshold)
+    );
+    long delay = Math.min(
+      this.maxBackoff.toMillis(),
+      this.initialBackoff.toMillis() << exponent
+    );
+    long half = delay / 2;
+    return Duration.ofMillis(
+      half + ThreadLocalRandom.current().nextLong(delay - half + 1)
+    );
+  }
+
+  private synchronized boolean tryAcquire() {
+    switch (this.state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (this.clock.instant().isBefore(this.openUntil)) {
+          return false;
+        }
+        this.state = State.HALF_OPEN;
+        this.trialInFlight = true;
+        return true;
+      default:
+        // only a single trial call is permitted while half-open
+        if (this.trialInFlight) {
+          return false;
+        }
+        this.trialInFlight = true;
+        return true;
+    }
+  }
+
+  private synchronized void onSuccess() {
+    this.state = State.CLOSED;
+    this.consecutiveFailures = 0;
+    this.trialInFlight = false;
+  }
+
+  private synchronized void onFailure() {
+    this.consecutiveFailures++;
+    this.trialInFlight = false;
+    if (
+      this.state == State.HALF_OPEN ||
+      this.consecutiveFailures >= this.failureThreshold
+    ) {
+      this.state = State.OPEN;
+      this.openUntil = this.clock.instant().plus(this.backoff());
+    }
+  }
+
+  private synchronized void onCancel() {
+    // a cancelled trial neither proves nor disproves recovery, so allow another one
+    this.trialInFlight = false;
+  }
+}
@@ -0,0 +1,24 @@
+package govdata.dashboard.util;
+
+import java.time.Duration;
+import lombok.Getter;
+
+/**
+ * Signals that a call was rejected without being attempted because the circuit breaker is open.
+ */
+@Getter
+public class CircuitBreakerOpenException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public CircuitBreakerOpenException(String name, Duration retryAfter) {
+    super(
+      String.format(
+        "%s is unavailable, next attempt in %d seconds",
+        name,
+        retryAfter.toSeconds()
+      )
+    );
+    this.retryAfter = retryAfter;
+  }
+}
@@ -0,0 +1,69 @@
+package govdata.dashboard.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache that evicts the least recently used entry once it is full. Entries also expire after a time to
+ * live, so that cached upstream data is refreshed eventually. All operations are synchronized cheap map operations.
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class LruCache<K, V> {
+
+  private record Entry<V>(V value, Instant expiresAt) {}
+
+  private final Duration ttl;
+  private final Clock clock;
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  public LruCache(int maxSize, Duration ttl) {
+    this(maxSize, ttl, Clock.systemUTC());
+  }
+
+  public LruCache(int maxSize, Duration ttl, Clock clock) {
+    this.ttl = ttl;
+    this.clock = clock;
+    // access order, so that the eldest entry is the least recently used one
+    this.entries =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+          return this.size() > Math.max(1, maxSize);
+        }
+      };
+  }
+
+  /**
+   * @return The cached value, null if there is none or it has expired
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = this.entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (!this.clock.instant().isBefore(entry.expiresAt())) {
+      this.entries.remove(key);
+      return null;
+    }
+    return entry.value();
+  }
+
+  public synchronized void put(K key, V value) {
+    this.entries.put(key, new Entry<>(value, this.clock.instant().plus(this.ttl)));
+  }
+
+  public synchronized void clear() {
+    this.entries.clear();
+  }
+
+  /**
+   * Number of cached entries, including expired ones that have not been accessed since.
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+}
@@ -0,0 +1,252 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.configuration.AdmissionControlFilter;
+import govdata.dashboard.service.DashboardResponseCache;
+import govdata.dashboard.util.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.ResourceUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Admits requests up to the adaptive limit and sheds the rest, with the last cached response or a 503.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class AdmissionControlFilterTest {
+
+  static MockWebServer mockWebServer = new MockWebServer();
+
+  // a request that stays in flight until it is cancelled
+  static final WebFilterChain PENDING = exchange -> Mono.never();
+
+  static final WebFilterChain OK = exchange -> Mono.empty();
+
+  @LocalServerPort
+  int port;
+
+  @Autowired
+  DashboardResponseCache responseCache;
+
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @DynamicPropertySource
+  static void ckanProperties(DynamicPropertyRegistry registry) {
+    registry.add(
+      "govdata.ckan.url",
+      () -> mockWebServer.url("/").toString()
+    );
+  }
+
+  @AfterAll
+  static void tearDown() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  void testRejectsWithRetryAfterWithoutCachedResponse() {
+    AdmissionControlFilter filter = this.createFilter(Optional.empty());
+    Disposable pending = filter
+      .filter(this.exchange("/api/v0.1/dashboard/json"), PENDING)
+      .subscribe();
+
+    MockServerWebExchange rejected = this.exchange("/api/v0.1/dashboard/json");
+    filter.filter(rejected, OK).block();
+
+    Assertions
+      .assertThat(rejected.getResponse().getStatusCode())
+      .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    Assertions
+      .assertThat(
+        rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)
+      )
+      .isEqualTo("2");
+    Assertions.assertThat(this.gauge("in-flight", "json")).isEqualTo(1);
+    Assertions.assertThat(this.rejected("json", "unavailable")).isEqualTo(1);
+
+    // the page has its own limit
+    MockServerWebExchange page = this.exchange("/api/v0.1/dashboard/");
+    filter.filter(page, OK).block();
+    Assertions.assertThat(page.getResponse().getStatusCode()).isNull();
+
+    pending.dispose();
+    Assertions.assertThat(this.gauge("in-flight", "json")).isZero();
+  }
+
+  @Test
+  void testServesLastCachedResponseOverLimit() throws IOException {
+    mockWebServer.enqueue(
+      new MockResponse()
+        .setBody(
+          Files.readString(
+            ResourceUtils.getFile("classpath:organizations_valid.json").toPath()
+          )
+        )
+        .addHeader("Content-Type", "application/json")
+    );
+    // the first request loads the snapshot and precomputes its responses
+    WebClient
+      .create("http://localhost:" + this.port + "/api/v0.1/dashboard/json")
+      .get()
+      .retrieve()
+      .toBodilessEntity()
+      .block();
+
+    AdmissionControlFilter filter = this.createFilter(
+      Optional.of(this.responseCache)
+    );
+    Disposable pendingPage = filter
+      .filter(this.exchange("/api/v0.1/dashboard/"), PENDING)
+      .subscribe();
+    Disposable pendingJson = filter
+      .filter(this.exchange("/api/v0.1/dashboard/json"), PENDING)
+      .subscribe();
+
+    MockServerWebExchange page = this.exchange("/api/v0.1/dashboard/");
+    filter.filter(page, OK).block();
+    Assertions
+      .assertThat(page.getResponse().getHeaders().getContentType())
+      .hasToString("text/html;charset=UTF-8");
+    Assertions
+      .assertThat(page.getResponse().getBodyAsString().block())
+      .contains("<td>Auswärtiges Amt</td>");
+
+    MockServerWebExchange json = this.exchange("/api/v0.1/dashboard/json");
+    filter.filter(json, OK).block();
+    Assertions
+      .assertThat(json.getResponse().getBodyAsString().block())
+      .startsWith("[{\"name\":\"Auswärtiges Amt\",\"dataSetCount\":20}");
+    Assertions
+      .assertThat(json.getResponse().getHeaders().getFirst(HttpHeaders.AGE))
+      .isNotNull();
+
+    // a query cannot be answered from the full list
+    MockServerWebExchange query = this.exchange(
+      "/api/v0.1/dashboard/departments"
+    );
+    filter.filter(query, OK).block();
+    Assertions
+      .assertThat(query.getResponse().getStatusCode())
+      .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+    Assertions.assertThat(this.rejected("html", "cached")).isEqualTo(1);
+    Assertions.assertThat(this.rejected("json", "cached")).isEqualTo(1);
+    Assertions.assertThat(this.rejected("json", "unavailable")).isEqualTo(1);
+    pendingPage.dispose();
+    pendingJson.dispose();
+  }
+
+  @Test
+  void testAdaptsLimitToLatency() {
+    AdaptiveConcurrencyLimit fast = new AdaptiveConcurrencyLimit(
+      "fast",
+      2,
+      1,
+      3,
+      Duration.ofHours(1),
+      0.5
+    );
+    fast.tryAcquire().orElseThrow().release(false);
+    Assertions.assertThat(fast.getLimit()).isEqualTo(3);
+    fast.tryAcquire().orElseThrow().release(false);
+    // the limit was not in use
+    Assertions.assertThat(fast.getLimit()).isEqualTo(3);
+    fast.tryAcquire().orElseThrow().release(true);
+    Assertions.assertThat(fast.getLimit()).isEqualTo(1);
+
+    AdaptiveConcurrencyLimit slow = new AdaptiveConcurrencyLimit(
+      "slow",
+      4,
+      1,
+      8,
+      Duration.ZERO,
+      0.5
+    );
+    AdaptiveConcurrencyLimit.Permit permit = slow.tryAcquire().orElseThrow();
+    Assertions.assertThat(slow.getInFlight()).isEqualTo(1);
+    permit.release(false);
+    permit.release(false);
+    Assertions.assertThat(slow.getLimit()).isEqualTo(2);
+    Assertions.assertThat(slow.getInFlight()).isZero();
+
+    slow.tryAcquire().orElseThrow();
+    slow.tryAcquire().orElseThrow();
+    Assertions.assertThat(slow.tryAcquire()).isEmpty();
+  }
+
+  @Test
+  void testDecreasesLimitOncePerBurstOfSlowRequests() {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+      "burst",
+      8,
+      1,
+      8,
+      Duration.ZERO,
+      0.5
+    );
+    List<AdaptiveConcurrencyLimit.Permit> burst = IntStream
+      .range(0, 4)
+      .mapToObj(i -> limit.tryAcquire().orElseThrow())
+      .toList();
+    burst.forEach(permit -> permit.release(false));
+    Assertions.assertThat(limit.getLimit()).isEqualTo(4);
+
+    // admitted after the decrease, so it is a sample of the new limit
+    limit.tryAcquire().orElseThrow().release(false);
+    Assertions.assertThat(limit.getLimit()).isEqualTo(2);
+  }
+
+  private AdmissionControlFilter createFilter(
+    Optional<DashboardResponseCache> responseCache
+  ) {
+    return new AdmissionControlFilter(
+      new AdaptiveConcurrencyLimit("html", 1, 1, 1, Duration.ofHours(1), 0.9),
+      new AdaptiveConcurrencyLimit("json", 1, 1, 1, Duration.ofHours(1), 0.9),
+      responseCache,
+      this.meterRegistry,
+      Duration.ofMillis(1500)
+    );
+  }
+
+  private MockServerWebExchange exchange(String path) {
+    return MockServerWebExchange.from(MockServerHttpRequest.get(path));
+  }
+
+  private double gauge(String name, String endpoint) {
+    return this.meterRegistry.get("govdata.admission." + name)
+      .tag("endpoint", endpoint)
+      .gauge()
+      .value();
+  }
+
+  private double rejected(String endpoint, String outcome) {
+    return this.meterRegistry.get("govdata.admission.rejected")
+      .tag("endpoint", endpoint)
+      .tag("outcome", outcome)
+      .counter()
+      .count();
+  }
+}
@@ -0,0 +1,81 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.service.CKANClient;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.ResourceUtils;
+import reactor.test.StepVerifier;
+
+/**
+ * Runs the CKAN client as configured by the application against a local server.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CKANHttpClientTest {
+
+  static MockWebServer mockWebServer = new MockWebServer();
+
+  @Autowired
+  CKANClient ckanClient;
+
+  @DynamicPropertySource
+  static void ckanProperties(DynamicPropertyRegistry registry) {
+    registry.add(
+      "govdata.ckan.url",
+      () -> mockWebServer.url("/").toString()
+    );
+  }
+
+  @AfterAll
+  static void tearDown() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  void testRequestsAndDecodesGzipResponses() throws Exception {
+    byte[] body = Files.readAllBytes(
+      ResourceUtils.getFile("classpath:organizations_valid.json").toPath()
+    );
+    mockWebServer.enqueue(
+      new MockResponse()
+        .setBody(new Buffer().write(gzip(body)))
+        .addHeader("Content-Type", "application/json")
+        .addHeader("Content-Encoding", "gzip")
+    );
+
+    StepVerifier
+      .create(this.ckanClient.fetchOrganizations(name -> true))
+      .expectNextCount(4)
+      .verifyComplete();
+
+    RecordedRequest request = mockWebServer.takeRequest();
+    Assertions
+      .assertThat(request.getHeader("Accept-Encoding"))
+      .contains("gzip");
+    Assertions
+      .assertThat(request.getPath())
+      .isEqualTo("/organization_list?all_fields=true");
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,115 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.service.CKANOrganizationListParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.ResourceUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class CKANOrganizationListParserTest {
+
+  private static final Set<String> KNOWN = Set.of(
+    "Auswärtiges Amt",
+    "Deutsches Patent- und Markenamt",
+    "Bundesamt für Justiz"
+  );
+
+  @Test
+  void testEmitsMatchingOrganizations() throws IOException {
+    StepVerifier
+      .create(
+        CKANOrganizationListParser.parse(
+          this.chunked(this.read("organizations_valid.json"), 8192),
+          KNOWN::contains
+        )
+      )
+      .expectNext(new CKANOrganizationEntity("Auswärtiges Amt", 20))
+      .expectNext(
+        new CKANOrganizationEntity("Deutsches Patent- und Markenamt", 5)
+      )
+      .expectNext(new CKANOrganizationEntity("Bundesamt für Justiz", 10))
+      .verifyComplete();
+  }
+
+  @Test
+  void testSkipsNestedFieldsAcrossChunkBoundaries() {
+    String body =
+      """
+      {
+        "help": "https://www.govdata.de/ckan/api/3/action/help_show?name=organization_list",
+        "success": true,
+        "result": [
+          {
+            "description": "Ein \\"Amt\\" mit Umlauten: äöü",
+            "display_name": "Auswärtiges Amt",
+            "extras": [{ "key": "display_name", "value": "Falscher Name" }],
+            "groups": [],
+            "package_count": 20,
+            "users": [{ "name": "admin", "package_count": 999 }]
+          },
+          { "display_name": "Unbekannt", "package_count": 100 }
+        ]
+      }
+      """;
+
+    // split into single bytes to break tokens and multi-byte characters
+    StepVerifier
+      .create(
+        CKANOrganizationListParser.parse(this.chunked(body, 1), KNOWN::contains)
+      )
+      .expectNext(new CKANOrganizationEntity("Auswärtiges Amt", 20))
+      .verifyComplete();
+  }
+
+  @Test
+  void testFailsForUnsuccessfulResponse() throws IOException {
+    StepVerifier
+      .create(
+        CKANOrganizationListParser.parse(
+          this.chunked(this.read("organizations_invalid.json"), 16),
+          KNOWN::contains
+        )
+      )
+      .expectErrorMessage("Failed to load departments from CKAN API: Bad request")
+      .verify();
+  }
+
+  @Test
+  void testFailsForTruncatedResponse() {
+    StepVerifier
+      .create(
+        CKANOrganizationListParser.parse(
+          this.chunked("{\"success\": true, \"result\": [{\"display_name\"", 4),
+          KNOWN::contains
+        )
+      )
+      .verifyError();
+  }
+
+  private String read(String fileName) throws IOException {
+    return Files.readString(
+      ResourceUtils.getFile("classpath:" + fileName).toPath()
+    );
+  }
+
+  private Flux<DataBuffer> chunked(String body, int chunkSize) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    List<DataBuffer> buffers = new ArrayList<>();
+    for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+      int length = Math.min(chunkSize, bytes.length - offset);
+      byte[] chunk = new byte[length];
+      System.arraycopy(bytes, offset, chunk, 0, length);
+      buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+    }
+    return Flux.fromIterable(buffers);
+  }
+}
@@ -0,0 +1,339 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.model.cluster.LeadershipChangedEvent;
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.ClusterCoordinator;
+import govdata.dashboard.service.DashboardMetrics;
+import govdata.dashboard.service.DashboardService;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import govdata.dashboard.service.FileLeaseBackend;
+import govdata.dashboard.service.SharedSnapshotFile;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.ResourceUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs several instances against one shared directory: only the leader requests CKAN, the followers serve its
+ * snapshot, and a follower takes over once the leader's lease has expired.
+ */
+class ClusterCoordinatorTest {
+
+  static final Duration LEASE_TTL = Duration.ofHours(2);
+
+  /**
+   * An instance of the cluster.
+   */
+  record Node(
+    ClusterCoordinator coordinator,
+    DashboardService dashboardService,
+    DepartmentSnapshotCache snapshotCache
+  ) {
+    Optional<DepartmentSnapshot> snapshot() {
+      return this.snapshotCache.current();
+    }
+  }
+
+  /**
+   * Shared by all instances, so that the test decides when a lease expires.
+   */
+  static class MutableClock extends Clock {
+
+    private volatile Instant instant = Instant.now();
+
+    void advance(Duration duration) {
+      this.instant = this.instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return this.instant;
+    }
+  }
+
+  @TempDir
+  Path directory;
+
+  MockWebServer mockWebServer;
+
+  AtomicInteger organizationListRequests = new AtomicInteger();
+
+  MutableClock clock = new MutableClock();
+
+  List<Node> nodes = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    String organizations = Files.readString(
+      ResourceUtils.getFile("classpath:organizations_valid.json").toPath()
+    );
+    this.mockWebServer = new MockWebServer();
+    this.mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            ClusterCoordinatorTest.this.organizationListRequests.incrementAndGet();
+            return new MockResponse()
+              .setBody(organizations)
+              .addHeader("Content-Type", "application/json");
+          }
+        }
+      );
+    this.mockWebServer.start();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    this.nodes.forEach(node -> node.coordinator().stop());
+    this.mockWebServer.shutdown();
+  }
+
+  @Test
+  void testOnlyLeaderRequestsCkan() throws InterruptedException {
+    List<Node> nodes = this.startNodes(3);
+    Node leader = this.awaitSteadyState(nodes);
+
+    Assertions
+      .assertThat(nodes.stream().filter(node -> node.coordinator().isLeader()))
+      .containsExactly(leader);
+    Assertions
+      .assertThat(leader.snapshot().orElseThrow().departments())
+      .containsExactly(
+        new DepartmentDto("Auswärtiges Amt", 20),
+        new DepartmentDto("Bundesministerium der Justiz", 15)
+      );
+    for (Node node : nodes) {
+      // followers serve the leader's snapshot with its fetch time
+      Assertions
+        .assertThat(node.dashboardService().getDepartmentSnapshot().block())
+        .isEqualTo(leader.snapshot().orElseThrow());
+    }
+    Assertions.assertThat(this.organizationListRequests).hasValue(1);
+  }
+
+  @Test
+  void testFollowerTakesOverOnceLeaseExpired() throws InterruptedException {
+    List<Node> nodes = this.startNodes(3);
+    Node leader = this.awaitSteadyState(nodes);
+    List<Node> followers = nodes
+      .stream()
+      .filter(node -> node != leader)
+      .toList();
+    DepartmentSnapshot published = leader.snapshot().orElseThrow();
+
+    // the leader stops renewing its lease, e.g. because it hangs
+    this.clock.advance(LEASE_TTL.plusSeconds(1));
+    Assertions.assertThat(leader.coordinator().isLeader()).isFalse();
+    Node successor = followers.get(0);
+    successor.coordinator().tick();
+    Assertions.assertThat(successor.coordinator().isLeader()).isTrue();
+    await(() ->
+      successor
+        .snapshot()
+        .filter(snapshot -> snapshot.fetchedAt().isAfter(published.fetchedAt()))
+        .isPresent()
+    );
+    Assertions.assertThat(this.organizationListRequests).hasValue(2);
+
+    // the former leader and the other follower follow the successor
+    DepartmentSnapshot republished = successor.snapshot().orElseThrow();
+    for (Node node : List.of(followers.get(1), leader)) {
+      await(() -> {
+        node.coordinator().tick();
+        return node.snapshot().filter(republished::equals).isPresent();
+      });
+      Assertions.assertThat(node.coordinator().isLeader()).isFalse();
+    }
+    Assertions.assertThat(this.organizationListRequests).hasValue(2);
+  }
+
+  @Test
+  void testLeaseIsExclusiveUntilReleased() throws IOException {
+    FileLeaseBackend backend = new FileLeaseBackend(
+      this.directory.resolve("leader.lease"),
+      this.clock
+    );
+
+    Assertions
+      .assertThat(backend.tryAcquire("a", LEASE_TTL))
+      .hasValueSatisfying(lease -> Assertions.assertThat(lease.term()).isOne());
+    Assertions.assertThat(backend.tryAcquire("b", LEASE_TTL)).isEmpty();
+    // renewing keeps the term
+    Assertions
+      .assertThat(backend.tryAcquire("a", LEASE_TTL))
+      .hasValueSatisfying(lease -> Assertions.assertThat(lease.term()).isOne());
+
+    backend.release("a");
+    Assertions
+      .assertThat(backend.tryAcquire("b", LEASE_TTL))
+      .hasValueSatisfying(lease ->
+        Assertions.assertThat(lease.term()).isEqualTo(2)
+      );
+  }
+
+  @Test
+  void testIgnoresCorruptSharedSnapshot() throws IOException {
+    Path file = this.directory.resolve("departments.snapshot");
+    DepartmentSnapshot snapshot = new DepartmentSnapshot(
+      List.of(
+        new DepartmentDto("Auswärtiges Amt", 20, Map.of("govdata", 20)),
+        new DepartmentDto("Bundesministerium der Justiz", 15)
+      ),
+      Instant.parse("2024-05-01T10:15:30.123456789Z"),
+      42
+    );
+    new SharedSnapshotFile(file).write(snapshot, 7, 42);
+    SharedSnapshotFile reader = new SharedSnapshotFile(file);
+
+    SharedSnapshotFile.Publication read = reader.read().orElseThrow();
+    Assertions.assertThat(read.version()).isEqualTo(7);
+    Assertions.assertThat(read.fingerprint()).isEqualTo(42);
+    Assertions.assertThat(read.snapshot()).isEqualTo(snapshot);
+
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(file, bytes);
+    // the version is unchanged, so the payload is not read again
+    Assertions.assertThat(reader.read()).containsSame(read);
+    Assertions.assertThat(new SharedSnapshotFile(file).read()).isEmpty();
+  }
+
+  private List<Node> startNodes(int count) {
+    for (int i = 0; i < count; i++) {
+      this.nodes.add(this.createNode("node-" + i));
+    }
+    this.nodes.forEach(node -> node.coordinator().start());
+    return this.nodes;
+  }
+
+  /**
+   * Waits until the leader has published its first snapshot and every follower has taken it over.
+   * @return The leader
+   */
+  private Node awaitSteadyState(List<Node> nodes) throws InterruptedException {
+    await(() -> nodes.stream().anyMatch(node -> node.coordinator().isLeader()));
+    Node leader = nodes
+      .stream()
+      .filter(node -> node.coordinator().isLeader())
+      .findFirst()
+      .orElseThrow();
+    await(() -> leader.snapshot().isPresent());
+    for (Node node : nodes) {
+      await(() -> {
+        node.coordinator().tick();
+        return node.snapshot().equals(leader.snapshot());
+      });
+    }
+    return leader;
+  }
+
+  private Node createNode(String nodeId) {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    DepartmentService departmentService = new DepartmentService(
+      "classpath:departments_valid.json",
+      DepartmentIndex.Fuzzy.disabled(),
+      event -> {},
+      Schedulers.boundedElastic()
+    );
+    departmentService.loadDefaultDepartments();
+    DepartmentSnapshotCache snapshotCache = new DepartmentSnapshotCache(
+      Duration.ofMinutes(5),
+      meterRegistry
+    );
+    AtomicReference<DashboardService> dashboardService =
+      new AtomicReference<>();
+    ClusterCoordinator coordinator = new ClusterCoordinator(
+      nodeId,
+      new FileLeaseBackend(this.directory.resolve("leader.lease"), this.clock),
+      new SharedSnapshotFile(this.directory.resolve("departments.snapshot")),
+      LEASE_TTL,
+      // only the initial tick runs on its own, the test ticks explicitly
+      LEASE_TTL.dividedBy(2),
+      snapshotCache,
+      departmentService,
+      event ->
+        dashboardService
+          .get()
+          .onLeadershipChanged((LeadershipChangedEvent) event),
+      Schedulers.boundedElastic(),
+      meterRegistry,
+      this.clock
+    );
+    dashboardService.set(
+      new DashboardService(
+        List.of(
+          new CKANSource(
+            "govdata",
+            new CKANClient(
+              WebClient.create(this.mockWebServer.url("/").toString()),
+              new CircuitBreaker(
+                "CKAN API",
+                3,
+                Duration.ofSeconds(10),
+                Duration.ofMinutes(5)
+              ),
+              CKANClient.Paging.disabled()
+            ),
+            departmentService,
+            null
+          )
+        ),
+        snapshotCache,
+        new DashboardMetrics(meterRegistry, ObservationRegistry.NOOP),
+        Optional.empty(),
+        Optional.of(coordinator)
+      )
+    );
+    return new Node(coordinator, dashboardService.get(), snapshotCache);
+  }
+
+  private static void await(BooleanSupplier condition)
+    throws InterruptedException {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (!condition.getAsBoolean()) {
+      Assertions.assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(20);
+    }
+  }
+}
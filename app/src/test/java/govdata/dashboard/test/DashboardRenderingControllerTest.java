@@ -0,0 +1,107 @@
+package govdata.dashboard.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.ResourceUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Renders the dashboard page in streaming mode against a local CKAN server. Every test starts with an empty snapshot
+ * cache.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class DashboardRenderingControllerTest {
+
+  static MockWebServer mockWebServer = new MockWebServer();
+
+  @LocalServerPort
+  int port;
+
+  @DynamicPropertySource
+  static void ckanProperties(DynamicPropertyRegistry registry) {
+    registry.add(
+      "govdata.ckan.url",
+      () -> mockWebServer.url("/").toString()
+    );
+  }
+
+  @AfterAll
+  static void tearDown() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  void testFlushesTableHeaderBeforeSlowData() throws IOException {
+    mockWebServer.enqueue(
+      new MockResponse()
+        .setBody(
+          Files.readString(
+            ResourceUtils.getFile("classpath:organizations_valid.json").toPath()
+          )
+        )
+        .addHeader("Content-Type", "application/json")
+        .setHeadersDelay(1, TimeUnit.SECONDS)
+    );
+
+    List<String> chunks = WebClient
+      .create("http://localhost:" + this.port)
+      .get()
+      .uri("/api/v0.1/dashboard/")
+      .retrieve()
+      .bodyToFlux(DataBuffer.class)
+      .map(buffer -> {
+        String chunk = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return chunk;
+      })
+      .collectList()
+      .block();
+
+    Assertions.assertThat(chunks).hasSizeGreaterThan(1);
+    // the head is written before CKAN has answered
+    Assertions
+      .assertThat(chunks.get(0))
+      .contains("<thead")
+      .doesNotContain("Auswärtiges Amt");
+    Assertions
+      .assertThat(String.join("", chunks))
+      .contains("Auswärtiges Amt", "Bundesministerium der Justiz", "</html>")
+      .doesNotContain("as of");
+  }
+
+  @Test
+  void testRendersErrorPageForFailureBeforeFirstFlush() {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+    String page = WebClient
+      .create("http://localhost:" + this.port)
+      .get()
+      .uri("/api/v0.1/dashboard/")
+      .retrieve()
+      .bodyToMono(String.class)
+      .block();
+
+    Assertions
+      .assertThat(page)
+      .contains("Failed to load data sets")
+      .doesNotContain("<thead");
+  }
+}
@@ -0,0 +1,190 @@
+package govdata.dashboard.test;
+
+import com.aayushatharva.brotli4j.decoder.Decoder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.ResourceUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Requests the precomputed JSON and HTML responses in every encoding, without letting the client decode them.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class DashboardResponseCacheTest {
+
+  static MockWebServer mockWebServer = new MockWebServer();
+
+  @LocalServerPort
+  int port;
+
+  WebClient webClient;
+
+  @DynamicPropertySource
+  static void ckanProperties(DynamicPropertyRegistry registry) {
+    registry.add(
+      "govdata.ckan.url",
+      () -> mockWebServer.url("/").toString()
+    );
+  }
+
+  @AfterAll
+  static void tearDown() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    mockWebServer.enqueue(
+      new MockResponse()
+        .setBody(
+          Files.readString(
+            ResourceUtils.getFile("classpath:organizations_valid.json").toPath()
+          )
+        )
+        .addHeader("Content-Type", "application/json")
+    );
+    this.webClient =
+      WebClient
+        .builder()
+        .baseUrl("http://localhost:" + this.port + "/api/v0.1/dashboard")
+        .clientConnector(
+          new ReactorClientHttpConnector(HttpClient.create().compress(false))
+        )
+        .build();
+  }
+
+  @Test
+  void testServesJsonInAcceptedEncodingWithConditionalGet()
+    throws IOException {
+    ResponseEntity<byte[]> identity = this.get("/json", "identity", null);
+    ResponseEntity<byte[]> gzip = this.get("/json", "gzip, deflate", null);
+    ResponseEntity<byte[]> brotli = this.get("/json", "gzip, br", null);
+
+    String json = new String(identity.getBody(), StandardCharsets.UTF_8);
+    Assertions
+      .assertThat(json)
+      .isEqualTo(
+        "[{\"name\":\"Auswärtiges Amt\",\"dataSetCount\":20},{\"name\":\"Bundesministerium der Justiz\",\"dataSetCount\":15}]"
+      );
+    Assertions
+      .assertThat(identity.getHeaders().getFirst(HttpHeaders.AGE))
+      .isNotNull();
+    Assertions
+      .assertThat(gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))
+      .isEqualTo("gzip");
+    Assertions.assertThat(gunzip(gzip.getBody())).isEqualTo(json);
+    Assertions
+      .assertThat(brotli.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))
+      .isEqualTo("br");
+    Assertions
+      .assertThat(
+        new String(
+          Decoder.decompress(brotli.getBody()).getDecompressedData(),
+          StandardCharsets.UTF_8
+        )
+      )
+      .isEqualTo(json);
+    // one strong ETag per encoding
+    Assertions
+      .assertThat(identity.getHeaders().getETag())
+      .isNotEqualTo(gzip.getHeaders().getETag())
+      .isNotEqualTo(brotli.getHeaders().getETag());
+
+    ResponseEntity<byte[]> notModified =
+      this.get("/json", "gzip", gzip.getHeaders().getETag());
+    Assertions
+      .assertThat(notModified.getStatusCode())
+      .isEqualTo(HttpStatus.NOT_MODIFIED);
+    Assertions.assertThat(notModified.getBody()).isNull();
+  }
+
+  @Test
+  void testExplicitlyRejectedEncodingOverridesWildcard() {
+    Assertions
+      .assertThat(
+        this.get("/json", "br;q=0, gzip;q=0, *", null)
+          .getHeaders()
+          .getFirst(HttpHeaders.CONTENT_ENCODING)
+      )
+      .isNull();
+    Assertions
+      .assertThat(
+        this.get("/json", "br;q=0, *", null)
+          .getHeaders()
+          .getFirst(HttpHeaders.CONTENT_ENCODING)
+      )
+      .isEqualTo("gzip");
+    Assertions
+      .assertThat(
+        this.get("/json", "*;q=0, gzip", null)
+          .getHeaders()
+          .getFirst(HttpHeaders.CONTENT_ENCODING)
+      )
+      .isEqualTo("gzip");
+  }
+
+  @Test
+  void testServesPrerenderedPageWithConditionalGet() throws IOException {
+    ResponseEntity<byte[]> page = this.get("/", "gzip", null);
+
+    Assertions
+      .assertThat(page.getHeaders().getContentType())
+      .hasToString("text/html;charset=UTF-8");
+    Assertions
+      .assertThat(gunzip(page.getBody()))
+      .contains("<td>Auswärtiges Amt</td>", "(as of ", "/css/style.css");
+    Assertions
+      .assertThat(
+        this.get("/", "gzip", page.getHeaders().getETag()).getStatusCode()
+      )
+      .isEqualTo(HttpStatus.NOT_MODIFIED);
+  }
+
+  private ResponseEntity<byte[]> get(
+    String path,
+    String acceptEncoding,
+    String ifNoneMatch
+  ) {
+    return this.webClient.get()
+      .uri(path)
+      .headers(headers -> {
+        headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        if (ifNoneMatch != null) {
+          headers.setIfNoneMatch(ifNoneMatch);
+        }
+      })
+      .retrieve()
+      .toEntity(byte[].class)
+      .block();
+  }
+
+  private static String gunzip(byte[] bytes) throws IOException {
+    try (
+      GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))
+    ) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
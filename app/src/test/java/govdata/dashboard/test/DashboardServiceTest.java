@@ -1,13 +1,32 @@
 package govdata.dashboard.test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
 import govdata.dashboard.model.ckan.CKANOrganizationResponse;
+import govdata.dashboard.model.department.DepartmentCounts;
 import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.DashboardMetrics;
 import govdata.dashboard.service.DashboardService;
 import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import govdata.dashboard.service.DepartmentSnapshotRefresher;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,6 +35,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.util.ResourceUtils;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
 @SpringBootTest
@@ -31,6 +53,12 @@ class DashboardServiceTest {
 
   ObjectMapper mapper = new ObjectMapper();
 
+  MeterRegistry meterRegistry;
+
+  WebClient webClient;
+
+  CircuitBreaker circuitBreaker;
+
   @BeforeEach
   void setUp() throws Exception {
     // Creates a web server that intercepts a request to the base url
@@ -41,9 +69,17 @@ class DashboardServiceTest {
       "http://localhost:%s",
       this.mockWebServer.getPort()
     );
-    WebClient webClient = WebClient.builder().baseUrl(baseUrl).build();
-    this.dashboardService =
-      new DashboardService(webClient, this.departmentService);
+    this.webClient = WebClient.builder().baseUrl(baseUrl).build();
+    this.meterRegistry = new SimpleMeterRegistry();
+    // open the circuit on the first failure to keep the tests short
+    this.circuitBreaker =
+      new CircuitBreaker(
+        "CKAN API",
+        1,
+        Duration.ofMinutes(1),
+        Duration.ofMinutes(5)
+      );
+    this.dashboardService = this.createDashboardService(Duration.ofMinutes(5));
   }
 
   @AfterEach
@@ -71,6 +107,10 @@ class DashboardServiceTest {
         dto.equals(new DepartmentDto("Bundesministerium der Justiz", 15))
       )
       .verifyComplete();
+
+    // "Unbekannt" is received but does not belong to any department
+    Assertions.assertThat(this.organizations("received")).isEqualTo(4);
+    Assertions.assertThat(this.organizations("matched")).isEqualTo(3);
   }
 
   @Test
@@ -89,6 +129,325 @@ class DashboardServiceTest {
       .expectError();
   }
 
+  @Test
+  void testServesRepeatedRequestsFromCache() throws IOException {
+    this.enqueueValidResponse();
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNextCount(2)
+      .verifyComplete();
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNextCount(2)
+      .verifyComplete();
+
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(1);
+    Assertions.assertThat(this.cacheRequests("miss")).isEqualTo(1);
+    Assertions.assertThat(this.cacheRequests("hit")).isEqualTo(1);
+  }
+
+  @Test
+  void testCoalescesConcurrentRequests() throws IOException {
+    // delay the response so that all callers arrive while the first request is still in flight
+    this.mockWebServer.enqueue(
+        this.validResponse().setHeadersDelay(200, TimeUnit.MILLISECONDS)
+      );
+
+    StepVerifier
+      .create(
+        Flux.merge(
+          this.dashboardService.computeDepartmentDataSetCounts(),
+          this.dashboardService.computeDepartmentDataSetCounts(),
+          this.dashboardService.computeDepartmentDataSetCounts()
+        )
+      )
+      .expectNextCount(6)
+      .verifyComplete();
+
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(1);
+    Assertions.assertThat(this.cacheRequests("miss")).isEqualTo(1);
+    Assertions.assertThat(this.cacheRequests("coalesced")).isEqualTo(2);
+  }
+
+  @Test
+  void testServesStaleSnapshotWhileRevalidating() throws IOException {
+    // every snapshot is expired immediately, so each request triggers a background reload
+    this.dashboardService = this.createDashboardService(Duration.ZERO);
+    this.enqueueValidResponse();
+    this.mockWebServer.enqueue(
+        new MockResponse()
+          .setResponseCode(500)
+          .setHeadersDelay(200, TimeUnit.MILLISECONDS)
+      );
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNextCount(2)
+      .verifyComplete();
+    // the reload fails, but the last good snapshot is served without waiting for it
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNextMatches(dto ->
+        dto.equals(new DepartmentDto("Auswärtiges Amt", 20))
+      )
+      .expectNextCount(1)
+      .expectComplete()
+      .verify(Duration.ofMillis(100));
+
+    Assertions.assertThat(this.cacheRequests("stale")).isEqualTo(1);
+  }
+
+  @Test
+  void testDiscardsLoadStartedBeforeInvalidation() {
+    DepartmentSnapshotCache cache = new DepartmentSnapshotCache(
+      Duration.ofMinutes(5),
+      this.meterRegistry
+    );
+    Sinks.One<DepartmentCounts> outdated = Sinks.one();
+    cache.refresh(outdated::asMono);
+    cache.invalidate();
+    outdated.tryEmitValue(new DepartmentCounts(List.of(), 1));
+
+    Assertions.assertThat(cache.current()).isEmpty();
+    StepVerifier
+      .create(cache.get(() -> Mono.just(new DepartmentCounts(List.of(), 2))))
+      .expectNextMatches(snapshot -> snapshot.fingerprint() == 2)
+      .verifyComplete();
+    Assertions
+      .assertThat(cache.current())
+      .hasValueSatisfying(snapshot ->
+        Assertions.assertThat(snapshot.fingerprint()).isEqualTo(2)
+      );
+  }
+
+  @Test
+  void testCircuitBreakerStopsCallingFailingUpstream() {
+    DepartmentSnapshotRefresher refresher = new DepartmentSnapshotRefresher(
+      this.dashboardService,
+      this.circuitBreaker,
+      Duration.ofMinutes(4),
+      Duration.ofSeconds(5),
+      this.meterRegistry
+    );
+    this.mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+    // the first refresh fails and backs off, the second one is rejected without calling the API
+    StepVerifier
+      .create(refresher.refreshOnce())
+      .expectNextMatches(delay -> delay.compareTo(Duration.ofSeconds(30)) >= 0)
+      .verifyComplete();
+    StepVerifier
+      .create(refresher.refreshOnce())
+      .expectNextMatches(delay -> delay.compareTo(Duration.ofMinutes(1)) <= 0)
+      .verifyComplete();
+
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(1);
+    Assertions
+      .assertThat(this.circuitBreaker.getState())
+      .isEqualTo(CircuitBreaker.State.OPEN);
+    Assertions
+      .assertThat(
+        this.meterRegistry.get("govdata.refresh")
+          .tag("outcome", "failure")
+          .timer()
+          .count()
+      )
+      .isEqualTo(1);
+  }
+
+  @Test
+  void testComputesCorrectDatasetCountsFromPages() throws IOException {
+    this.dashboardService =
+      this.createDashboardService(
+          Duration.ofMinutes(5),
+          new CKANClient.Paging(true, 2, 2, 1, Duration.ofMillis(10))
+        );
+    this.mockWebServer.setDispatcher(
+        new PagedOrganizationDispatcher(Integer.MAX_VALUE, true)
+      );
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNext(new DepartmentDto("Auswärtiges Amt", 20))
+      .expectNext(new DepartmentDto("Bundesministerium der Justiz", 15))
+      .verifyComplete();
+
+    // two full pages, one retry of the failed second page and two empty pages past the end
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(5);
+  }
+
+  @Test
+  void testComputesCorrectDatasetCountsFromCappedPages() throws IOException {
+    this.dashboardService =
+      this.createDashboardService(
+          Duration.ofMinutes(5),
+          new CKANClient.Paging(true, 3, 2, 0, Duration.ofMillis(10))
+        );
+    // the server returns at most 2 organizations per request, whatever the limit
+    this.mockWebServer.setDispatcher(new PagedOrganizationDispatcher(2, false));
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNext(new DepartmentDto("Auswärtiges Amt", 20))
+      .expectNext(new DepartmentDto("Bundesministerium der Justiz", 15))
+      .verifyComplete();
+
+    // the first window of two pages of 3, the rest of the list from offset 2 and two empty pages past the end
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(5);
+  }
+
+  @Test
+  void testStreamsOnlyChangedDepartments() throws IOException {
+    this.enqueueValidResponse();
+    // the Auswärtiges Amt published another data set, the other counts are unchanged
+    this.mockWebServer.enqueue(
+        this.jsonResponse(
+            new CKANOrganizationResponse(
+              true,
+              List.of(
+                new CKANOrganizationEntity("Auswärtiges Amt", 21),
+                new CKANOrganizationEntity("Deutsches Patent- und Markenamt", 5),
+                new CKANOrganizationEntity("Bundesamt für Justiz", 10)
+              ),
+              null
+            )
+          )
+      );
+
+    StepVerifier
+      .create(this.dashboardService.streamDepartmentUpdates())
+      .expectNextMatches(update ->
+        update.complete() &&
+        update
+          .departments()
+          .equals(
+            List.of(
+              new DepartmentDto("Auswärtiges Amt", 20),
+              new DepartmentDto("Bundesministerium der Justiz", 15)
+            )
+          )
+      )
+      // refresh off the signalling thread, which must not block
+      .then(() ->
+        this.dashboardService.refreshDepartmentSnapshot().subscribe()
+      )
+      .expectNextMatches(update ->
+        !update.complete() &&
+        update
+          .departments()
+          .equals(List.of(new DepartmentDto("Auswärtiges Amt", 21)))
+      )
+      .thenCancel()
+      .verify(Duration.ofSeconds(10));
+  }
+
+  private DashboardService createDashboardService(Duration ttl) {
+    return this.createDashboardService(ttl, CKANClient.Paging.disabled());
+  }
+
+  private DashboardService createDashboardService(
+    Duration ttl,
+    CKANClient.Paging paging
+  ) {
+    return new DashboardService(
+      List.of(
+        new CKANSource(
+          "govdata",
+          new CKANClient(this.webClient, this.circuitBreaker, paging),
+          this.departmentService,
+          null
+        )
+      ),
+      new DepartmentSnapshotCache(ttl, this.meterRegistry),
+      new DashboardMetrics(this.meterRegistry, ObservationRegistry.NOOP),
+      Optional.empty(),
+      Optional.empty()
+    );
+  }
+
+  private void enqueueValidResponse() throws IOException {
+    this.mockWebServer.enqueue(this.validResponse());
+  }
+
+  private MockResponse validResponse() throws IOException {
+    return new MockResponse()
+      .setBody(
+        this.mapper.writeValueAsString(
+            this.readOrganizationResponse("organizations_valid.json")
+          )
+      )
+      .addHeader("Content-Type", "application/json");
+  }
+
+  private double cacheRequests(String result) {
+    return this.meterRegistry.get("govdata.cache.requests")
+      .tag("result", result)
+      .counter()
+      .count();
+  }
+
+  private double organizations(String result) {
+    return this.meterRegistry.get("govdata.ckan.organizations")
+      .tag("result", result)
+      .counter()
+      .count();
+  }
+
+  /**
+   * Serves organizations_valid.json page by page, at most maxPageSize organizations per request, and optionally fails
+   * the first attempt of the first page after the first one.
+   */
+  class PagedOrganizationDispatcher extends Dispatcher {
+
+    private final int maxPageSize;
+    private final AtomicInteger secondPageAttempts;
+
+    PagedOrganizationDispatcher(int maxPageSize, boolean failSecondPage) {
+      this.maxPageSize = maxPageSize;
+      this.secondPageAttempts = new AtomicInteger(failSecondPage ? 0 : 1);
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      try {
+        List<CKANOrganizationEntity> organizations =
+          DashboardServiceTest.this.readOrganizationResponse(
+              "organizations_valid.json"
+            )
+            .result();
+        String offset = request.getRequestUrl().queryParameter("offset");
+        String limit = request.getRequestUrl().queryParameter("limit");
+        int from = offset == null ? 0 : Integer.parseInt(offset);
+        if (from > 0 && this.secondPageAttempts.getAndIncrement() == 0) {
+          return new MockResponse().setResponseCode(503);
+        }
+        int size = Math.min(
+          this.maxPageSize,
+          limit == null ? organizations.size() : Integer.parseInt(limit)
+        );
+        return DashboardServiceTest.this.jsonResponse(
+            new CKANOrganizationResponse(
+              true,
+              organizations.subList(
+                Math.min(from, organizations.size()),
+                Math.min(from + size, organizations.size())
+              ),
+              null
+            )
+          );
+      } catch (IOException e) {
+        return new MockResponse().setResponseCode(500);
+      }
+    }
+  }
+
+  private MockResponse jsonResponse(Object body) throws IOException {
+    return new MockResponse()
+      .setBody(this.mapper.writeValueAsString(body))
+      .addHeader("Content-Type", "application/json");
+  }
+
   private CKANOrganizationResponse readOrganizationResponse(String fileName)
     throws IOException {
     return this.mapper.readValue(
@@ -0,0 +1,246 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.model.department.DataSetDto;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.DataSetDrillDownService;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class DataSetDrillDownServiceTest {
+
+  // data sets per organization ID, the department "Bundesministerium der Justiz" itself is unknown to CKAN
+  static final Map<String, Integer> DATA_SETS = Map.of(
+    "aa",
+    1,
+    "dpma",
+    5,
+    "bfj",
+    3
+  );
+
+  MockWebServer mockWebServer;
+  CKANDispatcher dispatcher = new CKANDispatcher();
+  DepartmentService departmentService;
+  CKANClient ckanClient;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.mockWebServer = new MockWebServer();
+    this.mockWebServer.setDispatcher(this.dispatcher);
+    this.mockWebServer.start();
+    this.departmentService =
+      new DepartmentService(
+        "classpath:departments_valid.json",
+        DepartmentIndex.Fuzzy.disabled(),
+        event -> {},
+        Schedulers.boundedElastic()
+      );
+    this.departmentService.loadDefaultDepartments();
+    this.ckanClient =
+      new CKANClient(
+        WebClient.create(this.mockWebServer.url("/").toString()),
+        new CircuitBreaker("CKAN API", 3, Duration.ZERO, Duration.ZERO),
+        CKANClient.Paging.disabled()
+      );
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    this.mockWebServer.shutdown();
+  }
+
+  @Test
+  void testPagesThroughAllOrganizationsOfDepartment() {
+    DataSetDrillDownService service = this.createService(2, 100);
+
+    StepVerifier
+      .create(
+        service.fetchDataSets("Bundesministerium der Justiz").collectList()
+      )
+      .assertNext(dataSets -> {
+        Assertions.assertThat(dataSets).hasSize(8);
+        Map<String, List<String>> byOrganization = dataSets
+          .stream()
+          .collect(
+            Collectors.groupingBy(
+              DataSetDto::organization,
+              Collectors.mapping(DataSetDto::name, Collectors.toList())
+            )
+          );
+        // pages of one organization arrive in order
+        Assertions
+          .assertThat(byOrganization)
+          .containsOnlyKeys(
+            "Deutsches Patent- und Markenamt",
+            "Bundesamt für Justiz"
+          )
+          .containsEntry(
+            "Deutsches Patent- und Markenamt",
+            List.of("dpma-0", "dpma-1", "dpma-2", "dpma-3", "dpma-4")
+          );
+      })
+      .verifyComplete();
+    // organization IDs once, then 3 pages of DPMA and 2 pages of BfJ
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(6);
+
+    // served from the cache
+    StepVerifier
+      .create(service.fetchDataSets("Bundesministerium der Justiz"))
+      .expectNextCount(8)
+      .verifyComplete();
+    Assertions.assertThat(this.mockWebServer.getRequestCount()).isEqualTo(6);
+  }
+
+  @Test
+  void testEvictsLeastRecentlyUsedPages() {
+    DataSetDrillDownService service = this.createService(2, 1);
+
+    StepVerifier
+      .create(service.fetchDataSets("Auswärtiges Amt"))
+      .expectNext(
+        new DataSetDto(
+          "Auswärtiges Amt",
+          "aa-0",
+          "Data set aa-0",
+          "2024-03-04T10:00:00"
+        )
+      )
+      .verifyComplete();
+    StepVerifier
+      .create(service.fetchDataSets("Bundesministerium der Justiz"))
+      .expectNextCount(8)
+      .verifyComplete();
+    int requests = this.mockWebServer.getRequestCount();
+
+    // the only page of the Auswärtiges Amt has been evicted
+    StepVerifier
+      .create(service.fetchDataSets("Auswärtiges Amt"))
+      .expectNextCount(1)
+      .verifyComplete();
+    Assertions
+      .assertThat(this.mockWebServer.getRequestCount())
+      .isEqualTo(requests + 1);
+  }
+
+  @Test
+  void testResolvesOrganizationIdsOnceForConcurrentDrillDowns() {
+    DataSetDrillDownService service = this.createService(2, 100);
+
+    StepVerifier
+      .create(
+        Flux
+          .range(0, 8)
+          .parallel()
+          .runOn(Schedulers.parallel())
+          .flatMap(i ->
+            service.fetchDataSets(
+              i % 2 == 0 ? "Auswärtiges Amt" : "Bundesministerium der Justiz"
+            )
+          )
+          .sequential()
+          .count()
+      )
+      .expectNext(4L * 1 + 4L * 8)
+      .verifyComplete();
+    Assertions.assertThat(this.dispatcher.organizationLists).hasValue(1);
+  }
+
+  @Test
+  void testOnlyDepartmentsHaveDrillDown() {
+    DataSetDrillDownService service = this.createService(2, 100);
+
+    Assertions.assertThat(service.isDepartment("Auswärtiges Amt")).isTrue();
+    Assertions
+      .assertThat(service.isDepartment("Bundesamt für Justiz"))
+      .isFalse();
+    Assertions.assertThat(service.isDepartment("Unbekannt")).isFalse();
+  }
+
+  private DataSetDrillDownService createService(int pageSize, int maxPages) {
+    return new DataSetDrillDownService(
+      this.ckanClient,
+      this.departmentService,
+      pageSize,
+      2,
+      maxPages,
+      Duration.ofMinutes(10),
+      new SimpleMeterRegistry()
+    );
+  }
+
+  /**
+   * Serves the organization list and package_search pages of the organizations in {@link #DATA_SETS}.
+   */
+  static class CKANDispatcher extends Dispatcher {
+
+    final AtomicInteger organizationLists = new AtomicInteger();
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      String body;
+      String path = request.getRequestUrl().pathSegments().get(0);
+      if ("organization_list".equals(path)) {
+        this.organizationLists.incrementAndGet();
+        body =
+          """
+          {"success": true, "result": [
+            {"display_name": "Auswärtiges Amt", "package_count": 1, "id": "aa"},
+            {"display_name": "Deutsches Patent- und Markenamt", "package_count": 5, "id": "dpma"},
+            {"display_name": "Bundesamt für Justiz", "package_count": 3, "id": "bfj"}
+          ]}
+          """;
+      } else {
+        String id = request
+          .getRequestUrl()
+          .queryParameter("fq")
+          .replaceAll("owner_org:\"(.*)\"", "$1");
+        int start = Integer.parseInt(
+          request.getRequestUrl().queryParameter("start")
+        );
+        int rows = Integer.parseInt(
+          request.getRequestUrl().queryParameter("rows")
+        );
+        int count = DATA_SETS.get(id);
+        body =
+          String.format(
+            "{\"success\": true, \"result\": {\"count\": %d, \"results\": [%s]}}",
+            count,
+            IntStream
+              .range(start, Math.min(count, start + rows))
+              .mapToObj(i ->
+                String.format(
+                  "{\"name\": \"%1$s-%2$d\", \"title\": \"Data set %1$s-%2$d\", \"metadata_modified\": \"2024-03-04T10:00:00\"}",
+                  id,
+                  i
+                )
+              )
+              .collect(Collectors.joining(","))
+          );
+      }
+      return new MockResponse()
+        .addHeader("Content-Type", "application/json")
+        .setBody(body);
+    }
+  }
+}
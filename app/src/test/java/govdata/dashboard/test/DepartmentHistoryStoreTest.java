@@ -0,0 +1,226 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.controller.HistoryRestController;
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.model.history.HistoryPoint;
+import govdata.dashboard.model.history.HistoryResolution;
+import govdata.dashboard.service.DepartmentHistoryStore;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.assertj.core.api.ThrowableAssert.ThrowingCallable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.scheduler.Schedulers;
+
+class DepartmentHistoryStoreTest {
+
+  @TempDir
+  Path directory;
+
+  DepartmentHistoryStore historyStore;
+
+  @AfterEach
+  void tearDown() {
+    this.historyStore.stop();
+  }
+
+  @Test
+  void testDownsamplesToLastCountPerBucket() throws IOException {
+    this.historyStore = this.openStore(65536);
+    this.historyStore.record(this.snapshot("2024-03-04T10:00:00Z", 5, 1));
+    this.historyStore.record(this.snapshot("2024-03-04T12:00:00Z", 7, 1));
+    this.historyStore.record(this.snapshot("2024-03-06T09:00:00Z", 9, 2));
+
+    Assertions
+      .assertThat(
+        this.historyStore.query(
+            "Auswärtiges Amt",
+            Instant.parse("2024-03-01T00:00:00Z"),
+            Instant.parse("2024-03-07T00:00:00Z"),
+            HistoryResolution.DAY
+          )
+      )
+      .containsExactly(
+        this.point("2024-03-04T00:00:00Z", 7),
+        this.point("2024-03-05T00:00:00Z", 7),
+        this.point("2024-03-06T00:00:00Z", 9)
+      );
+    Assertions
+      .assertThat(
+        this.historyStore.query(
+            Instant.EPOCH,
+            Instant.parse("2024-03-11T00:00:00Z"),
+            HistoryResolution.WEEK
+          )
+      )
+      .containsOnlyKeys("Auswärtiges Amt", "Bundesministerium der Justiz")
+      .containsEntry(
+        "Bundesministerium der Justiz",
+        List.of(this.point("2024-03-04T00:00:00Z", 2))
+      );
+  }
+
+  @Test
+  void testRecordsOnlyNewerChangedCounts() throws IOException {
+    this.historyStore = this.openStore(65536);
+
+    Assertions
+      .assertThat(
+        this.historyStore.record(this.snapshot("2024-03-04T10:00:00Z", 5, 1))
+      )
+      .isEqualTo(2);
+    // unchanged
+    Assertions
+      .assertThat(
+        this.historyStore.record(this.snapshot("2024-03-04T10:05:00Z", 5, 1))
+      )
+      .isZero();
+    // not newer, e.g. a snapshot restored after a restart
+    Assertions
+      .assertThat(
+        this.historyStore.record(this.snapshot("2024-03-04T10:00:00Z", 6, 1))
+      )
+      .isZero();
+    Assertions
+      .assertThat(
+        this.historyStore.record(this.snapshot("2024-03-04T10:10:00Z", 6, 1))
+      )
+      .isEqualTo(1);
+  }
+
+  @Test
+  void testRollsOverSegmentsAndReopens() throws IOException {
+    this.historyStore = this.openStore(2);
+    for (int day = 1; day <= 5; day++) {
+      this.historyStore.record(
+          this.snapshot("2024-01-0" + day + "T12:00:00Z", day, 1)
+        );
+    }
+    this.historyStore.stop();
+
+    this.historyStore = this.openStore(2);
+
+    try (Stream<Path> segments = Files.list(this.directory.resolve("0"))) {
+      Assertions.assertThat(segments).hasSize(3);
+    }
+    Assertions
+      .assertThat(
+        this.historyStore.query(
+            "Auswärtiges Amt",
+            Instant.EPOCH,
+            Instant.parse("2024-01-06T00:00:00Z"),
+            HistoryResolution.DAY
+          )
+      )
+      .extracting(HistoryPoint::dataSetCount)
+      .containsExactly(1, 2, 3, 4, 5);
+    // appending continues after the last record
+    Assertions
+      .assertThat(
+        this.historyStore.record(this.snapshot("2024-01-06T12:00:00Z", 6, 1))
+      )
+      .isEqualTo(1);
+  }
+
+  @Test
+  void testBoundsQueriedRange() throws IOException {
+    this.historyStore = this.openStore(65536);
+    HistoryRestController controller = new HistoryRestController(
+      this.historyStore,
+      Schedulers.immediate()
+    );
+    this.historyStore.record(this.snapshot("1990-01-01T00:00:00Z", 1, 1));
+    this.historyStore.record(this.snapshot("2024-03-04T10:00:00Z", 5, 1));
+
+    // nothing is recorded after now, so a range into the future ends now
+    Map<String, List<HistoryPoint>> history = controller
+      .getHistory(
+        "Auswärtiges Amt",
+        Instant.parse("2024-03-01T00:00:00Z"),
+        Instant.parse("9999-12-31T00:00:00Z"),
+        "day"
+      )
+      .block()
+      .getBody();
+    Assertions
+      .assertThat(history.get("Auswärtiges Amt"))
+      .last()
+      .extracting(HistoryPoint::time)
+      .matches(time -> time.isBefore(Instant.now()));
+
+    this.assertBadRequest(() ->
+        controller.getHistory(
+          null,
+          Instant.parse("2024-03-05T00:00:00Z"),
+          Instant.parse("2024-03-04T00:00:00Z"),
+          "day"
+        )
+      );
+    // more than 12,000 days since the first record
+    this.assertBadRequest(() ->
+        controller.getHistory(null, null, null, "day").block()
+      );
+    Assertions
+      .assertThat(controller.getHistory(null, null, null, "month").block())
+      .isNotNull();
+  }
+
+  private void assertBadRequest(ThrowingCallable request) {
+    Assertions
+      .assertThatThrownBy(request)
+      .isInstanceOfSatisfying(
+        ResponseStatusException.class,
+        e ->
+          Assertions
+            .assertThat(e.getStatusCode())
+            .isEqualTo(HttpStatus.BAD_REQUEST)
+      );
+  }
+
+  private DepartmentHistoryStore openStore(int segmentRecords)
+    throws IOException {
+    DepartmentHistoryStore store = new DepartmentHistoryStore(
+      this.directory,
+      segmentRecords,
+      new DepartmentSnapshotCache(
+        Duration.ofMinutes(5),
+        new SimpleMeterRegistry()
+      ),
+      Schedulers.boundedElastic()
+    );
+    store.open();
+    return store;
+  }
+
+  private DepartmentSnapshot snapshot(
+    String fetchedAt,
+    int foreignOffice,
+    int justice
+  ) {
+    return new DepartmentSnapshot(
+      List.of(
+        new DepartmentDto("Auswärtiges Amt", foreignOffice),
+        new DepartmentDto("Bundesministerium der Justiz", justice)
+      ),
+      Instant.parse(fetchedAt),
+      0
+    );
+  }
+
+  private HistoryPoint point(String time, int dataSetCount) {
+    return new HistoryPoint(Instant.parse(time), dataSetCount);
+  }
+}
@@ -0,0 +1,97 @@
+package govdata.dashboard.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.SubOrdinate;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentIndexFile;
+import govdata.dashboard.service.DepartmentService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import reactor.core.scheduler.Schedulers;
+
+class DepartmentIndexFileTest {
+
+  static final List<Department> DEPARTMENTS = List.of(
+    new Department(
+      "Bundesministerium des Innern und für Heimat",
+      List.of(
+        new SubOrdinate("Statistisches Bundesamt", List.of("Destatis")),
+        new SubOrdinate("Bundeskriminalamt")
+      ),
+      List.of("BMI")
+    ),
+    new Department("Auswärtiges Amt", List.of())
+  );
+
+  static final byte[] JSON = "{\"departments\": []}".getBytes(
+    StandardCharsets.UTF_8
+  );
+
+  @Test
+  void testReadsWrittenDepartments() throws IOException {
+    Assertions
+      .assertThat(
+        DepartmentIndexFile.read(new ByteArrayInputStream(this.write()), JSON)
+      )
+      .contains(DEPARTMENTS);
+  }
+
+  @Test
+  void testIgnoresBinaryFormOfOtherContent() throws IOException {
+    byte[] changed = "{\"departments\": [] }".getBytes(StandardCharsets.UTF_8);
+
+    Assertions
+      .assertThat(
+        DepartmentIndexFile.read(new ByteArrayInputStream(this.write()), changed)
+      )
+      .isEmpty();
+    Assertions
+      .assertThat(
+        DepartmentIndexFile.read(new ByteArrayInputStream(new byte[8]), JSON)
+      )
+      .isEmpty();
+  }
+
+  @Test
+  void testLoadsBundledDepartmentsFromPrecomputedIndex() throws IOException {
+    // written by the build from src/main/resources/departments.json
+    Assertions.assertThat(new ClassPathResource("departments.index").exists())
+      .isTrue();
+    DepartmentService departmentService = new DepartmentService(
+      "departments.json",
+      DepartmentIndex.Fuzzy.disabled(),
+      event -> {},
+      Schedulers.boundedElastic()
+    );
+    departmentService.loadDefaultDepartments();
+
+    ObjectMapper mapper = new ObjectMapper();
+    Department[] parsed = mapper.treeToValue(
+      mapper
+        .readTree(new ClassPathResource("departments.json").getInputStream())
+        .get("departments"),
+      Department[].class
+    );
+    DepartmentIndex expected = DepartmentIndex.of(Arrays.asList(parsed));
+    Assertions
+      .assertThat(departmentService.getIndex().fingerprint())
+      .isEqualTo(expected.fingerprint());
+    Assertions
+      .assertThat(departmentService.getDepartmentNames())
+      .isEqualTo(expected.departmentNames());
+  }
+
+  private byte[] write() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DepartmentIndexFile.write(DEPARTMENTS, JSON, out);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,137 @@
+package govdata.dashboard.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.ResourceUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Queries the departments as JSON, NDJSON and CSV.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class DepartmentQueryControllerTest {
+
+  static MockWebServer mockWebServer = new MockWebServer();
+
+  @LocalServerPort
+  int port;
+
+  WebClient webClient;
+
+  @DynamicPropertySource
+  static void ckanProperties(DynamicPropertyRegistry registry) {
+    registry.add(
+      "govdata.ckan.url",
+      () -> mockWebServer.url("/").toString()
+    );
+  }
+
+  @AfterAll
+  static void tearDown() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    mockWebServer.enqueue(
+      new MockResponse()
+        .setBody(
+          Files.readString(
+            ResourceUtils.getFile("classpath:organizations_valid.json").toPath()
+          )
+        )
+        .addHeader("Content-Type", "application/json")
+    );
+    this.webClient =
+      WebClient
+        .builder()
+        .baseUrl("http://localhost:" + this.port + "/api/v0.1/dashboard")
+        .build();
+  }
+
+  @Test
+  void testSelectsTopDepartmentAsJson() {
+    Assertions
+      .assertThat(
+        this.get("/departments?limit=1", MediaType.APPLICATION_JSON).getBody()
+      )
+      .isEqualTo("[{\"name\":\"Auswärtiges Amt\",\"dataSetCount\":20}]");
+  }
+
+  @Test
+  void testStreamsDepartmentsAsNdjson() {
+    ResponseEntity<String> response =
+      this.get("/departments?sort=name&order=desc", MediaType.APPLICATION_NDJSON);
+
+    Assertions
+      .assertThat(response.getHeaders().getContentType())
+      .isEqualTo(MediaType.APPLICATION_NDJSON);
+    Assertions
+      .assertThat(response.getBody())
+      .isEqualTo(
+        "{\"name\":\"Bundesministerium der Justiz\",\"dataSetCount\":15}\n" +
+        "{\"name\":\"Auswärtiges Amt\",\"dataSetCount\":20}\n"
+      );
+  }
+
+  @Test
+  void testExportsFilteredDepartmentsAsCsv() {
+    ResponseEntity<String> response =
+      this.get("/departments?contains=justiz", MediaType.valueOf("text/csv"));
+
+    Assertions
+      .assertThat(response.getHeaders().getContentType())
+      .isNotNull()
+      .matches(type -> type.isCompatibleWith(MediaType.valueOf("text/csv")));
+    Assertions
+      .assertThat(response.getBody())
+      .isEqualTo("name,dataSetCount\r\nBundesministerium der Justiz,15\r\n");
+  }
+
+  @Test
+  void testRejectsInvalidQuery() {
+    for (String query : new String[] {
+      "sort=size",
+      "order=up",
+      "limit=0",
+      "min=20&max=10",
+    }) {
+      Assertions
+        .assertThat(
+          this.webClient.get()
+            .uri("/departments?" + query)
+            .exchangeToMono(response -> response.toBodilessEntity())
+            .block()
+            .getStatusCode()
+        )
+        .as(query)
+        .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  private ResponseEntity<String> get(String uri, MediaType accept) {
+    return this.webClient.get()
+      .uri(uri)
+      .accept(accept)
+      .retrieve()
+      .toEntity(String.class)
+      .block();
+  }
+}
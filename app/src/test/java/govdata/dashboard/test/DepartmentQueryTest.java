@@ -0,0 +1,124 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.service.DepartmentQuery;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DepartmentQueryTest {
+
+  // sorted descending by count, as in a snapshot
+  static final List<DepartmentDto> DEPARTMENTS = List.of(
+    new DepartmentDto("Bundesministerium der Finanzen", 40),
+    new DepartmentDto("Auswärtiges Amt", 20),
+    new DepartmentDto("Bundesministerium der Justiz", 15),
+    new DepartmentDto("Bundesministerium für Umwelt", 15),
+    new DepartmentDto("Ärztekammer", 3),
+    new DepartmentDto("Zollverwaltung", 0)
+  );
+
+  @Test
+  void testSelectsAllInSnapshotOrder() {
+    Assertions
+      .assertThat(DepartmentQuery.all().select(DEPARTMENTS))
+      .containsExactlyElementsOf(DEPARTMENTS);
+  }
+
+  @Test
+  void testSelectsTopAndBottomByCount() {
+    Assertions
+      .assertThat(this.names(this.query(null, null, null, null, null, 2)))
+      .containsExactly("Bundesministerium der Finanzen", "Auswärtiges Amt");
+    Assertions
+      .assertThat(
+        this.names(
+            this.query(null, 1, null, null, DepartmentQuery.Order.ASC, 2)
+          )
+      )
+      .containsExactly("Ärztekammer", "Bundesministerium für Umwelt");
+  }
+
+  @Test
+  void testFiltersByNameAndCount() {
+    Assertions
+      .assertThat(
+        this.names(this.query("bundesministerium", 15, null, null, null, null))
+      )
+      .containsExactly(
+        "Bundesministerium der Finanzen",
+        "Bundesministerium der Justiz",
+        "Bundesministerium für Umwelt"
+      );
+    Assertions
+      .assertThat(
+        this.names(
+            new DepartmentQuery(null, "DER", null, 20, null, null, null)
+              .select(DEPARTMENTS)
+              .toList()
+          )
+      )
+      .containsExactly("Bundesministerium der Justiz");
+  }
+
+  @Test
+  void testSelectsFirstNamesWithoutSortingAll() {
+    Assertions
+      .assertThat(
+        this.names(
+            this.query(null, null, null, DepartmentQuery.Sort.NAME, null, 3)
+          )
+      )
+      // umlauts sort like their base letter
+      .containsExactly(
+        "Ärztekammer",
+        "Auswärtiges Amt",
+        "Bundesministerium der Finanzen"
+      );
+    Assertions
+      .assertThat(
+        this.names(
+            this.query(
+                null,
+                null,
+                null,
+                DepartmentQuery.Sort.NAME,
+                DepartmentQuery.Order.DESC,
+                2
+              )
+          )
+      )
+      .containsExactly("Zollverwaltung", "Bundesministerium für Umwelt");
+  }
+
+  @Test
+  void testRejectsInvalidBounds() {
+    Assertions
+      .assertThatThrownBy(() ->
+        new DepartmentQuery(null, null, null, null, null, null, 0)
+      )
+      .isInstanceOf(IllegalArgumentException.class);
+    Assertions
+      .assertThatThrownBy(() ->
+        new DepartmentQuery(null, null, 10, 5, null, null, null)
+      )
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private List<DepartmentDto> query(
+    String prefix,
+    Integer min,
+    Integer max,
+    DepartmentQuery.Sort sort,
+    DepartmentQuery.Order order,
+    Integer limit
+  ) {
+    return new DepartmentQuery(prefix, null, min, max, sort, order, limit)
+      .select(DEPARTMENTS)
+      .toList();
+  }
+
+  private List<String> names(List<DepartmentDto> departments) {
+    return departments.stream().map(DepartmentDto::name).toList();
+  }
+}
@@ -0,0 +1,35 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.service.DepartmentService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+@SpringBootTest(
+  properties = "departments.file=classpath:departments_duplicate.json"
+)
+@ActiveProfiles("test")
+class DepartmentServiceDuplicateTest {
+
+  @Autowired
+  DepartmentService departmentService;
+
+  @Test
+  void testNoDepartmentsFound() {
+    int departments = this.departmentService.getDepartmentNames().size();
+    Assertions.assertThat(departments).isZero();
+  }
+
+  @Test
+  void testHasErrorNamingDuplicate() {
+    StepVerifier
+      .create(this.departmentService.getError())
+      .expectErrorMessage(
+        "Failed to load departments: Duplicate organization name \"Bundesamt für Justiz\" in departments \"Bundesministerium des Innern und für Heimat\" and \"Bundesministerium der Justiz\""
+      )
+      .verify();
+  }
+}
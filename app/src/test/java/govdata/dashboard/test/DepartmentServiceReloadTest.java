@@ -0,0 +1,127 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.model.department.DepartmentsReloadedEvent;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentsFileWatcher;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.ResourceUtils;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class DepartmentServiceReloadTest {
+
+  @TempDir
+  Path directory;
+
+  Path departmentsFile;
+
+  List<Object> events = new CopyOnWriteArrayList<>();
+
+  DepartmentService departmentService;
+
+  DepartmentsFileWatcher watcher;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.departmentsFile = this.directory.resolve("departments.json");
+    this.copy("departments_valid.json");
+    this.departmentService =
+      new DepartmentService(
+        this.departmentsFile.toString(),
+        DepartmentIndex.Fuzzy.disabled(),
+        this.events::add,
+        Schedulers.boundedElastic()
+      );
+    this.departmentService.loadDefaultDepartments();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (this.watcher != null) {
+      this.watcher.stop();
+    }
+  }
+
+  @Test
+  void testReloadSwapsMapping() throws IOException {
+    DepartmentIndex before = this.departmentService.getIndex();
+    this.copy("departments_reloaded.json");
+
+    StepVerifier
+      .create(this.departmentService.reload())
+      .expectNextMatches(index -> index.size() == 3)
+      .verifyComplete();
+
+    // the previous index is unchanged, so requests in flight still see a consistent mapping
+    Assertions.assertThat(before.size()).isEqualTo(2);
+    Assertions
+      .assertThat(
+        this.departmentService.toDepartment("Bundesamt für Justiz")
+      )
+      .isEqualTo("Bundesministerium der Justiz und für Verbraucherschutz");
+    Assertions
+      .assertThat(this.events)
+      .containsExactly(new DepartmentsReloadedEvent(3));
+  }
+
+  @Test
+  void testInvalidReloadKeepsMapping() throws IOException {
+    this.copy("departments_duplicate.json");
+
+    StepVerifier.create(this.departmentService.reload()).verifyError();
+
+    Assertions
+      .assertThat(this.departmentService.getDepartmentNames())
+      .containsExactly("Auswärtiges Amt", "Bundesministerium der Justiz");
+    StepVerifier.create(this.departmentService.getError()).verifyComplete();
+    Assertions.assertThat(this.events).isEmpty();
+  }
+
+  @Test
+  void testWatcherReloadsChangedFile() throws Exception {
+    this.watcher =
+      new DepartmentsFileWatcher(
+        this.departmentService,
+        Duration.ofMillis(50)
+      );
+    this.watcher.start();
+
+    this.copy("departments_reloaded.json");
+
+    long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+    while (this.events.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    Assertions
+      .assertThat(this.departmentService.getIndex().size())
+      .isEqualTo(3);
+  }
+
+  private void copy(String resource) throws IOException {
+    // replace the file atomically like a deployment would
+    Path temp = Files.createTempFile(this.directory, "departments", ".tmp");
+    Files.copy(
+      ResourceUtils.getFile("classpath:" + resource).toPath(),
+      temp,
+      StandardCopyOption.REPLACE_EXISTING
+    );
+    Files.move(
+      temp,
+      this.departmentsFile,
+      StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE
+    );
+  }
+}
@@ -1,5 +1,6 @@
 package govdata.dashboard.test;
 
+import govdata.dashboard.service.DepartmentIndex;
 import govdata.dashboard.service.DepartmentService;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -53,4 +54,17 @@ class DepartmentServiceValidTest {
       this.departmentService.toDepartment("Bundesamt für Justiz");
     Assertions.assertThat(department).matches("Bundesministerium der Justiz");
   }
+
+  @Test
+  void testResolvesDenseDepartmentIds() {
+    DepartmentIndex index = this.departmentService.getIndex();
+    Assertions.assertThat(index.departmentId("Auswärtiges Amt")).isZero();
+    Assertions
+      .assertThat(index.departmentId("Deutsches Patent- und Markenamt"))
+      .isEqualTo(index.departmentId("Bundesministerium der Justiz"))
+      .isEqualTo(1);
+    Assertions
+      .assertThat(index.departmentId("Unbekannt"))
+      .isEqualTo(DepartmentIndex.UNKNOWN);
+  }
 }
@@ -0,0 +1,139 @@
+package govdata.dashboard.test;
+
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.model.department.DepartmentSnapshot;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import govdata.dashboard.service.DepartmentSnapshotStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+
+class DepartmentSnapshotStoreTest {
+
+  @TempDir
+  Path directory;
+
+  DepartmentService departmentService;
+
+  DepartmentSnapshotCache snapshotCache;
+
+  DepartmentSnapshotStore snapshotStore;
+
+  DepartmentSnapshot snapshot;
+
+  @BeforeEach
+  void setUp() {
+    this.departmentService =
+      new DepartmentService(
+        "classpath:departments_valid.json",
+        DepartmentIndex.Fuzzy.disabled(),
+        event -> {},
+        Schedulers.boundedElastic()
+      );
+    this.departmentService.loadDefaultDepartments();
+    this.snapshot =
+      this.snapshot(this.departmentService.getIndex().fingerprint());
+    this.snapshotCache =
+      new DepartmentSnapshotCache(
+        Duration.ofMinutes(5),
+        new SimpleMeterRegistry()
+      );
+    this.snapshotStore =
+      new DepartmentSnapshotStore(
+        this.directory.resolve("data/departments.snapshot"),
+        this.departmentService,
+        this.snapshotCache,
+        Schedulers.boundedElastic()
+      );
+  }
+
+  @Test
+  void testRestoresSavedSnapshotIntoCache() throws IOException {
+    this.snapshotStore.save(this.snapshot);
+
+    Assertions
+      .assertThat(this.snapshotStore.restore())
+      .contains(this.snapshot);
+    Assertions.assertThat(this.snapshotCache.current()).contains(this.snapshot);
+    // only the snapshot itself is left behind, no temporary files
+    try (var files = Files.list(this.directory.resolve("data"))) {
+      Assertions.assertThat(files).hasSize(1);
+    }
+  }
+
+  @Test
+  void testDiscardsSnapshotOfOtherDepartmentsMapping() throws IOException {
+    // aggregated with the mapping before a reload, saved after it
+    this.snapshotStore.save(
+        this.snapshot(this.departmentService.getIndex().fingerprint() + 1)
+      );
+
+    Assertions.assertThat(this.snapshotStore.restore()).isEmpty();
+    Assertions.assertThat(this.snapshotCache.current()).isEmpty();
+  }
+
+  @Test
+  void testIgnoresMissingAndCorruptSnapshot() throws IOException {
+    Assertions.assertThat(this.snapshotStore.restore()).isEmpty();
+
+    this.snapshotStore.save(this.snapshot);
+    Path file = this.directory.resolve("data/departments.snapshot");
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+    Assertions.assertThat(this.snapshotStore.restore()).isEmpty();
+  }
+
+  @Test
+  void testIgnoresSnapshotWithWrongChecksum() throws IOException {
+    this.snapshotStore.save(this.snapshot);
+    Path file = this.directory.resolve("data/departments.snapshot");
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(file, bytes);
+
+    Assertions.assertThat(this.snapshotStore.restore()).isEmpty();
+  }
+
+  @Test
+  void testIgnoresSnapshotWithInvalidSize() throws IOException {
+    // version 2 has no checksum, a negative number of departments must not fail the startup
+    Path file = this.directory.resolve("data/departments.snapshot");
+    Files.createDirectories(file.getParent());
+    try (
+      DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))
+    ) {
+      out.writeInt(0x47445302);
+      out.writeLong(this.departmentService.getIndex().fingerprint());
+      out.writeLong(0);
+      out.writeInt(0);
+      out.writeInt(-1);
+    }
+
+    Assertions.assertThat(this.snapshotStore.restore()).isEmpty();
+  }
+
+  private DepartmentSnapshot snapshot(long fingerprint) {
+    return new DepartmentSnapshot(
+      List.of(
+        new DepartmentDto("Auswärtiges Amt", 20),
+        new DepartmentDto("Bundesministerium der Justiz", 15)
+      ),
+      Instant.parse("2024-10-01T08:15:30.123456789Z"),
+      fingerprint
+    );
+  }
+}
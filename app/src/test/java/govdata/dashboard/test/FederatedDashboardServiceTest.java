@@ -0,0 +1,238 @@
+package govdata.dashboard.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.ckan.CKANOrganizationResponse;
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.DashboardMetrics;
+import govdata.dashboard.service.DashboardService;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+/**
+ * Merges the counts of two CKAN portals, each served by its own local server and mapped by its own departments file.
+ */
+class FederatedDashboardServiceTest {
+
+  MockWebServer bund;
+
+  MockWebServer land;
+
+  DashboardService dashboardService;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.bund = new MockWebServer();
+    this.bund.start();
+    this.land = new MockWebServer();
+    this.land.start();
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    this.dashboardService =
+      new DashboardService(
+        List.of(
+          this.source(
+              this.bund,
+              "bund",
+              "classpath:departments_valid.json",
+              Duration.ofSeconds(5)
+            ),
+          // short enough to give up on the delayed response
+          this.source(
+              this.land,
+              "land",
+              "classpath:departments_reloaded.json",
+              Duration.ofMillis(500)
+            )
+        ),
+        new DepartmentSnapshotCache(Duration.ofMinutes(5), meterRegistry),
+        new DashboardMetrics(meterRegistry, ObservationRegistry.NOOP),
+        Optional.empty(),
+        Optional.empty()
+      );
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    this.bund.shutdown();
+    this.land.shutdown();
+  }
+
+  @Test
+  void testMergesCountsOfAllSources() throws IOException {
+    this.bund.enqueue(this.organizations(20));
+    this.land.enqueue(this.landOrganizations());
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNext(
+        new DepartmentDto(
+          "Auswärtiges Amt",
+          23,
+          Map.of("bund", 20, "land", 3)
+        ),
+        new DepartmentDto(
+          "Bundesministerium der Justiz",
+          15,
+          Map.of("bund", 15)
+        ),
+        new DepartmentDto(
+          "Bundesministerium der Finanzen",
+          7,
+          Map.of("land", 7)
+        ),
+        // known to the land mapping only, without data sets
+        new DepartmentDto(
+          "Bundesministerium der Justiz und für Verbraucherschutz",
+          0,
+          Map.of("land", 0)
+        )
+      )
+      .verifyComplete();
+  }
+
+  @Test
+  void testKeepsPreviousCountsOfFailingSource() throws IOException {
+    this.bund.enqueue(this.organizations(20));
+    this.land.enqueue(this.landOrganizations());
+    this.bund.enqueue(this.organizations(21));
+    this.land.enqueue(new MockResponse().setResponseCode(500));
+
+    StepVerifier
+      .create(this.dashboardService.refreshDepartmentSnapshot())
+      .expectNextCount(1)
+      .verifyComplete();
+    StepVerifier
+      .create(this.dashboardService.refreshDepartmentSnapshot())
+      .expectNextMatches(snapshot ->
+        snapshot
+          .departments()
+          .get(0)
+          .equals(
+            new DepartmentDto(
+              "Auswärtiges Amt",
+              24,
+              Map.of("bund", 21, "land", 3)
+            )
+          ) &&
+        snapshot.departments().size() == 4
+      )
+      .verifyComplete();
+  }
+
+  @Test
+  void testSkipsSlowSourceWithoutPreviousCounts() throws IOException {
+    this.bund.enqueue(this.organizations(20));
+    this.land.enqueue(
+        this.landOrganizations().setHeadersDelay(2, TimeUnit.SECONDS)
+      );
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectNext(
+        new DepartmentDto("Auswärtiges Amt", 20, Map.of("bund", 20)),
+        new DepartmentDto(
+          "Bundesministerium der Justiz",
+          15,
+          Map.of("bund", 15)
+        )
+      )
+      .expectComplete()
+      .verify(Duration.ofSeconds(2));
+  }
+
+  @Test
+  void testFailsIfAllSourcesFail() {
+    this.bund.enqueue(new MockResponse().setResponseCode(500));
+    this.land.enqueue(new MockResponse().setResponseCode(500));
+
+    StepVerifier
+      .create(this.dashboardService.computeDepartmentDataSetCounts())
+      .expectErrorMatches(e ->
+        e.getMessage().startsWith("Failed to load departments from all")
+      )
+      .verify();
+  }
+
+  private CKANSource source(
+    MockWebServer server,
+    String name,
+    String departmentsFile,
+    Duration timeout
+  ) {
+    DepartmentService departmentService = new DepartmentService(
+      departmentsFile,
+      DepartmentIndex.Fuzzy.disabled(),
+      event -> {},
+      Schedulers.boundedElastic()
+    );
+    departmentService.loadDefaultDepartments();
+    return new CKANSource(
+      name,
+      new CKANClient(
+        WebClient.create(server.url("/").toString()),
+        new CircuitBreaker(
+          "CKAN API " + name,
+          1,
+          Duration.ofMinutes(1),
+          Duration.ofMinutes(5)
+        ),
+        CKANClient.Paging.disabled()
+      ),
+      departmentService,
+      timeout
+    );
+  }
+
+  private MockResponse organizations(int auswaertigesAmt) throws IOException {
+    return this.jsonResponse(
+        List.of(
+          new CKANOrganizationEntity("Auswärtiges Amt", auswaertigesAmt),
+          new CKANOrganizationEntity("Deutsches Patent- und Markenamt", 5),
+          new CKANOrganizationEntity("Bundesamt für Justiz", 10)
+        )
+      );
+  }
+
+  private MockResponse landOrganizations() throws IOException {
+    return this.jsonResponse(
+        List.of(
+          new CKANOrganizationEntity("Auswärtiges Amt", 3),
+          new CKANOrganizationEntity("Bundesministerium der Finanzen", 7)
+        )
+      );
+  }
+
+  private MockResponse jsonResponse(
+    List<CKANOrganizationEntity> organizations
+  ) throws IOException {
+    return new MockResponse()
+      .setBody(
+        this.mapper.writeValueAsString(
+            new CKANOrganizationResponse(true, organizations, null)
+          )
+      )
+      .addHeader("Content-Type", "application/json");
+  }
+}
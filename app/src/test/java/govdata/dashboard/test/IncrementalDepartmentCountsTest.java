@@ -0,0 +1,332 @@
+package govdata.dashboard.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.ckan.CKANOrganizationResponse;
+import govdata.dashboard.model.ckan.CKANOrganizationShowResponse;
+import govdata.dashboard.model.ckan.CKANPackageFacetsResponse;
+import govdata.dashboard.model.department.DepartmentDto;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.DashboardMetrics;
+import govdata.dashboard.service.DashboardService;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.DepartmentSnapshotCache;
+import govdata.dashboard.service.IncrementalDepartmentCounts;
+import govdata.dashboard.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+/**
+ * Refreshes the counts from the full organization list first and then from the organizations with modified data sets.
+ */
+class IncrementalDepartmentCountsTest {
+
+  static final CKANOrganizationEntity AUSWAERTIGES_AMT =
+    new CKANOrganizationEntity("Auswärtiges Amt", 20, "aa");
+  static final CKANOrganizationEntity PATENTAMT = new CKANOrganizationEntity(
+    "Deutsches Patent- und Markenamt",
+    5,
+    "dpma"
+  );
+  static final CKANOrganizationEntity BUNDESAMT_FUER_JUSTIZ =
+    new CKANOrganizationEntity("Bundesamt für Justiz", 10, "bfj");
+  static final CKANOrganizationEntity UNBEKANNT = new CKANOrganizationEntity(
+    "Unbekannt",
+    100,
+    "unbekannt"
+  );
+
+  MockWebServer mockWebServer;
+
+  ObjectMapper mapper = new ObjectMapper();
+
+  SimpleMeterRegistry meterRegistry;
+
+  // responses per action (and ID for organization_show), in order
+  Map<String, Queue<MockResponse>> responses = new ConcurrentHashMap<>();
+
+  List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void setUp() throws IOException {
+    this.mockWebServer = new MockWebServer();
+    this.mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            String action = request.getRequestUrl().pathSegments().getLast();
+            String key = action.equals("organization_show")
+              ? action + " " + request.getRequestUrl().queryParameter("id")
+              : action;
+            IncrementalDepartmentCountsTest.this.requests.add(key);
+            MockResponse response = IncrementalDepartmentCountsTest.this.responses.getOrDefault(
+                key,
+                new ConcurrentLinkedQueue<>()
+              )
+              .poll();
+            return response != null
+              ? response
+              : new MockResponse().setResponseCode(500);
+          }
+        }
+      );
+    this.mockWebServer.start();
+    this.meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    this.mockWebServer.shutdown();
+  }
+
+  @Test
+  void testPatchesCountsOfModifiedOrganizations() throws IOException {
+    DashboardService dashboardService =
+      this.createDashboardService(Duration.ofHours(1));
+    this.enqueue(
+        "organization_list",
+        new CKANOrganizationResponse(
+          true,
+          List.of(
+            AUSWAERTIGES_AMT,
+            PATENTAMT,
+            BUNDESAMT_FUER_JUSTIZ,
+            UNBEKANNT
+          ),
+          null
+        )
+      );
+    this.enqueue(
+        "package_search",
+        this.modified(Map.of("aa", 2, "unbekannt", 7, "neu", 3))
+      );
+    this.enqueue(
+        "organization_show aa",
+        this.show("Auswärtiges Amt", 22, "aa")
+      );
+    this.enqueue(
+        "organization_show neu",
+        this.show("Deutsches Patent- und Markenamt", 3, "neu")
+      );
+
+    StepVerifier
+      .create(dashboardService.refreshDepartmentSnapshot())
+      .expectNextMatches(snapshot ->
+        snapshot
+          .departments()
+          .equals(
+            List.of(
+              new DepartmentDto("Auswärtiges Amt", 20),
+              new DepartmentDto("Bundesministerium der Justiz", 15)
+            )
+          )
+      )
+      .verifyComplete();
+    StepVerifier
+      .create(dashboardService.refreshDepartmentSnapshot())
+      .expectNextMatches(snapshot ->
+        snapshot
+          .departments()
+          .equals(
+            List.of(
+              new DepartmentDto("Auswärtiges Amt", 22),
+              new DepartmentDto("Bundesministerium der Justiz", 18)
+            )
+          )
+      )
+      .verifyComplete();
+
+    // the unknown organization does not change any count and is not requested
+    Assertions
+      .assertThat(this.requests)
+      .containsExactlyInAnyOrder(
+        "organization_list",
+        "package_search",
+        "organization_show aa",
+        "organization_show neu"
+      );
+    Assertions.assertThat(this.runs("full")).isEqualTo(1);
+    Assertions.assertThat(this.runs("delta")).isEqualTo(1);
+  }
+
+  @Test
+  void testFallsBackToFullRefreshIfOrganizationIsGone() throws IOException {
+    DashboardService dashboardService =
+      this.createDashboardService(Duration.ofHours(1));
+    this.enqueue(
+        "organization_list",
+        new CKANOrganizationResponse(
+          true,
+          List.of(AUSWAERTIGES_AMT, PATENTAMT, BUNDESAMT_FUER_JUSTIZ),
+          null
+        )
+      );
+    this.enqueue("package_search", this.modified(Map.of("bfj", 1)));
+    this.responses.computeIfAbsent(
+        "organization_show bfj",
+        action -> new ConcurrentLinkedQueue<>()
+      )
+      .add(new MockResponse().setResponseCode(404));
+    this.enqueue(
+        "organization_list",
+        new CKANOrganizationResponse(
+          true,
+          List.of(AUSWAERTIGES_AMT, PATENTAMT),
+          null
+        )
+      );
+
+    dashboardService.refreshDepartmentSnapshot().block();
+    StepVerifier
+      .create(dashboardService.refreshDepartmentSnapshot())
+      .expectNextMatches(snapshot ->
+        snapshot
+          .departments()
+          .equals(
+            List.of(
+              new DepartmentDto("Auswärtiges Amt", 20),
+              new DepartmentDto("Bundesministerium der Justiz", 5)
+            )
+          )
+      )
+      .verifyComplete();
+    Assertions.assertThat(this.runs("full")).isEqualTo(2);
+    Assertions.assertThat(this.runs("delta")).isZero();
+  }
+
+  @Test
+  void testRefreshesFullyOnceFullIntervalElapsed() throws IOException {
+    DashboardService dashboardService =
+      this.createDashboardService(Duration.ZERO);
+    for (int count : new int[] { 20, 25 }) {
+      this.enqueue(
+          "organization_list",
+          new CKANOrganizationResponse(
+            true,
+            List.of(new CKANOrganizationEntity("Auswärtiges Amt", count, "aa")),
+            null
+          )
+        );
+    }
+
+    dashboardService.refreshDepartmentSnapshot().block();
+    StepVerifier
+      .create(dashboardService.refreshDepartmentSnapshot())
+      .expectNextMatches(snapshot ->
+        snapshot
+          .departments()
+          .getFirst()
+          .equals(new DepartmentDto("Auswärtiges Amt", 25))
+      )
+      .verifyComplete();
+    Assertions
+      .assertThat(this.requests)
+      .containsExactly("organization_list", "organization_list");
+  }
+
+  private DashboardService createDashboardService(Duration fullInterval) {
+    DepartmentService departmentService = new DepartmentService(
+      "classpath:departments_valid.json",
+      DepartmentIndex.Fuzzy.disabled(),
+      event -> {},
+      Schedulers.boundedElastic()
+    );
+    departmentService.loadDefaultDepartments();
+    return new DashboardService(
+      List.of(
+        new CKANSource(
+          "govdata",
+          new CKANClient(
+            WebClient.create(this.mockWebServer.url("/").toString()),
+            // stays closed, the 404 of a missing organization is not a failure
+            new CircuitBreaker(
+              "CKAN API",
+              1,
+              Duration.ofMinutes(1),
+              Duration.ofMinutes(5)
+            ),
+            CKANClient.Paging.disabled()
+          ),
+          departmentService,
+          null
+        )
+      ),
+      new DepartmentSnapshotCache(Duration.ofMinutes(5), this.meterRegistry),
+      new DashboardMetrics(this.meterRegistry, ObservationRegistry.NOOP),
+      Optional.of(
+        new IncrementalDepartmentCounts(
+          fullInterval,
+          Duration.ofMinutes(5),
+          2,
+          this.meterRegistry
+        )
+      ),
+      Optional.empty()
+    );
+  }
+
+  private CKANPackageFacetsResponse modified(Map<String, Integer> counts) {
+    return new CKANPackageFacetsResponse(
+      true,
+      new CKANPackageFacetsResponse.Result(
+        counts.values().stream().mapToInt(Integer::intValue).sum(),
+        Map.of("owner_org", counts)
+      ),
+      null
+    );
+  }
+
+  private CKANOrganizationShowResponse show(
+    String name,
+    int packageCount,
+    String id
+  ) {
+    return new CKANOrganizationShowResponse(
+      true,
+      new CKANOrganizationEntity(name, packageCount, id),
+      null
+    );
+  }
+
+  private void enqueue(String action, Object body) throws IOException {
+    this.responses.computeIfAbsent(
+        action,
+        key -> new ConcurrentLinkedQueue<>()
+      )
+      .add(
+        new MockResponse()
+          .setBody(this.mapper.writeValueAsString(body))
+          .addHeader("Content-Type", "application/json")
+      );
+  }
+
+  private double runs(String mode) {
+    return this.meterRegistry.get("govdata.refresh.incremental.runs")
+      .tag("mode", mode)
+      .counter()
+      .count();
+  }
+}
@@ -0,0 +1,200 @@
+package govdata.dashboard.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import govdata.dashboard.model.ckan.CKANOrganizationEntity;
+import govdata.dashboard.model.ckan.CKANOrganizationResponse;
+import govdata.dashboard.model.department.Department;
+import govdata.dashboard.model.department.OrganizationMatchDto;
+import govdata.dashboard.model.department.SubOrdinate;
+import govdata.dashboard.service.CKANClient;
+import govdata.dashboard.service.CKANSource;
+import govdata.dashboard.service.DepartmentIndex;
+import govdata.dashboard.service.DepartmentService;
+import govdata.dashboard.service.OrganizationMatchReportService;
+import govdata.dashboard.util.CircuitBreaker;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class OrganizationNameMatchingTest {
+
+  static final List<Department> DEPARTMENTS = List.of(
+    new Department("Auswärtiges Amt", List.of()),
+    new Department(
+      "Bundesministerium des Innern und Heimat",
+      List.of(new SubOrdinate("Statistisches Bundesamt")),
+      List.of("BMI")
+    ),
+    new Department("Bundesministerium der Finanzen", List.of()),
+    new Department("Bundesministerium der Justiz", List.of())
+  );
+
+  DepartmentIndex index = DepartmentIndex.of(
+    DEPARTMENTS,
+    new DepartmentIndex.Fuzzy(true, 0.85)
+  );
+
+  @Test
+  void testMatchesAliasesExactly() {
+    Assertions
+      .assertThat(this.index.match("BMI"))
+      .isEqualTo(
+        new DepartmentIndex.Match("BMI", 1, DepartmentIndex.MatchKind.EXACT, 1.0)
+      );
+  }
+
+  @Test
+  void testMatchesNormalizedNames() {
+    for (String name : List.of(
+      "  AUSWÄRTIGES   AMT.",
+      "Auswaertiges Amt",
+      "Auswärtiges Amt"
+    )) {
+      Assertions
+        .assertThat(this.index.match(name).kind())
+        .isEqualTo(DepartmentIndex.MatchKind.NORMALIZED);
+      Assertions.assertThat(this.index.departmentId(name)).isZero();
+    }
+  }
+
+  @Test
+  void testMatchesSimilarNamesAboveThreshold() {
+    DepartmentIndex.Match match =
+      this.index.match("Bundesministerium des Innern und für Heimat");
+
+    Assertions
+      .assertThat(match.kind())
+      .isEqualTo(DepartmentIndex.MatchKind.FUZZY);
+    Assertions.assertThat(match.departmentId()).isEqualTo(1);
+    Assertions.assertThat(match.similarity()).isBetween(0.85, 1.0);
+    // another ministry and an unrelated organization are not close enough
+    Assertions
+      .assertThat(this.index.departmentId("Bundesministerium der Gesundheit"))
+      .isEqualTo(DepartmentIndex.UNKNOWN);
+    Assertions
+      .assertThat(this.index.match("Unbekannt").kind())
+      .isEqualTo(DepartmentIndex.MatchKind.UNMATCHED);
+  }
+
+  @Test
+  void testIgnoresSimilarNamesIfFuzzyMatchingIsDisabled() {
+    DepartmentIndex exact = DepartmentIndex.of(DEPARTMENTS);
+
+    Assertions
+      .assertThat(
+        exact.departmentId("Bundesministerium des Innern und für Heimat")
+      )
+      .isEqualTo(DepartmentIndex.UNKNOWN);
+    Assertions.assertThat(exact.departmentId("AUSWÄRTIGES AMT")).isZero();
+  }
+
+  @Test
+  void testFingerprintDependsOnFuzzySettings() {
+    long exact = DepartmentIndex.of(DEPARTMENTS).fingerprint();
+
+    Assertions.assertThat(this.index.fingerprint()).isNotEqualTo(exact);
+    Assertions
+      .assertThat(
+        DepartmentIndex
+          .of(DEPARTMENTS, new DepartmentIndex.Fuzzy(true, 0.9))
+          .fingerprint()
+      )
+      .isNotEqualTo(this.index.fingerprint())
+      .isNotEqualTo(exact);
+    Assertions
+      .assertThat(
+        DepartmentIndex
+          .of(DEPARTMENTS, new DepartmentIndex.Fuzzy(false, 0.9))
+          .fingerprint()
+      )
+      .isEqualTo(exact);
+  }
+
+  @Test
+  void testReportsUnmatchedAndApproximateOrganizations() throws IOException {
+    try (MockWebServer server = new MockWebServer()) {
+      server.enqueue(
+        new MockResponse()
+          .setBody(
+            new ObjectMapper()
+              .writeValueAsString(
+                new CKANOrganizationResponse(
+                  true,
+                  List.of(
+                    new CKANOrganizationEntity("Auswärtiges Amt", 20),
+                    new CKANOrganizationEntity("Unbekannt", 100),
+                    new CKANOrganizationEntity("Stadt Musterstadt", 300),
+                    new CKANOrganizationEntity("Auswaertiges Amt", 2)
+                  ),
+                  null
+                )
+              )
+          )
+          .addHeader("Content-Type", "application/json")
+      );
+      DepartmentService departmentService = new DepartmentService(
+        "classpath:departments_valid.json",
+        new DepartmentIndex.Fuzzy(true, 0.85),
+        event -> {},
+        Schedulers.boundedElastic()
+      );
+      departmentService.loadDefaultDepartments();
+      OrganizationMatchReportService service =
+        new OrganizationMatchReportService(
+          List.of(
+            new CKANSource(
+              "govdata",
+              new CKANClient(
+                WebClient.create(server.url("/").toString()),
+                new CircuitBreaker(
+                  "CKAN API",
+                  1,
+                  Duration.ofMinutes(1),
+                  Duration.ofMinutes(5)
+                ),
+                CKANClient.Paging.disabled()
+              ),
+              departmentService,
+              null
+            )
+          ),
+          Duration.ofMinutes(5)
+        );
+
+      StepVerifier
+        .create(service.report())
+        .assertNext(report -> {
+          Assertions
+            .assertThat(report.unmatched())
+            .extracting(OrganizationMatchDto::organization)
+            .containsExactly("Stadt Musterstadt", "Unbekannt");
+          Assertions
+            .assertThat(report.approximate())
+            .containsExactly(
+              new OrganizationMatchDto(
+                "govdata",
+                "Auswaertiges Amt",
+                2,
+                "Auswärtiges Amt",
+                "normalized",
+                null
+              )
+            );
+        })
+        .verifyComplete();
+
+      // served from the cache without another request
+      Assertions
+        .assertThat(service.report().block().unmatched())
+        .hasSize(2);
+      Assertions.assertThat(server.getRequestCount()).isOne();
+    }
+  }
+}
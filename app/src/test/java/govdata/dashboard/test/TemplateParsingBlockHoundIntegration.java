@@ -0,0 +1,20 @@
+package govdata.dashboard.test;
+
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.integration.BlockHoundIntegration;
+
+/**
+ * Allows Thymeleaf to read a template from the classpath when it is first rendered. Parsed templates are cached, so this
+ * happens once per template; every other blocking call on an event loop still fails the test.
+ */
+public class TemplateParsingBlockHoundIntegration
+  implements BlockHoundIntegration {
+
+  @Override
+  public void applyTo(BlockHound.Builder builder) {
+    builder.allowBlockingCallsInside(
+      "org.thymeleaf.templateparser.markup.AbstractMarkupTemplateParser",
+      "parseStandalone"
+    );
+  }
+}